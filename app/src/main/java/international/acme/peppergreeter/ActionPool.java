@@ -0,0 +1,95 @@
+package international.acme.peppergreeter;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Keeps a few robot actions (Say, Animate, GoTo) constructed ahead of time. Constructing one is a blocking call into the robot's services,
+ *  so it is done while idle or while the previous action is still running, rather than at the moment the action is needed.
+ *  Actions that completed normally are handed back with release() and reused; an action that failed or was cancelled is simply dropped. **/
+public class ActionPool<T>
+{
+    /** Constructs a new action. Called outside of the pool's lock. **/
+    public interface Factory<T>
+    {
+        T create() throws Exception;
+    }
+
+    private final String mName;
+    private final int mSize;
+    private final Factory<T> mFactory;
+    private final ArrayDeque<T> mIdle = new ArrayDeque<>();
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mCreateCount = new AtomicLong();
+
+    public ActionPool(String name, int size, Factory<T> factory)
+    {
+        mName = name;
+        mSize = size;
+        mFactory = factory;
+    }
+
+    /** Take an idle action, or construct one straight away if none is ready. **/
+    public T acquire() throws Exception
+    {
+        T action;
+        synchronized (mIdle)
+        {
+            action = mIdle.poll();
+        }
+        if (action != null)
+        {
+            mHitCount.incrementAndGet();
+            return action;
+        }
+        mMissCount.incrementAndGet();
+        return create();
+    }
+
+    /** Hand back an action that completed normally, so it can be reused. It is dropped if the pool is already full. **/
+    public void release(T action)
+    {
+        synchronized (mIdle)
+        {
+            if (mIdle.size() < mSize) mIdle.add(action);
+        }
+    }
+
+    /** Construct actions until the pool is full. Blocking; call it off the main thread. **/
+    public void refill() throws Exception
+    {
+        while (getIdleCount() < mSize)
+        {
+            T action = create();
+            synchronized (mIdle)
+            {
+                if (mIdle.size() >= mSize) return;
+                mIdle.add(action);
+            }
+        }
+    }
+
+    public int getIdleCount()
+    {
+        synchronized (mIdle)
+        {
+            return mIdle.size();
+        }
+    }
+
+    public long getHitCount() { return mHitCount.get(); }
+    public long getMissCount() { return mMissCount.get(); }
+    public long getCreateCount() { return mCreateCount.get(); }
+
+    public String getStats()
+    {
+        return String.format("%s pool: %d hits, %d misses, %d constructed, %d idle", mName, mHitCount.get(), mMissCount.get(), mCreateCount.get(), getIdleCount());
+    }
+
+    private T create() throws Exception
+    {
+        mCreateCount.incrementAndGet();
+        return mFactory.create();
+    }
+}
@@ -0,0 +1,18 @@
+package international.acme.peppergreeter;
+
+/** Deadlines for each type of robot action. An action that runs past its deadline is cancelled and fails with a TimeoutException,
+ *  so a hung action fails the greeting quickly instead of leaving it stuck in progress. **/
+public class ActionTimeouts
+{
+    /** Speech deadline grows with the length of the text: SpeakBaseMs plus SpeakPerCharMs for each character. **/
+    public long SpeakBaseMs = 5000;
+    public long SpeakPerCharMs = 150;
+
+    public long MoveMs = 15000;
+    public long AnimateMs = 15000;
+
+    public long getSpeakTimeoutMs(String text)
+    {
+        return SpeakBaseMs + SpeakPerCharMs * (text != null ? text.length() : 0);
+    }
+}
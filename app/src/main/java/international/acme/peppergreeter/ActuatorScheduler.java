@@ -0,0 +1,169 @@
+package international.acme.peppergreeter;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/** Runs robot actions on one serialized lane per physical resource, so that two utterances or two motions can never be issued at the same time.
+ *  Each lane has a single reusable thread; actions queue up behind the one currently running and are started in the order they were subscribed.
+ *  An action holds its lane until it terminates (not merely until its subscription returns), so lanes stay serialized even for non-blocking actions. **/
+public class ActuatorScheduler
+{
+    /** The robot's physical resources: the speaker, the wheeled base, and the arms/head used for gestures. **/
+    public enum Lane { SPEECH, MOTION, GESTURE }
+
+    private final Map<Lane, ActuatorLane> mLanes = new EnumMap<>(Lane.class);
+
+    public ActuatorScheduler()
+    {
+        for (Lane lane : Lane.values()) mLanes.put(lane, new ActuatorLane(lane));
+    }
+
+    /** Return a Completable that, when subscribed, runs the action on the given lane once all actions queued ahead of it have terminated.
+     *  Disposing it removes the action from the queue, or disposes it if it is already running. **/
+    public Completable schedule(Lane lane, Completable action)
+    {
+        return mLanes.get(lane).schedule(action);
+    }
+
+    /** Number of actions on the lane, including the one currently running. **/
+    public int getQueueDepth(Lane lane) { return mLanes.get(lane).getQueueDepth(); }
+
+    /** Highest queue depth seen on the lane since startup. **/
+    public int getMaxQueueDepth(Lane lane) { return mLanes.get(lane).getMaxQueueDepth(); }
+
+    /** Number of actions that have finished on the lane (completed, failed or cancelled while running). **/
+    public long getCompletedCount(Lane lane) { return mLanes.get(lane).mCompletedCount.get(); }
+
+    public void shutdown()
+    {
+        for (ActuatorLane lane : mLanes.values()) lane.mExecutor.shutdownNow();
+    }
+
+    private static class ActuatorLane
+    {
+        final ExecutorService mExecutor;
+        final Scheduler mScheduler;
+        final ArrayDeque<Job> mQueue = new ArrayDeque<>();
+        final AtomicLong mCompletedCount = new AtomicLong();
+        Job mRunningJob;
+        int mMaxQueueDepth;
+
+        ActuatorLane(Lane lane)
+        {
+            String threadName = "Actuator-" + lane.name();
+            mExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, threadName));
+            mScheduler = Schedulers.from(mExecutor);
+        }
+
+        Completable schedule(Completable action)
+        {
+            return Completable.create(emitter ->
+            {
+                Job job = new Job(action, emitter);
+                emitter.setCancellable(() -> cancel(job));
+                enqueue(job);
+            });
+        }
+
+        synchronized int getQueueDepth() { return mQueue.size() + (mRunningJob != null ? 1 : 0); }
+        synchronized int getMaxQueueDepth() { return mMaxQueueDepth; }
+
+        private void enqueue(Job job)
+        {
+            synchronized (this)
+            {
+                mQueue.add(job);
+                mMaxQueueDepth = Math.max(mMaxQueueDepth, getQueueDepth());
+                if (mRunningJob != null) return;
+            }
+            startNext();
+        }
+
+        /** Start the next queued job, if any. The job is subscribed outside the lock; it runs on the lane thread. **/
+        private void startNext()
+        {
+            Job job;
+            synchronized (this)
+            {
+                if (mRunningJob != null) return;
+                job = mQueue.poll();
+                mRunningJob = job;
+            }
+            if (job != null) job.start(this);
+        }
+
+        private void onJobFinished(Job job)
+        {
+            synchronized (this)
+            {
+                if (mRunningJob != job) return;
+                mRunningJob = null;
+            }
+            mCompletedCount.incrementAndGet();
+            startNext();
+        }
+
+        private void cancel(Job job)
+        {
+            boolean running;
+            synchronized (this)
+            {
+                running = (mRunningJob == job);
+                if (!running) mQueue.remove(job);
+            }
+            if (running)
+            {
+                job.dispose();
+                onJobFinished(job);
+            }
+        }
+    }
+
+    private static class Job
+    {
+        final Completable mAction;
+        final CompletableEmitter mEmitter;
+        final AtomicBoolean mFinished = new AtomicBoolean();
+        volatile Disposable mDisposable;
+
+        Job(Completable action, CompletableEmitter emitter)
+        {
+            mAction = action;
+            mEmitter = emitter;
+        }
+
+        void start(ActuatorLane lane)
+        {
+            mDisposable = mAction.subscribeOn(lane.mScheduler).subscribe(() ->
+            {
+                if (mFinished.compareAndSet(false, true)) lane.onJobFinished(this);
+                mEmitter.onComplete();
+            }, ex ->
+            {
+                if (mFinished.compareAndSet(false, true)) lane.onJobFinished(this);
+                mEmitter.onError(ex);
+            });
+
+            // Cancelled while subscribing: the disposable wasn't available to dispose() yet.
+            if (mFinished.get()) mDisposable.dispose();
+        }
+
+        void dispose()
+        {
+            mFinished.set(true);
+            Disposable disposable = mDisposable;
+            if (disposable != null) disposable.dispose();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package international.acme.peppergreeter;
+
+import com.aldebaran.qi.sdk.object.actuation.Animation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Completable;
+
+/** Holds parsed Animation objects keyed by resource ID, so each .anim resource is parsed once rather than on every call to animate().
+ *  Least recently used animations are evicted once MAX_ENTRIES is reached. Hit/miss counts and parse times are kept so the saving can be measured. **/
+public class AnimationCache
+{
+    /** The bundled animations are at most ~12 KB of XML each, so this keeps the cache to a few hundred KB while holding all of them. **/
+    static final int MAX_ENTRIES = 16;
+
+    /** Parses the animation resource with the given ID. **/
+    public interface AnimationLoader
+    {
+        Animation load(int resourceId) throws Exception;
+    }
+
+    private final AnimationLoader mLoader;
+    private final Map<Integer, Animation> mAnimations = new LinkedHashMap<Integer, Animation>(MAX_ENTRIES, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Animation> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mParseCount = new AtomicLong();
+    private final AtomicLong mTotalParseTimeNs = new AtomicLong();
+    private final AtomicLong mMaxParseTimeNs = new AtomicLong();
+
+    public AnimationCache(AnimationLoader loader)
+    {
+        mLoader = loader;
+    }
+
+    /** Return the cached animation, parsing and caching it first if necessary. **/
+    public Animation get(int resourceId) throws Exception
+    {
+        Animation animation;
+        synchronized (mAnimations)
+        {
+            animation = mAnimations.get(resourceId);
+        }
+        if (animation != null)
+        {
+            mHitCount.incrementAndGet();
+            return animation;
+        }
+
+        mMissCount.incrementAndGet();
+        animation = parse(resourceId);
+        synchronized (mAnimations)
+        {
+            mAnimations.put(resourceId, animation);
+        }
+        return animation;
+    }
+
+    /** Completable that parses any of the given animations which aren't cached yet. Failures are logged and skipped, since the animation will be retried on first use. **/
+    public Completable warmUp(int[] resourceIds)
+    {
+        return Completable.fromAction(() ->
+        {
+            for (int resourceId : resourceIds)
+            {
+                if (contains(resourceId)) continue;
+                try
+                {
+                    Animation animation = parse(resourceId);
+                    synchronized (mAnimations)
+                    {
+                        mAnimations.put(resourceId, animation);
+                    }
+                }
+                catch (Exception ex)
+                {
+                    logError("Unable to preload animation %d", resourceId);
+                    logException(ex);
+                }
+            }
+            logMsg("Animation cache warmed up: %s", getStats());
+        });
+    }
+
+    public boolean contains(int resourceId)
+    {
+        synchronized (mAnimations)
+        {
+            return mAnimations.containsKey(resourceId);
+        }
+    }
+
+    /** Drop one animation, e.g. after the resource has been replaced, so it is re-parsed on next use. **/
+    public void invalidate(int resourceId)
+    {
+        synchronized (mAnimations)
+        {
+            mAnimations.remove(resourceId);
+        }
+    }
+
+    public void invalidateAll()
+    {
+        synchronized (mAnimations)
+        {
+            mAnimations.clear();
+        }
+    }
+
+    public int size()
+    {
+        synchronized (mAnimations)
+        {
+            return mAnimations.size();
+        }
+    }
+
+    public long getHitCount() { return mHitCount.get(); }
+    public long getMissCount() { return mMissCount.get(); }
+    public long getParseCount() { return mParseCount.get(); }
+    public long getTotalParseTimeNs() { return mTotalParseTimeNs.get(); }
+    public long getMaxParseTimeNs() { return mMaxParseTimeNs.get(); }
+
+    /** Summary for logging. The time saved is estimated as the average parse time for each cache hit. **/
+    public String getStats()
+    {
+        long hits = mHitCount.get();
+        long misses = mMissCount.get();
+        long avgParseMs = mTotalParseTimeNs.get() / Math.max(1, mParseCount.get()) / 1000000;
+        return String.format("%d cached, %d hits, %d misses, avg parse %d ms, max parse %d ms, ~%d ms saved",
+                size(), hits, misses, avgParseMs, mMaxParseTimeNs.get() / 1000000, hits * avgParseMs);
+    }
+
+    private Animation parse(int resourceId) throws Exception
+    {
+        long startTime = System.nanoTime();
+        Animation animation = mLoader.load(resourceId);
+        long parseTime = System.nanoTime() - startTime;
+        mParseCount.incrementAndGet();
+        mTotalParseTimeNs.addAndGet(parseTime);
+        long max;
+        do
+        {
+            max = mMaxParseTimeNs.get();
+        } while (parseTime > max && !mMaxParseTimeNs.compareAndSet(max, parseTime));
+        return animation;
+    }
+
+    private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
+    private void logError(String text, Object... args) { LogHelper.logError(getClass(), text, args); }
+    private void logException(Throwable ex) { LogHelper.logException(getClass(), ex); }
+}
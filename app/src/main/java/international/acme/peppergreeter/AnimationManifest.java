@@ -0,0 +1,37 @@
+package international.acme.peppergreeter;
+
+/** Declares the animation resources bundled with the app, so that they can be preloaded before the first greeting, and referred to by name from config data. **/
+public class AnimationManifest
+{
+    /** Every .anim resource under res/raw. Add new animations here so they are warmed up at startup rather than parsed mid-greeting. **/
+    public static final int[] RESOURCE_IDS = new int[]
+    {
+        R.raw.greeting_arms,
+        R.raw.point_to_deal1, R.raw.point_to_deal2, R.raw.point_to_deal3, R.raw.point_to_deal4, R.raw.point_to_deal5, R.raw.point_to_deal6,
+        R.raw.elephant
+    };
+
+    /** Resource names of the animations in RESOURCE_IDS, in the same order. **/
+    public static final String[] NAMES = new String[]
+    {
+        "greeting_arms",
+        "point_to_deal1", "point_to_deal2", "point_to_deal3", "point_to_deal4", "point_to_deal5", "point_to_deal6",
+        "elephant"
+    };
+
+    /** Animations pointing to each deal slot on the tablet, in slot order. **/
+    public static final int[] POINT_TO_DEAL_IDS = new int[]
+    {
+        R.raw.point_to_deal1, R.raw.point_to_deal2, R.raw.point_to_deal3, R.raw.point_to_deal4, R.raw.point_to_deal5, R.raw.point_to_deal6
+    };
+
+    /** Returns the resource ID of the named animation, or 0 if there is no such animation. **/
+    public static int getResourceId(String name)
+    {
+        for (int i=0 ; i < NAMES.length ; i++)
+        {
+            if (NAMES[i].equals(name)) return RESOURCE_IDS[i];
+        }
+        return 0;
+    }
+}
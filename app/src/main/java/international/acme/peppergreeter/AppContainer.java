@@ -0,0 +1,64 @@
+package international.acme.peppergreeter;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.Locale;
+
+import io.reactivex.android.schedulers.AndroidSchedulers;
+
+/** Holds the app's process-wide dependencies and wires them together. Each is constructed the first time it is asked for, not when the app starts,
+ *  so nothing is built on the critical path to the first frame that isn't needed for it. They hold on to the application context only, since they
+ *  outlive any one activity. **/
+public class AppContainer
+{
+    static final String SESSION_RECORDING_FILE_NAME = "sessions.rec";
+
+    private final Context mContext;
+
+    private ConfigDataApi mConfigDataApi;
+    private DataRepository mDataRepository;
+    private RobotController mRobotController;
+
+    public AppContainer(Context context)
+    {
+        mContext = context.getApplicationContext();
+    }
+
+    /** HTTP client, Retrofit and Gson are all set up here, and connections are pooled across loads. **/
+    public synchronized ConfigDataApi getConfigDataApi()
+    {
+        if (mConfigDataApi == null)
+        {
+            ConfigDataTypeAdapter configDataTypeAdapter = new ConfigDataTypeAdapter(mContext.getString(R.string.store_id), Locale.getDefault());
+            mConfigDataApi = ConfigDataApiProvider.createConfigDataApi(ConfigDataApiProvider.createHttpClient(mContext.getCacheDir()), ConfigDataApiProvider.BASE_URL, configDataTypeAdapter);
+        }
+        return mConfigDataApi;
+    }
+
+    public synchronized DataRepository getDataRepository()
+    {
+        if (mDataRepository == null)
+        {
+            mDataRepository = new DataRepositoryImpl(getConfigDataApi(), new ConfigDataSnapshot(mContext.getFilesDir()), AndroidSchedulers.mainThread());
+        }
+        return mDataRepository;
+    }
+
+    public synchronized RobotController getRobotController()
+    {
+        if (mRobotController == null)
+        {
+            RobotControllerImpl robotController = new RobotControllerImpl(mContext);
+            robotController.setPhraseAudio(new PhraseAudioCache(new File(mContext.getCacheDir(), "phrases"), new TextToSpeechRenderer(mContext)), new AudioTrackPlayer());
+            if (mContext.getResources().getBoolean(R.bool.record_sessions))
+            {
+                SessionRecorder sessionRecorder = new SessionRecorder(new File(mContext.getFilesDir(), SESSION_RECORDING_FILE_NAME));
+                sessionRecorder.open(System.currentTimeMillis());
+                robotController.setSessionRecorder(sessionRecorder);
+            }
+            mRobotController = robotController;
+        }
+        return mRobotController;
+    }
+}
@@ -0,0 +1,144 @@
+package international.acme.peppergreeter;
+
+/** Decides when to greet a tracked human from how they are moving, rather than only from how far away they are right now.
+ *  The greeting sequence starts with a move forward, so it is triggered LEAD_TIME ahead of when the human is predicted to reach the ideal greeting
+ *  distance; the first word then lands as they arrive, instead of after they have walked past. Velocity is estimated by a least-squares fit over the
+ *  track's recent positions. Humans standing still fall back to the plain distance check, and humans moving away are not greeted.
+ *  Each predicted arrival is later compared with the actual one, so the lead time can be tuned from the numbers. **/
+public class ApproachPredictor
+{
+    /** Roughly the time for the 0.5 m move forward plus the start of the greeting. **/
+    static final long DEFAULT_LEAD_TIME_MS = 2500;
+    static final double DEFAULT_IDEAL_GREETING_DISTANCE_M = 1.5;
+
+    /** Only positions this recent are used to estimate velocity, so that a change of direction shows up quickly. **/
+    static final long VELOCITY_WINDOW_MS = 2000;
+
+    /** Below this speed (m/s) a human is treated as standing still. **/
+    static final double STATIONARY_SPEED = 0.2;
+
+    private final double mDetectionDistance;
+    private long mLeadTimeMs = DEFAULT_LEAD_TIME_MS;
+    private double mIdealDistance = DEFAULT_IDEAL_GREETING_DISTANCE_M;
+
+    // Estimated velocity of the track last passed to estimateVelocity().
+    private double mVelocityX;
+    private double mVelocityY;
+
+    private long mPredictionCount;
+    private long mArrivalCount;
+    private long mMissCount;
+    private long mTotalErrorMs;
+    private long mTotalAbsErrorMs;
+
+    /** Humans standing still are greeted within detectionDistance, as before. **/
+    public ApproachPredictor(double detectionDistance)
+    {
+        mDetectionDistance = detectionDistance;
+    }
+
+    public void setLeadTimeMs(long leadTimeMs) { mLeadTimeMs = leadTimeMs; }
+    public void setIdealDistance(double idealDistance) { mIdealDistance = idealDistance; }
+
+    /** Should the greeting for this human start now? If so, the predicted arrival is recorded on the track to be checked by onObservation(). **/
+    public boolean shouldGreet(HumanRegistry.TrackedHuman track, long nowMs)
+    {
+        double distance = Math.sqrt(track.X * track.X + track.Y * track.Y);
+        if (!estimateVelocity(track, nowMs)) return distance < mDetectionDistance;
+
+        double speedSq = mVelocityX * mVelocityX + mVelocityY * mVelocityY;
+        if (speedSq < STATIONARY_SPEED * STATIONARY_SPEED) return distance < mDetectionDistance;
+
+        // Moving away (or past their closest point already): too late to greet.
+        double closing = track.X * mVelocityX + track.Y * mVelocityY;
+        if (closing >= 0) return false;
+
+        // Predicted distance at the end of the lead time, or at the closest point of approach if that comes first.
+        double timeToClosestS = -closing / speedSq;
+        double leadS = Math.min(mLeadTimeMs / 1000.0, timeToClosestS);
+        double predictedX = track.X + mVelocityX * leadS;
+        double predictedY = track.Y + mVelocityY * leadS;
+        if (Math.sqrt(predictedX * predictedX + predictedY * predictedY) > mIdealDistance) return false;
+
+        track.PredictedArrivalMs = nowMs + (long) (timeToReach(track, mIdealDistance, speedSq) * 1000);
+        mPredictionCount++;
+        return true;
+    }
+
+    /** Check an outstanding prediction against where the human actually is: arrived once within the ideal distance, missed once moving away without arriving. **/
+    public void onObservation(HumanRegistry.TrackedHuman track, long nowMs)
+    {
+        if (track.PredictedArrivalMs < 0) return;
+        double distance = Math.sqrt(track.X * track.X + track.Y * track.Y);
+        if (distance <= mIdealDistance)
+        {
+            long errorMs = nowMs - track.PredictedArrivalMs;
+            mArrivalCount++;
+            mTotalErrorMs += errorMs;
+            mTotalAbsErrorMs += Math.abs(errorMs);
+            track.PredictedArrivalMs = -1;
+        }
+        else if (estimateVelocity(track, nowMs) && track.X * mVelocityX + track.Y * mVelocityY > 0)
+        {
+            mMissCount++;
+            track.PredictedArrivalMs = -1;
+        }
+    }
+
+    /** Least-squares fit of position against time over the recent history. Returns false if there isn't enough history to estimate from. **/
+    private boolean estimateVelocity(HumanRegistry.TrackedHuman track, long nowMs)
+    {
+        int count = 0;
+        double sumT = 0, sumX = 0, sumY = 0;
+        for (int i=0 ; i < track.getHistorySize() ; i++)
+        {
+            if (nowMs - track.getHistoryTimeMs(i) > VELOCITY_WINDOW_MS) continue;
+            sumT += (track.getHistoryTimeMs(i) - nowMs) / 1000.0;
+            sumX += track.getHistoryX(i);
+            sumY += track.getHistoryY(i);
+            count++;
+        }
+        if (count < 2) return false;
+
+        double meanT = sumT / count, meanX = sumX / count, meanY = sumY / count;
+        double varT = 0, covX = 0, covY = 0;
+        for (int i=0 ; i < track.getHistorySize() ; i++)
+        {
+            if (nowMs - track.getHistoryTimeMs(i) > VELOCITY_WINDOW_MS) continue;
+            double dt = (track.getHistoryTimeMs(i) - nowMs) / 1000.0 - meanT;
+            varT += dt * dt;
+            covX += dt * (track.getHistoryX(i) - meanX);
+            covY += dt * (track.getHistoryY(i) - meanY);
+        }
+        if (varT == 0) return false;
+        mVelocityX = covX / varT;
+        mVelocityY = covY / varT;
+        return true;
+    }
+
+    /** Seconds until the human, moving at the last estimated velocity, first comes within the given distance (0 if already within it). **/
+    private double timeToReach(HumanRegistry.TrackedHuman track, double distance, double speedSq)
+    {
+        // Solve |p + v t| = distance for the earliest t >= 0.
+        double b = track.X * mVelocityX + track.Y * mVelocityY;
+        double c = track.X * track.X + track.Y * track.Y - distance * distance;
+        if (c <= 0) return 0;
+        double discriminant = b * b - speedSq * c;
+        if (discriminant < 0) return -b / speedSq;
+        return (-b - Math.sqrt(discriminant)) / speedSq;
+    }
+
+    public long getPredictionCount() { return mPredictionCount; }
+    public long getArrivalCount() { return mArrivalCount; }
+    public long getMissCount() { return mMissCount; }
+
+    /** Mean of (actual - predicted) arrival time: positive means humans arrive later than predicted, so the lead time could be shorter. **/
+    public long getMeanArrivalErrorMs() { return (mArrivalCount > 0) ? mTotalErrorMs / mArrivalCount : 0; }
+    public long getMeanAbsArrivalErrorMs() { return (mArrivalCount > 0) ? mTotalAbsErrorMs / mArrivalCount : 0; }
+
+    public String getStats()
+    {
+        return String.format("%d predictions, %d arrived (mean error %d ms, mean abs error %d ms), %d missed",
+                mPredictionCount, mArrivalCount, getMeanArrivalErrorMs(), getMeanAbsArrivalErrorMs(), mMissCount);
+    }
+}
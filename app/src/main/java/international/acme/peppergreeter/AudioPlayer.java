@@ -0,0 +1,12 @@
+package international.acme.peppergreeter;
+
+import java.io.File;
+
+import io.reactivex.Completable;
+
+/** Plays audio clips rendered by PhraseAudioCache. **/
+public interface AudioPlayer
+{
+    /** Return a Completable that, when subscribed, plays the WAV file and completes once playback has finished. Disposing it stops playback. **/
+    Completable play(File file);
+}
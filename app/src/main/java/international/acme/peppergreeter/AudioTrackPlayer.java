@@ -0,0 +1,99 @@
+package international.acme.peppergreeter;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import io.reactivex.Completable;
+import io.reactivex.schedulers.Schedulers;
+
+/** Plays 16-bit PCM WAV clips through a static AudioTrack: the whole clip is loaded before playback starts, so it starts without buffering delay. **/
+public class AudioTrackPlayer implements AudioPlayer
+{
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public Completable play(File file)
+    {
+        return Completable.create(emitter ->
+        {
+            WavClip clip = WavClip.read(file);
+            int channelConfig = (clip.mChannels == 2) ? AudioFormat.CHANNEL_OUT_STEREO : AudioFormat.CHANNEL_OUT_MONO;
+            AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, clip.mSampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT, clip.mData.length, AudioTrack.MODE_STATIC);
+            track.write(clip.mData, 0, clip.mData.length);
+            int frameCount = clip.mData.length / (2 * clip.mChannels);
+            track.setNotificationMarkerPosition(frameCount);
+            track.setPlaybackPositionUpdateListener(new AudioTrack.OnPlaybackPositionUpdateListener()
+            {
+                @Override
+                public void onMarkerReached(AudioTrack audioTrack)
+                {
+                    emitter.onComplete();
+                }
+
+                @Override
+                public void onPeriodicNotification(AudioTrack audioTrack) { }
+            }, mHandler);
+            emitter.setCancellable(() ->
+            {
+                if (track.getPlayState() != AudioTrack.PLAYSTATE_STOPPED) track.stop();
+                track.release();
+            });
+            track.play();
+        }).subscribeOn(Schedulers.io());
+    }
+
+    /** The format and PCM data of a WAV file. Only uncompressed 16-bit PCM is supported, which is what text-to-speech engines render. **/
+    static class WavClip
+    {
+        int mSampleRate;
+        int mChannels;
+        byte[] mData;
+
+        static WavClip read(File file) throws IOException
+        {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+            {
+                byte[] header = new byte[12];
+                in.readFully(header);
+                if (!new String(header, 0, 4, "US-ASCII").equals("RIFF") || !new String(header, 8, 4, "US-ASCII").equals("WAVE")) throw new IOException("Not a WAV file: " + file);
+
+                WavClip clip = new WavClip();
+                byte[] chunkHeader = new byte[8];
+                while (clip.mData == null)
+                {
+                    in.readFully(chunkHeader);
+                    String chunkId = new String(chunkHeader, 0, 4, "US-ASCII");
+                    int chunkSize = ByteBuffer.wrap(chunkHeader, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                    byte[] chunk = new byte[chunkSize];
+                    in.readFully(chunk);
+                    if (chunkId.equals("fmt "))
+                    {
+                        ByteBuffer fmt = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+                        if (fmt.getShort(0) != 1 || fmt.getShort(14) != 16) throw new IOException("Unsupported WAV format: " + file);
+                        clip.mChannels = fmt.getShort(2);
+                        clip.mSampleRate = fmt.getInt(4);
+                    }
+                    else if (chunkId.equals("data"))
+                    {
+                        if (clip.mSampleRate == 0) throw new IOException("WAV data before format: " + file);
+                        // Not even one frame would leave the notification marker at 0, which never fires, so playback would never end.
+                        if (chunkSize < 2 * clip.mChannels) throw new IOException("No audio data in WAV file: " + file);
+                        clip.mData = chunk;
+                    }
+                    if ((chunkSize & 1) != 0) in.skipBytes(1);
+                }
+                return clip;
+            }
+        }
+    }
+}
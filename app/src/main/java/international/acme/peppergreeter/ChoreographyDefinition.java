@@ -0,0 +1,113 @@
+package international.acme.peppergreeter;
+
+import com.google.gson.annotations.SerializedName;
+
+/** Describes the greeting sequence as data, so that it can be changed from the config data without an app release. Compiled into a GreetingPlan.
+ *  A choreography has three sections, run one after another: approach, body and finish. Only the body is cut short when a greeting is aborted,
+ *  so moves are only allowed in the approach and finish sections, and must add up to zero so that the robot always ends where it started.
+ *  For example, the default choreography in JSON:
+ *  <pre>
+ *  "choreography": {
+ *      "approach": [ { "action": "move", "x": 0.5 } ],
+ *      "body": [
+ *          { "action": "parallel", "steps": [ { "action": "say_greeting" }, { "action": "animate", "animation": "greeting_arms" } ] },
+ *          { "action": "say_deals_intro", "when": "has_deals" },
+ *          { "action": "for_each_deal", "steps": [ { "action": "parallel", "steps": [
+ *              { "action": "say_deal" }, { "action": "point_to_deal" }, { "action": "highlight_deal" } ] } ] }
+ *      ],
+ *      "finish": [ { "action": "move", "x": -0.5 } ]
+ *  }
+ *  </pre>
+ **/
+public class ChoreographyDefinition
+{
+    public static final String ACTION_MOVE = "move";
+    public static final String ACTION_SAY = "say";
+    public static final String ACTION_SAY_GREETING = "say_greeting";
+    public static final String ACTION_SAY_DEALS_INTRO = "say_deals_intro";
+    public static final String ACTION_ANIMATE = "animate";
+    public static final String ACTION_PARALLEL = "parallel";
+    public static final String ACTION_SEQUENCE = "sequence";
+
+    /** Runs its steps once for each deal slot of the page of deals on screen; the deal steps below refer to the deal in the slot of the current iteration. **/
+    public static final String ACTION_FOR_EACH_DEAL = "for_each_deal";
+    public static final String ACTION_SAY_DEAL = "say_deal";
+    public static final String ACTION_POINT_TO_DEAL = "point_to_deal";
+    public static final String ACTION_HIGHLIGHT_DEAL = "highlight_deal";
+
+    /** Guards: a step with a "when" guard is skipped unless the guard holds. **/
+    public static final String WHEN_HAS_DEALS = "has_deals";
+    public static final String WHEN_NO_DEALS = "no_deals";
+    public static final String WHEN_GROUP = "group";
+    public static final String WHEN_SINGLE = "single";
+
+    public static class Step
+    {
+        @SerializedName("action")
+        public String Action;
+
+        @SerializedName("when")
+        public String When;
+
+        /** For "move": the vector to move by, in meters. **/
+        @SerializedName("x")
+        public double X;
+
+        @SerializedName("y")
+        public double Y;
+
+        /** For "say": the text to speak. **/
+        @SerializedName("text")
+        public String Text;
+
+        /** For "animate": the name of the animation resource, as listed in AnimationManifest. **/
+        @SerializedName("animation")
+        public String Animation;
+
+        /** For "parallel", "sequence" and "for_each_deal". **/
+        @SerializedName("steps")
+        public Step[] Steps;
+
+        public Step() { }
+
+        Step(String action, Step... steps)
+        {
+            Action = action;
+            Steps = (steps.length > 0) ? steps : null;
+        }
+    }
+
+    @SerializedName("approach")
+    public Step[] Approach;
+
+    @SerializedName("body")
+    public Step[] Body;
+
+    @SerializedName("finish")
+    public Step[] Finish;
+
+    /** The built-in greeting sequence, used when the config data doesn't define one (or defines an invalid one):
+     *  move forward 1/2 meter, say a greeting while waving, announce each deal while pointing to it, then move back. **/
+    public static ChoreographyDefinition createDefault()
+    {
+        Step moveForward = new Step(ACTION_MOVE);
+        moveForward.X = 0.5;
+        Step moveBack = new Step(ACTION_MOVE);
+        moveBack.X = -0.5;
+        Step greetingArms = new Step(ACTION_ANIMATE);
+        greetingArms.Animation = "greeting_arms";
+        Step dealsIntro = new Step(ACTION_SAY_DEALS_INTRO);
+        dealsIntro.When = WHEN_HAS_DEALS;
+
+        ChoreographyDefinition definition = new ChoreographyDefinition();
+        definition.Approach = new Step[] { moveForward };
+        definition.Body = new Step[]
+        {
+            new Step(ACTION_PARALLEL, new Step(ACTION_SAY_GREETING), greetingArms),
+            dealsIntro,
+            new Step(ACTION_FOR_EACH_DEAL, new Step(ACTION_PARALLEL, new Step(ACTION_SAY_DEAL), new Step(ACTION_POINT_TO_DEAL), new Step(ACTION_HIGHLIGHT_DEAL)))
+        };
+        definition.Finish = new Step[] { moveBack };
+        return definition;
+    }
+}
@@ -0,0 +1,125 @@
+package international.acme.peppergreeter;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+
+/** Stops requests to a service that keeps failing, rather than hammering it (and waiting out its timeouts) over and over.
+ *  After failureThreshold consecutive failures the circuit opens, and requests are rejected without being made until openMs has passed.
+ *  Then a single trial request is let through: if it succeeds the circuit closes again, and if it fails the circuit reopens for another openMs. **/
+public class CircuitBreaker
+{
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Request rejected without being made, as the circuit is open. **/
+    public static class OpenException extends Exception
+    {
+        private final long mRetryAfterMs;
+
+        OpenException(String name, long retryAfterMs)
+        {
+            super(String.format("Circuit for %s is open, retry after %d ms", name, retryAfterMs));
+            mRetryAfterMs = retryAfterMs;
+        }
+
+        public long getRetryAfterMs() { return mRetryAfterMs; }
+    }
+
+    private final String mName;
+    private final int mFailureThreshold;
+    private final long mOpenMs;
+    private final Scheduler mClock;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures;
+    private long mOpenUntilMs;
+    private boolean mTrialInFlight;
+    private long mOpenedCount;
+    private long mRejectedCount;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMs, Scheduler clock)
+    {
+        mName = name;
+        mFailureThreshold = failureThreshold;
+        mOpenMs = openMs;
+        mClock = clock;
+    }
+
+    /** Whether a request may be made now. Every request allowed must be followed by onSuccess(), onFailure() or onCancelled(). **/
+    public synchronized boolean allowRequest()
+    {
+        if (mState == State.OPEN && nowMs() >= mOpenUntilMs)
+        {
+            logMsg("Circuit for %s half open, letting a trial request through", mName);
+            mState = State.HALF_OPEN;
+            mTrialInFlight = false;
+        }
+        if (mState == State.CLOSED) return true;
+        if (mState == State.HALF_OPEN && !mTrialInFlight)
+        {
+            mTrialInFlight = true;
+            return true;
+        }
+        mRejectedCount++;
+        return false;
+    }
+
+    /** Return the exception to fail a rejected request with. **/
+    public synchronized OpenException newOpenException()
+    {
+        return new OpenException(mName, getRetryAfterMs());
+    }
+
+    public synchronized void onSuccess()
+    {
+        if (mState != State.CLOSED) logMsg("Circuit for %s closed", mName);
+        mState = State.CLOSED;
+        mConsecutiveFailures = 0;
+        mTrialInFlight = false;
+    }
+
+    public synchronized void onFailure()
+    {
+        mConsecutiveFailures++;
+        if (mState == State.HALF_OPEN || (mState == State.CLOSED && mConsecutiveFailures >= mFailureThreshold)) open();
+    }
+
+    /** A request was abandoned before its outcome was known; if it was the trial request, let another one through. **/
+    public synchronized void onCancelled()
+    {
+        mTrialInFlight = false;
+    }
+
+    public synchronized State getState() { return mState; }
+    public synchronized long getOpenedCount() { return mOpenedCount; }
+    public synchronized long getRejectedCount() { return mRejectedCount; }
+
+    /** How long until the next request will be let through: zero unless the circuit is open. **/
+    public synchronized long getRetryAfterMs()
+    {
+        return (mState == State.OPEN) ? Math.max(0, mOpenUntilMs - nowMs()) : 0;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("circuit %s (opened %d times, %d requests rejected)", mState, mOpenedCount, mRejectedCount);
+    }
+
+    private void open()
+    {
+        mState = State.OPEN;
+        mOpenUntilMs = nowMs() + mOpenMs;
+        mTrialInFlight = false;
+        mOpenedCount++;
+        logError("Circuit for %s opened after %d consecutive failures, no requests for %d s", mName, mConsecutiveFailures, mOpenMs / 1000);
+    }
+
+    private long nowMs()
+    {
+        return mClock.now(TimeUnit.MILLISECONDS);
+    }
+
+    private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
+    private void logError(String text, Object... args) { LogHelper.logError(getClass(), text, args); }
+}
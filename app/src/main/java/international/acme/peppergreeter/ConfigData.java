@@ -2,10 +2,12 @@ package international.acme.peppergreeter;
 
 import com.google.gson.annotations.SerializedName;
 
-/** Represents customizable configuration data loaded from a remote server: the list of greetings and special deals. **/
+import java.util.Arrays;
+
+/** Represents customizable configuration data loaded from a remote server: the list of greetings and special deals, and optionally the greeting choreography. **/
 public class ConfigData
 {
-    /** Maximum number of deals that are supported. **/
+    /** Number of deal slots on screen, each with its own pointing animation. Longer lists of deals are paged through the slots (see DealCarousel). **/
     public static int MAX_DEAL_COUNT = 6;
 
     @SerializedName("greetings")
@@ -13,4 +15,19 @@ public class ConfigData
 
     @SerializedName("special_deals")
     public String[] SpecialDeals;
+
+    /** If null, the default choreography is used. **/
+    @SerializedName("choreography")
+    public ChoreographyDefinition Choreography;
+
+    /** HTTP validators the server sent along with this config data, used to make conditional requests on the next load. Not part of the JSON payload. **/
+    public transient String ETag;
+    public transient String LastModified;
+
+    /** Identifies this version of the config data: the server's ETag if there is one, otherwise a hash of the greetings and deals. **/
+    public String getVersion()
+    {
+        if (ETag != null) return ETag;
+        return Integer.toHexString(31 * Arrays.hashCode(Greetings) + Arrays.hashCode(SpecialDeals));
+    }
 }
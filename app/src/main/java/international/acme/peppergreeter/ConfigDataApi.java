@@ -1,11 +1,14 @@
 package international.acme.peppergreeter;
 
 import io.reactivex.Single;
+import retrofit2.Response;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
 
 /** Interface for use with Retrofit for loading configuration data (greetings, special deals) from remote server **/
 public interface ConfigDataApi
 {
+    /** Conditional GET: pass the validators from the last loaded config (or null if there is none), and the server will answer 304 Not Modified if nothing has changed. **/
     @GET("/api/jsonBlob/1a4d1ef1-66a8-11e7-a38a-3345c3faabc3")
-    Single<ConfigData> getConfigData();
+    Single<Response<ConfigData>> getConfigData(@Header("If-None-Match") String eTag, @Header("If-Modified-Since") String lastModified);
 }
@@ -0,0 +1,57 @@
+package international.acme.peppergreeter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/** Builds the HTTP stack used to talk to the config server. AppContainer keeps a single instance for the process, so that connections (and their
+ *  TLS sessions) are pooled and reused across loads instead of being set up from scratch every time.
+ **/
+public class ConfigDataApiProvider
+{
+    static final String BASE_URL = "https://jsonblob.com";
+    static final String HTTP_CACHE_DIR = "http";
+    static final long HTTP_CACHE_SIZE_BYTES = 1024 * 1024;
+
+    /** Keep idle connections around long enough to be reused by the next periodic refresh. **/
+    static final int MAX_IDLE_CONNECTIONS = 2;
+    static final long KEEP_ALIVE_MINUTES = 5;
+
+    /** Set relatively short timeout (5 seconds) so robot can fall back to default greetings if the network is down. **/
+    static OkHttpClient createHttpClient(File cacheDir)
+    {
+        return new OkHttpClient.Builder()
+                .readTimeout(5, TimeUnit.SECONDS)
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .cache(new Cache(new File(cacheDir, HTTP_CACHE_DIR), HTTP_CACHE_SIZE_BYTES))
+                .build();
+    }
+
+    static ConfigDataApi createConfigDataApi(OkHttpClient okHttpClient, String baseUrl)
+    {
+        return createConfigDataApi(okHttpClient, baseUrl, new ConfigDataTypeAdapter("", Locale.getDefault()));
+    }
+
+    /** The config data is filtered down to what applies to this robot's store and locale as it is read; see ConfigDataTypeAdapter. **/
+    static ConfigDataApi createConfigDataApi(OkHttpClient okHttpClient, String baseUrl, ConfigDataTypeAdapter configDataTypeAdapter)
+    {
+        Gson gson = new GsonBuilder().registerTypeAdapter(ConfigData.class, configDataTypeAdapter).create();
+        return new Retrofit.Builder()
+                .client(okHttpClient)
+                .baseUrl(baseUrl)
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+                .build().create(ConfigDataApi.class);
+    }
+}
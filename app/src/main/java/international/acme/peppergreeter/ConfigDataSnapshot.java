@@ -0,0 +1,114 @@
+package international.acme.peppergreeter;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/** Persists the last good ConfigData to local storage in a compact binary format, so that it can be served at startup without waiting for the network.
+ *  The file starts with a magic number and a format version; a snapshot written in any other format is ignored rather than misread. **/
+public class ConfigDataSnapshot
+{
+    static final String FILE_NAME = "config_data.snapshot";
+    static final int MAGIC = 0x50474344;
+    static final int FORMAT_VERSION = 3;
+
+    private final File mFile;
+    private final Gson mGson = new Gson();
+
+    public ConfigDataSnapshot(File directory)
+    {
+        mFile = new File(directory, FILE_NAME);
+    }
+
+    /** Read the snapshot from disk. Returns null if there is no snapshot, or if it is unreadable or was written in a different format. **/
+    public ConfigData read()
+    {
+        if (!mFile.exists()) return null;
+        long startTime = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+            {
+                logMsg("Ignoring config snapshot with unknown format");
+                return null;
+            }
+            long savedAt = in.readLong();
+            ConfigData configData = new ConfigData();
+            configData.Greetings = readStrings(in);
+            configData.SpecialDeals = readStrings(in);
+            String choreography = readNullableString(in);
+            if (choreography != null) configData.Choreography = mGson.fromJson(choreography, ChoreographyDefinition.class);
+            configData.ETag = readNullableString(in);
+            configData.LastModified = readNullableString(in);
+            logMsg("Read config snapshot saved at %d in %d us", savedAt, (System.nanoTime() - startTime) / 1000);
+            return configData;
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            logError("Unable to read config snapshot, ignoring it");
+            logException(ex);
+            return null;
+        }
+    }
+
+    /** Write the snapshot to a temporary file and then rename it over the old one, so a crash mid-write never leaves a truncated snapshot behind. **/
+    public void write(ConfigData configData) throws IOException
+    {
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            writeStrings(out, configData.Greetings);
+            writeStrings(out, configData.SpecialDeals);
+            writeNullableString(out, (configData.Choreography != null) ? mGson.toJson(configData.Choreography) : null);
+            writeNullableString(out, configData.ETag);
+            writeNullableString(out, configData.LastModified);
+        }
+        if (!tmpFile.renameTo(mFile)) throw new IOException("Unable to replace config snapshot " + mFile);
+    }
+
+    /** Arrays are written as a count followed by each string; a count of -1 stands for a null array. **/
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException
+    {
+        if (strings == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(strings.length);
+        for (String str : strings) out.writeUTF(str != null ? str : "");
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        if (count < 0) return null;
+        String[] strings = new String[count];
+        for (int i=0 ; i < count ; i++) strings[i] = in.readUTF();
+        return strings;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String str) throws IOException
+    {
+        out.writeBoolean(str != null);
+        if (str != null) out.writeUTF(str);
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
+    private void logError(String text, Object... args) { LogHelper.logError(getClass(), text, args); }
+    private void logException(Throwable ex) { LogHelper.logException(getClass(), ex); }
+}
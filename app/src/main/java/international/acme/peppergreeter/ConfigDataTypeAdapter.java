@@ -0,0 +1,305 @@
+package international.acme.peppergreeter;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/** Reads config data straight off the JSON stream, without reflection, keeping only what applies to this robot's store and locale.
+ *  Besides the top-level greetings, special deals and choreography (which apply everywhere), the payload may carry the central catalog
+ *  for all stores and languages, as a list of entries each scoped to a store and/or locale:
+ *  <pre>
+ *  "catalog": [
+ *      { "store": "0042", "locale": "fr", "greetings": [ "Bonjour !" ], "special_deals": [ "Croissants - 2 pour 1 EUR" ] },
+ *      { "store": "*", "locale": "en-US", "greetings": [ "Howdy!" ], "choreography": { ... } }
+ *  ]
+ *  </pre>
+ *  An entry applies if its store is this robot's store or "*" (or absent), and its locale is the robot's language, language and country, or
+ *  "*" (or absent). The greetings and deals of every entry that applies are added to the top-level ones; of the choreographies, the one from the
+ *  most specific entry is used. Once an entry's store or locale is known not to apply, the rest of it is skipped without being read into memory,
+ *  so it's best for "store" and "locale" to come first in each entry.
+ *  Parse time and an estimate of the memory kept are reported for each load. **/
+public class ConfigDataTypeAdapter extends TypeAdapter<ConfigData>
+{
+    static final String ANY = "*";
+
+    /** Rough heap cost of a String on ART: object header, fields and char array header, plus two bytes per char. **/
+    static final int STRING_OVERHEAD_BYTES = 40;
+
+    /** Figures for one load of the config data. **/
+    public static class ParseStats
+    {
+        public final long ParseTimeUs;
+        public final int EntriesKept;
+        public final int EntriesSkipped;
+        public final int StringsKept;
+        public final long RetainedBytes;
+
+        ParseStats(long parseTimeUs, int entriesKept, int entriesSkipped, int stringsKept, long retainedBytes)
+        {
+            ParseTimeUs = parseTimeUs;
+            EntriesKept = entriesKept;
+            EntriesSkipped = entriesSkipped;
+            StringsKept = stringsKept;
+            RetainedBytes = retainedBytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Parsed config data in %d us: %d catalog entries kept, %d skipped, %d strings kept (~%d KB)",
+                    ParseTimeUs, EntriesKept, EntriesSkipped, StringsKept, RetainedBytes / 1024);
+        }
+    }
+
+    /** What has been kept so far during one read. **/
+    private static class Result
+    {
+        List<String> mGreetings;
+        List<String> mSpecialDeals;
+        ChoreographyDefinition mChoreography;
+        int mChoreographySpecificity = -1;
+        int mEntriesKept;
+        int mEntriesSkipped;
+        int mStringsKept;
+        long mRetainedBytes;
+    }
+
+    private final String mStoreId;
+    private final String mLanguage;
+    private final String mLanguageAndCountry;
+    private final TypeAdapter<ChoreographyDefinition> mChoreographyAdapter;
+    private volatile ParseStats mLastStats;
+
+    /** An empty store ID matches only entries for any store. **/
+    public ConfigDataTypeAdapter(String storeId, Locale locale)
+    {
+        mStoreId = storeId;
+        mLanguage = locale.getLanguage().toLowerCase(Locale.US);
+        mLanguageAndCountry = locale.getCountry().isEmpty() ? mLanguage : mLanguage + "-" + locale.getCountry().toLowerCase(Locale.US);
+        // The choreography is small and optional, so it is left to Gson's own adapter.
+        mChoreographyAdapter = new Gson().getAdapter(ChoreographyDefinition.class);
+    }
+
+    public ParseStats getLastStats() { return mLastStats; }
+
+    @Override
+    public ConfigData read(JsonReader in) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return null;
+        }
+
+        long startTime = System.nanoTime();
+        Result result = new Result();
+        in.beginObject();
+        while (in.hasNext())
+        {
+            switch (in.nextName())
+            {
+                case "greetings":
+                    result.mGreetings = readStrings(in, result.mGreetings, result);
+                    break;
+                case "special_deals":
+                    result.mSpecialDeals = readStrings(in, result.mSpecialDeals, result);
+                    break;
+                case "choreography":
+                    keepChoreography(result, readChoreography(in), 0);
+                    break;
+                case "catalog":
+                    in.beginArray();
+                    while (in.hasNext()) readCatalogEntry(in, result);
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        ConfigData configData = new ConfigData();
+        if (result.mGreetings != null) configData.Greetings = result.mGreetings.toArray(new String[result.mGreetings.size()]);
+        if (result.mSpecialDeals != null) configData.SpecialDeals = result.mSpecialDeals.toArray(new String[result.mSpecialDeals.size()]);
+        configData.Choreography = result.mChoreography;
+
+        ParseStats stats = new ParseStats((System.nanoTime() - startTime) / 1000, result.mEntriesKept, result.mEntriesSkipped, result.mStringsKept, result.mRetainedBytes);
+        mLastStats = stats;
+        logMsg("%s", stats);
+        return configData;
+    }
+
+    /** Read one catalog entry, and add what it holds to the result if it applies to this robot. **/
+    private void readCatalogEntry(JsonReader in, Result result) throws IOException
+    {
+        String store = null;
+        String locale = null;
+        boolean applies = true;
+        List<String> greetings = null;
+        List<String> specialDeals = null;
+        ChoreographyDefinition choreography = null;
+        Result entryResult = new Result();
+
+        in.beginObject();
+        while (in.hasNext())
+        {
+            String name = in.nextName();
+            if (!applies)
+            {
+                in.skipValue();
+                continue;
+            }
+            switch (name)
+            {
+                case "store":
+                    store = readNullableString(in);
+                    applies = matchesStore(store);
+                    break;
+                case "locale":
+                    locale = readNullableString(in);
+                    applies = matchesLocale(locale);
+                    break;
+                case "greetings":
+                    greetings = readStrings(in, greetings, entryResult);
+                    break;
+                case "special_deals":
+                    specialDeals = readStrings(in, specialDeals, entryResult);
+                    break;
+                case "choreography":
+                    choreography = readChoreography(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (!applies)
+        {
+            result.mEntriesSkipped++;
+            return;
+        }
+        result.mEntriesKept++;
+        if (greetings != null) result.mGreetings = addAll(result.mGreetings, greetings);
+        if (specialDeals != null) result.mSpecialDeals = addAll(result.mSpecialDeals, specialDeals);
+        result.mStringsKept += entryResult.mStringsKept;
+        result.mRetainedBytes += entryResult.mRetainedBytes;
+        if (choreography != null) keepChoreography(result, choreography, specificity(store, locale));
+    }
+
+    /** Read an array of strings onto the end of the list (created if null), skipping any nulls. **/
+    private List<String> readStrings(JsonReader in, List<String> list, Result result) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return list;
+        }
+        if (list == null) list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+        {
+            String value = readNullableString(in);
+            if (value == null) continue;
+            list.add(value);
+            result.mStringsKept++;
+            result.mRetainedBytes += STRING_OVERHEAD_BYTES + 2L * value.length();
+        }
+        in.endArray();
+        return list;
+    }
+
+    private ChoreographyDefinition readChoreography(JsonReader in) throws IOException
+    {
+        return mChoreographyAdapter.read(in);
+    }
+
+    private static String readNullableString(JsonReader in) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static List<String> addAll(List<String> list, List<String> values)
+    {
+        if (list == null) return values;
+        list.addAll(values);
+        return list;
+    }
+
+    /** The choreography of a more specific entry replaces that of a less specific one; between equally specific ones, the later wins. **/
+    private static void keepChoreography(Result result, ChoreographyDefinition choreography, int specificity)
+    {
+        if (choreography == null || specificity < result.mChoreographySpecificity) return;
+        result.mChoreography = choreography;
+        result.mChoreographySpecificity = specificity;
+    }
+
+    /** A store match counts for more than a locale match; a language and country match for more than a language one. **/
+    private int specificity(String store, String locale)
+    {
+        int specificity = 0;
+        if (store != null && !store.equals(ANY)) specificity += 4;
+        if (locale != null && !locale.equals(ANY)) specificity += (normalizeLocale(locale).indexOf('-') >= 0) ? 2 : 1;
+        return specificity;
+    }
+
+    boolean matchesStore(String store)
+    {
+        return store == null || store.equals(ANY) || store.equals(mStoreId);
+    }
+
+    boolean matchesLocale(String locale)
+    {
+        if (locale == null || locale.equals(ANY)) return true;
+        String normalized = normalizeLocale(locale);
+        return normalized.equals(mLanguage) || normalized.equals(mLanguageAndCountry);
+    }
+
+    /** Accept "en-US", "en_US" or "EN-us" alike. **/
+    private static String normalizeLocale(String locale)
+    {
+        return locale.replace('_', '-').toLowerCase(Locale.US);
+    }
+
+    /** Writes the config data in the flat (single-store) format. **/
+    @Override
+    public void write(JsonWriter out, ConfigData configData) throws IOException
+    {
+        if (configData == null)
+        {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        writeStrings(out.name("greetings"), configData.Greetings);
+        writeStrings(out.name("special_deals"), configData.SpecialDeals);
+        if (configData.Choreography != null) mChoreographyAdapter.write(out.name("choreography"), configData.Choreography);
+        out.endObject();
+    }
+
+    private static void writeStrings(JsonWriter out, String[] values) throws IOException
+    {
+        if (values == null)
+        {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (String value : values) out.value(value);
+        out.endArray();
+    }
+
+    private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
+}
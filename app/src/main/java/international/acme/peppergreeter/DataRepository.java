@@ -1,8 +1,13 @@
 package international.acme.peppergreeter;
 
+import io.reactivex.Observable;
 import io.reactivex.functions.Consumer;
 
 public interface DataRepository
 {
+    /** Start loading config data. onConfigDataLoaded may be invoked more than once, as fresher config data becomes available. **/
     void loadDataAsync(Consumer<ConfigData> onConfigDataLoaded, Consumer<Throwable> onError);
+
+    /** Stream of config data that has changed on the server since it was last loaded, for as long as subscribed. Never terminates with an error. **/
+    Observable<ConfigData> configDataUpdates();
 }
@@ -1,54 +1,291 @@
 package international.acme.peppergreeter;
 
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import io.reactivex.android.schedulers.AndroidSchedulers;
+import org.reactivestreams.Publisher;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.functions.Consumer;
-import io.reactivex.plugins.RxJavaPlugins;
 import io.reactivex.schedulers.Schedulers;
-import okhttp3.OkHttpClient;
-import retrofit2.Retrofit;
-import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
-import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.HttpException;
+import retrofit2.Response;
 
-/** Responsible for loading the list of greetings and special deals from remote server. */
+/** Responsible for loading the list of greetings and special deals from remote server.
+ *  The last good config is kept in a local snapshot, which is served first so the robot can start greeting immediately, and then revalidated against the server.
+ *  Until the server has answered, the robot runs on stale config (the snapshot, or the presenter's default greetings if there is none): a failed
+ *  load is retried with backoff, behind a circuit breaker so that a dead server isn't hammered, and fresh config is delivered as soon as it arrives. */
 public class DataRepositoryImpl implements DataRepository
 {
+    static final int HTTP_NOT_MODIFIED = 304;
+
+    /** How often to check the server for updated config data. Each delay is randomized by +/- REFRESH_JITTER so that a fleet of robots
+     *  switched on together doesn't poll the server in lockstep. Unchanged config costs a single 304 response per refresh. **/
+    static final long REFRESH_INTERVAL_MS = 60 * 1000;
+    static final double REFRESH_JITTER = 0.2;
+
+    /** A failed initial load is retried after INITIAL_RETRY_DELAY_MS, doubling each time up to MAX_RETRY_DELAY_MS. Each delay is randomized to
+     *  between half and all of that, again so robots don't retry in lockstep. After MAX_LOAD_ATTEMPTS the periodic refresh takes over. **/
+    static final long INITIAL_RETRY_DELAY_MS = 1000;
+    static final long MAX_RETRY_DELAY_MS = 60 * 1000;
+    static final int MAX_LOAD_ATTEMPTS = 8;
+
+    /** After this many consecutive failed requests, stop making any for CIRCUIT_OPEN_MS. **/
+    static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    static final long CIRCUIT_OPEN_MS = 5 * 60 * 1000;
+
     ConfigData mConfigData;
+    ConfigDataApi mConfigDataApi;
+    ConfigDataSnapshot mSnapshot;
+
+    /** Scheduler on which load results are delivered to the caller (the main thread in production). **/
+    Scheduler mObserverScheduler;
+
+    /** Most recent config data read from the snapshot or the server, whose validators are sent with the next request. Updated on the IO thread. **/
+    volatile ConfigData mLatestConfigData;
+
+    /** To aid in testing: allow overriding the scheduler on which refresh and retry timers run, which is also the circuit breaker's clock. **/
+    Scheduler mRefreshScheduler = Schedulers.computation();
+    public void setRefreshScheduler(Scheduler scheduler)
+    {
+        mRefreshScheduler = scheduler;
+        mCircuitBreaker = new CircuitBreaker("config server", CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MS, scheduler);
+    }
 
+    CircuitBreaker mCircuitBreaker = new CircuitBreaker("config server", CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MS, mRefreshScheduler);
+    public CircuitBreaker getCircuitBreaker() { return mCircuitBreaker; }
+
+    private final Random mRandom = new Random();
+
+    /** Set once the caller has been told the initial load failed, so it is only told once however many times the load is retried. **/
+    private final AtomicBoolean mLoadErrorDelivered = new AtomicBoolean();
+
+    /** Requests actually made to the server, and those that failed. Requests rejected by the open circuit are counted by the circuit breaker. **/
+    private final AtomicLong mAttemptCount = new AtomicLong();
+    private final AtomicLong mFailureCount = new AtomicLong();
+    public long getAttemptCount() { return mAttemptCount.get(); }
+    public long getFailureCount() { return mFailureCount.get(); }
+
+    /** Time spent on config the server hasn't confirmed: from the start of the load, and from each failed request, to the next successful one. **/
+    private long mStaleSinceMs = -1;
+    private long mStaleMs;
+
+    public DataRepositoryImpl(ConfigDataApi configDataApi, ConfigDataSnapshot snapshot, Scheduler observerScheduler)
+    {
+        mConfigDataApi = configDataApi;
+        mSnapshot = snapshot;
+        mObserverScheduler = observerScheduler;
+    }
+
+    /** Deliver the snapshot (if there is one) and then the config loaded from the server, so onConfigDataLoaded may be invoked twice.
+     *  If the server reports that the config has not changed since the snapshot was saved, it is not delivered again.
+     *  If the server load fails it is retried with backoff, and onError is invoked once, on the first failure, if there was no snapshot to fall
+     *  back on; the config is still delivered to onConfigDataLoaded if a retry succeeds. **/
     @Override
     public void loadDataAsync(Consumer<ConfigData> onConfigDataLoaded, Consumer<Throwable> onError)
     {
-        getConfigDataApi().getConfigData()
+        markStale();
+        // Retries are resubscribed from the timer's thread, so the load itself is moved back to an IO thread each time.
+        Maybe<ConfigData> serverLoad = loadFromServer().subscribeOn(Schedulers.io()).doOnError(ex -> onLoadFailed(ex, onError)).retryWhen(this::retryWithBackoff);
+        Maybe.concat(loadSnapshot(), serverLoad)
             .subscribeOn(Schedulers.io())
-            .observeOn(AndroidSchedulers.mainThread())
+            .observeOn(mObserverScheduler)
             .subscribe(
                 configData ->
                 {
-                    logMsg("Successfully loaded ConfigData: %d greetings, %d special deals", configData.Greetings.length, configData.SpecialDeals.length);
                     mConfigData = configData;
                     onConfigDataLoaded.accept(configData);
-                }, ex ->
-                {
-                    logError("Error loading config data from server");
-                    logException(ex);
-                    onError.accept(ex);
-                }
+                }, ex -> logError("Giving up on loading config data after %d attempts, will retry at next refresh. %s", MAX_LOAD_ATTEMPTS, getStats())
         );
     }
 
-    /** Build interface for getting data from the server API.  Set relatively short timeout (5 seconds) so robot can fall back to default greetings if the network is down.
-     * TODO: Inject these dependencies via Dagger or similar instead of creating them here.
-     **/
-    private ConfigDataApi getConfigDataApi()
+    /** Tell the caller the load failed, if this is the first failure and there is no snapshot to fall back on, so that it can use a fallback meanwhile. **/
+    private void onLoadFailed(Throwable ex, Consumer<Throwable> onError)
+    {
+        logLoadError("Error loading config data from server", ex);
+        if (mLatestConfigData != null) logMsg("Continuing with config data from snapshot");
+        else if (mLoadErrorDelivered.compareAndSet(false, true)) mObserverScheduler.scheduleDirect(() ->
+        {
+            try
+            {
+                onError.accept(ex);
+            }
+            catch (Exception callbackEx)
+            {
+                logException(callbackEx);
+            }
+        });
+    }
+
+    /** Resubscribe after an exponentially growing, randomized delay, or once the circuit breaker will let a request through if that is later. **/
+    private Publisher<Long> retryWithBackoff(Flowable<Throwable> errors)
+    {
+        AtomicInteger retryCount = new AtomicInteger();
+        return errors.flatMap(ex ->
+        {
+            int retry = retryCount.incrementAndGet();
+            if (retry >= MAX_LOAD_ATTEMPTS) return Flowable.error(ex);
+            long delayMs = Math.max(nextRetryDelayMs(retry), mCircuitBreaker.getRetryAfterMs());
+            logMsg("Retrying config data load in %d ms", delayMs);
+            return Flowable.timer(delayMs, TimeUnit.MILLISECONDS, mRefreshScheduler);
+        });
+    }
+
+    long nextRetryDelayMs(int retry)
+    {
+        long delayMs = Math.min(MAX_RETRY_DELAY_MS, INITIAL_RETRY_DELAY_MS << Math.min(retry - 1, 30));
+        return delayMs / 2 + (long) (mRandom.nextDouble() * delayMs / 2);
+    }
+
+    /** Poll the server every REFRESH_INTERVAL_MS (with jitter) for as long as subscribed, emitting only config data that has changed.
+     *  A failed refresh is logged and skipped, so the stream never terminates with an error. **/
+    @Override
+    public Observable<ConfigData> configDataUpdates()
+    {
+        return Observable.defer(() -> Observable.timer(nextRefreshDelayMs(), TimeUnit.MILLISECONDS, mRefreshScheduler))
+            .flatMapMaybe(tick -> refreshFromServer())
+            .repeat()
+            .observeOn(mObserverScheduler)
+            .doOnNext(configData ->
+            {
+                logMsg("Refreshed ConfigData from server");
+                mConfigData = configData;
+            });
+    }
+
+    private long nextRefreshDelayMs()
+    {
+        double jitter = (mRandom.nextDouble() * 2 - 1) * REFRESH_JITTER;
+        return (long) (REFRESH_INTERVAL_MS * (1 + jitter));
+    }
+
+    private Maybe<ConfigData> refreshFromServer()
+    {
+        return loadFromServer()
+            .subscribeOn(Schedulers.io())
+            .doOnError(ex -> logLoadError("Error refreshing config data from server, will retry at next refresh", ex))
+            .onErrorComplete();
+    }
+
+    private Maybe<ConfigData> loadSnapshot()
+    {
+        return Maybe.fromCallable(mSnapshot::read).doOnSuccess(configData -> mLatestConfigData = configData);
+    }
+
+    /** Conditionally load config data from the server. Completes empty on 304 Not Modified, so nothing is parsed or redelivered;
+     *  otherwise the new config data replaces the local snapshot once loaded. Fails without making a request while the circuit is open. **/
+    private Maybe<ConfigData> loadFromServer()
+    {
+        return Maybe.defer(() ->
+        {
+            CircuitBreaker circuitBreaker = mCircuitBreaker;
+            if (!circuitBreaker.allowRequest()) return Maybe.<ConfigData>error(circuitBreaker.newOpenException());
+            mAttemptCount.incrementAndGet();
+            ConfigData latest = mLatestConfigData;
+            String eTag = (latest != null) ? latest.ETag : null;
+            String lastModified = (latest != null) ? latest.LastModified : null;
+            return mConfigDataApi.getConfigData(eTag, lastModified)
+                .flatMapMaybe(this::onServerResponse)
+                .doOnSuccess(configData -> onServerRequestSucceeded(circuitBreaker))
+                .doOnComplete(() -> onServerRequestSucceeded(circuitBreaker))
+                .doOnError(ex -> onServerRequestFailed(circuitBreaker))
+                .doOnDispose(circuitBreaker::onCancelled);
+        });
+    }
+
+    /** Whether the config changed or not, the server has confirmed it is current. **/
+    private void onServerRequestSucceeded(CircuitBreaker circuitBreaker)
+    {
+        circuitBreaker.onSuccess();
+        if (markFresh()) logMsg("Config data is current again. %s", getStats());
+    }
+
+    private void onServerRequestFailed(CircuitBreaker circuitBreaker)
+    {
+        mFailureCount.incrementAndGet();
+        circuitBreaker.onFailure();
+        markStale();
+    }
+
+    private synchronized void markStale()
+    {
+        if (mStaleSinceMs < 0) mStaleSinceMs = nowMs();
+    }
+
+    /** Returns true if the config data had been stale. **/
+    private synchronized boolean markFresh()
+    {
+        if (mStaleSinceMs < 0) return false;
+        mStaleMs += nowMs() - mStaleSinceMs;
+        mStaleSinceMs = -1;
+        return true;
+    }
+
+    /** Total time on stale config data, including the current stretch if it is stale now. **/
+    public synchronized long getStaleMs()
+    {
+        return mStaleMs + ((mStaleSinceMs >= 0) ? nowMs() - mStaleSinceMs : 0);
+    }
+
+    public String getStats()
+    {
+        return String.format("Config data: %d requests, %d failed, %s, %d s on stale config", getAttemptCount(), getFailureCount(), mCircuitBreaker, getStaleMs() / 1000);
+    }
+
+    private long nowMs()
+    {
+        return mRefreshScheduler.now(TimeUnit.MILLISECONDS);
+    }
+
+    private Maybe<ConfigData> onServerResponse(Response<ConfigData> response)
+    {
+        if (response.code() == HTTP_NOT_MODIFIED)
+        {
+            logMsg("ConfigData not modified since last load");
+            return Maybe.empty();
+        }
+        if (!response.isSuccessful()) return Maybe.error(new HttpException(response));
+
+        ConfigData configData = response.body();
+        configData.ETag = response.headers().get("ETag");
+        configData.LastModified = response.headers().get("Last-Modified");
+        logMsg("Successfully loaded ConfigData: %d greetings, %d special deals", configData.Greetings.length, configData.SpecialDeals.length);
+        mLatestConfigData = configData;
+        saveSnapshot(configData);
+        return Maybe.just(configData);
+    }
+
+    /** Failing to save the snapshot only costs us a slower start next time, so log it and carry on. **/
+    private void saveSnapshot(ConfigData configData)
+    {
+        try
+        {
+            mSnapshot.write(configData);
+        }
+        catch (Exception ex)
+        {
+            logError("Unable to save config snapshot");
+            logException(ex);
+        }
+    }
+
+    /** While the circuit is open there is nothing new to say about each rejected request, so only the real failures are logged in full. **/
+    private void logLoadError(String text, Throwable ex)
     {
-        OkHttpClient okHttpClient = new OkHttpClient.Builder().readTimeout(5, TimeUnit.SECONDS).connectTimeout(5, TimeUnit.SECONDS).build();
-        Retrofit.Builder builder = new Retrofit.Builder();
-        return builder.client(okHttpClient)
-                .baseUrl("https://jsonblob.com")
-                .addConverterFactory(GsonConverterFactory.create())
-                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
-                .build().create(ConfigDataApi.class);
+        if (ex instanceof CircuitBreaker.OpenException)
+        {
+            logMsg("%s: %s", text, ex.getMessage());
+            return;
+        }
+        logError(text);
+        logException(ex);
+        logMsg("%s", getStats());
     }
 
     private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
@@ -0,0 +1,55 @@
+package international.acme.peppergreeter;
+
+/** Pages through any number of special deals, a page at a time, in the fixed number of deal slots on screen (each of which has its own pointing
+ *  animation). Only the deals of the visible page are ever bound to the view, so the layout cost is the same however many deals there are;
+ *  the rest stay as the strings the config data was parsed into. **/
+public class DealCarousel
+{
+    private final String[] mDeals;
+    private final int mSlotCount;
+    private int mPage;
+
+    public DealCarousel(String[] deals, int slotCount)
+    {
+        mDeals = deals;
+        mSlotCount = slotCount;
+    }
+
+    public int getDealCount() { return mDeals.length; }
+    public int getPage() { return mPage; }
+
+    public int getPageCount()
+    {
+        return (mDeals.length + mSlotCount - 1) / mSlotCount;
+    }
+
+    /** Move on to the next page, wrapping around after the last. Returns false if there is only one page (or none), so nothing changed. **/
+    public boolean nextPage()
+    {
+        if (getPageCount() <= 1) return false;
+        mPage = (mPage + 1) % getPageCount();
+        return true;
+    }
+
+    /** The deal in the given slot of the visible page, or null if the slot is empty. **/
+    public String getVisibleDeal(int slot)
+    {
+        int index = mPage * mSlotCount + slot;
+        return (slot < mSlotCount && index < mDeals.length) ? mDeals[index] : null;
+    }
+
+    /** The deals of the visible page, in slot order. **/
+    public String[] getVisibleDeals()
+    {
+        return getPageDeals(mPage);
+    }
+
+    public String[] getPageDeals(int page)
+    {
+        int start = Math.min(page * mSlotCount, mDeals.length);
+        int end = Math.min(start + mSlotCount, mDeals.length);
+        String[] deals = new String[end - start];
+        System.arraycopy(mDeals, start, deals, 0, deals.length);
+        return deals;
+    }
+}
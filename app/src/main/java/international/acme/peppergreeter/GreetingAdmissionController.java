@@ -0,0 +1,277 @@
+package international.acme.peppergreeter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+
+/** Decides when greeting triggers turn into greetings. A trigger that arrives while the robot is idle starts a greeting straight away;
+ *  triggers that arrive during a greeting are queued (up to a maximum depth) and greeted in turn, unless they expire first.
+ *  Triggers that arrive within a short window of each other are merged into a single group greeting, so several people walking up
+ *  together are greeted once rather than back to back. Throughput numbers are kept for sizing robots per entrance. **/
+public class GreetingAdmissionController
+{
+    /** Maximum number of groups waiting to be greeted. When full, the oldest waiting group is dropped to make room. **/
+    static final int DEFAULT_MAX_QUEUE_DEPTH = 3;
+
+    /** A queued trigger older than this is dropped: the people have most likely walked past by then. **/
+    static final long DEFAULT_TRIGGER_EXPIRY_MS = 15000;
+
+    /** Triggers within this window of the first trigger of a group are merged into that group. **/
+    static final long DEFAULT_GROUP_WINDOW_MS = 2000;
+
+    /** Starts the greeting sequence for a group of the given size, which is a priority group if it came from onPriorityTrigger().
+     *  The controller must be told when it ends via onGreetingCompleted(). **/
+    public interface GreetingStarter
+    {
+        void startGreeting(int groupSize, boolean priority);
+    }
+
+    /** Told who was in a group that was dropped without being greeted (the IDs passed to onTrigger()), so that they can be greeted if they trigger again.
+     *  Called outside the controller's lock. **/
+    public interface GroupDroppedListener
+    {
+        void onGroupDropped(Set<Long> targets);
+    }
+
+    private static class Group
+    {
+        final long mFirstTriggerMs;
+        final boolean mPriority;
+        final Set<Long> mTargets = new HashSet<>();
+        int mSize;
+        long mWaitMs;
+
+        Group(long firstTriggerMs, int size, boolean priority)
+        {
+            mFirstTriggerMs = firstTriggerMs;
+            mSize = size;
+            mPriority = priority;
+        }
+    }
+
+    private final GreetingStarter mGreetingStarter;
+    private final Scheduler mClock;
+    private final ArrayDeque<Group> mQueue = new ArrayDeque<>();
+    private final long mStartTimeMs;
+
+    private int mMaxQueueDepth = DEFAULT_MAX_QUEUE_DEPTH;
+    private long mTriggerExpiryMs = DEFAULT_TRIGGER_EXPIRY_MS;
+    private long mGroupWindowMs = DEFAULT_GROUP_WINDOW_MS;
+
+    /** The group currently being greeted, or null if idle. **/
+    private Group mCurrentGroup;
+
+    private long mTriggerCount;
+    private long mMergedCount;
+    private long mDroppedCount;
+    private long mGreetingCount;
+    private long mTotalQueueWaitMs;
+    private long mMaxQueueWaitMs;
+
+    /** Groups dropped while holding the lock, to be passed to the drop listener once it is released. **/
+    private final List<Group> mDroppedGroups = new ArrayList<>();
+
+    /** The clock scheduler is only used as a time source, so tests and simulations can run on virtual time. **/
+    public GreetingAdmissionController(GreetingStarter greetingStarter, Scheduler clock)
+    {
+        mGreetingStarter = greetingStarter;
+        mClock = clock;
+        mStartTimeMs = now();
+    }
+
+    public synchronized void setMaxQueueDepth(int maxQueueDepth) { mMaxQueueDepth = maxQueueDepth; }
+    public synchronized void setTriggerExpiryMs(long expiryMs) { mTriggerExpiryMs = expiryMs; }
+    public synchronized void setGroupWindowMs(long windowMs) { mGroupWindowMs = windowMs; }
+
+    /** Optional: metrics in which dropped groups are also counted. **/
+    private RobotMetrics mMetrics;
+    public synchronized void setMetrics(RobotMetrics metrics) { mMetrics = metrics; }
+
+    /** Optional: told about groups that are dropped, so their people aren't left marked as greeted. **/
+    private GroupDroppedListener mGroupDroppedListener;
+    public synchronized void setGroupDroppedListener(GroupDroppedListener listener) { mGroupDroppedListener = listener; }
+
+    /** A greeting has been requested for the given number of people. **/
+    public void onTrigger(int peopleCount)
+    {
+        onTrigger(peopleCount, Collections.<Long>emptySet());
+    }
+
+    /** A greeting has been requested for the given number of people, identified by the given (track) IDs. **/
+    public void onTrigger(int peopleCount, Collection<Long> targets)
+    {
+        Group groupToStart;
+        synchronized (this)
+        {
+            long now = now();
+            mTriggerCount++;
+
+            // Merge into the group being greeted, or the last group waiting, if it formed recently enough.
+            Group lastGroup = !mQueue.isEmpty() ? mQueue.peekLast() : mCurrentGroup;
+            if (lastGroup != null && now - lastGroup.mFirstTriggerMs <= mGroupWindowMs)
+            {
+                lastGroup.mSize = Math.max(lastGroup.mSize, peopleCount);
+                lastGroup.mTargets.addAll(targets);
+                mMergedCount++;
+                return;
+            }
+
+            if (mQueue.size() >= mMaxQueueDepth)
+            {
+                onGroupDropped(mQueue.poll());
+                logMsg("Greeting queue full, dropped oldest waiting group");
+            }
+            Group group = new Group(now, peopleCount, false);
+            group.mTargets.addAll(targets);
+            mQueue.add(group);
+            groupToStart = pollNextGroup(now);
+        }
+        notifyGroupsDropped();
+        if (groupToStart != null) mGreetingStarter.startGreeting(groupToStart.mSize, groupToStart.mPriority);
+    }
+
+    /** A greeting has been requested that must not wait behind, or be merged into, groups already triggered (such as one requested by the operator).
+     *  It goes to the head of the queue, so it is greeted as soon as the current greeting (if any) has completed. **/
+    public void onPriorityTrigger(int peopleCount)
+    {
+        Group groupToStart;
+        synchronized (this)
+        {
+            long now = now();
+            mTriggerCount++;
+            if (mQueue.size() >= mMaxQueueDepth)
+            {
+                onGroupDropped(mQueue.poll());
+                logMsg("Greeting queue full, dropped oldest waiting group");
+            }
+            mQueue.addFirst(new Group(now, peopleCount, true));
+            groupToStart = pollNextGroup(now);
+        }
+        notifyGroupsDropped();
+        if (groupToStart != null) mGreetingStarter.startGreeting(groupToStart.mSize, groupToStart.mPriority);
+    }
+
+    /** The current greeting sequence has finished (successfully or not): start greeting the next group waiting, if any. **/
+    public void onGreetingCompleted()
+    {
+        Group groupToStart;
+        synchronized (this)
+        {
+            mCurrentGroup = null;
+            groupToStart = pollNextGroup(now());
+        }
+        notifyGroupsDropped();
+        if (groupToStart != null) mGreetingStarter.startGreeting(groupToStart.mSize, groupToStart.mPriority);
+    }
+
+    /** The greeting starter couldn't start the group it was just given, as a greeting is still in progress that the controller didn't know about.
+     *  The group is dropped rather than the controller waiting forever for it to complete; the greeting in progress reports its own completion. **/
+    public void onGreetingRejected()
+    {
+        synchronized (this)
+        {
+            if (mCurrentGroup == null) return;
+            logMsg("Greeting for group of %d rejected, dropping it", mCurrentGroup.mSize);
+            mGreetingCount--;
+            mTotalQueueWaitMs -= mCurrentGroup.mWaitMs;
+            onGroupDropped(mCurrentGroup);
+            mCurrentGroup = null;
+        }
+        notifyGroupsDropped();
+    }
+
+    /** If idle, take the next group that hasn't expired and mark it as being greeted. **/
+    private Group pollNextGroup(long now)
+    {
+        if (mCurrentGroup != null) return null;
+        Group group;
+        while ((group = mQueue.poll()) != null)
+        {
+            long waitMs = now - group.mFirstTriggerMs;
+            if (waitMs > mTriggerExpiryMs)
+            {
+                onGroupDropped(group);
+                logMsg("Dropped group of %d after waiting %d ms", group.mSize, waitMs);
+                continue;
+            }
+            group.mWaitMs = waitMs;
+            mCurrentGroup = group;
+            mGreetingCount++;
+            mTotalQueueWaitMs += waitMs;
+            mMaxQueueWaitMs = Math.max(mMaxQueueWaitMs, waitMs);
+            return group;
+        }
+        return null;
+    }
+
+    private void onGroupDropped(Group group)
+    {
+        mDroppedCount++;
+        if (mMetrics != null) mMetrics.recordDroppedGreeting();
+        if (mGroupDroppedListener != null && !group.mTargets.isEmpty()) mDroppedGroups.add(group);
+    }
+
+    private void notifyGroupsDropped()
+    {
+        GroupDroppedListener listener;
+        List<Group> droppedGroups;
+        synchronized (this)
+        {
+            if (mDroppedGroups.isEmpty()) return;
+            listener = mGroupDroppedListener;
+            droppedGroups = new ArrayList<>(mDroppedGroups);
+            mDroppedGroups.clear();
+        }
+        if (listener == null) return;
+        for (Group group : droppedGroups) listener.onGroupDropped(group.mTargets);
+    }
+
+    /** Time, on the clock scheduler, of the first trigger of the group being greeted, or -1 if idle. **/
+    public synchronized long getCurrentGroupTriggerMs() { return (mCurrentGroup != null) ? mCurrentGroup.mFirstTriggerMs : -1; }
+
+    public synchronized boolean isGreetingInProgress() { return mCurrentGroup != null; }
+    public synchronized int getQueueDepth() { return mQueue.size(); }
+    public synchronized long getTriggerCount() { return mTriggerCount; }
+    public synchronized long getMergedCount() { return mMergedCount; }
+    public synchronized long getDroppedCount() { return mDroppedCount; }
+    public synchronized long getGreetingCount() { return mGreetingCount; }
+    public synchronized long getMaxQueueWaitMs() { return mMaxQueueWaitMs; }
+
+    public synchronized long getAverageQueueWaitMs()
+    {
+        return (mGreetingCount > 0) ? mTotalQueueWaitMs / mGreetingCount : 0;
+    }
+
+    /** Proportion of groups (not merged triggers) that were never greeted. **/
+    public synchronized double getDropRate()
+    {
+        long groups = mGreetingCount + mDroppedCount;
+        return (groups > 0) ? (double) mDroppedCount / groups : 0;
+    }
+
+    public synchronized double getGreetingsPerHour()
+    {
+        long elapsedMs = Math.max(1, now() - mStartTimeMs);
+        return mGreetingCount * (double) TimeUnit.HOURS.toMillis(1) / elapsedMs;
+    }
+
+    public synchronized String getStats()
+    {
+        return String.format("%d triggers, %d merged, %d greetings (%.1f/hour), %d dropped (%.0f%%), avg wait %d ms, max wait %d ms",
+                mTriggerCount, mMergedCount, mGreetingCount, getGreetingsPerHour(), mDroppedCount, getDropRate() * 100, getAverageQueueWaitMs(), mMaxQueueWaitMs);
+    }
+
+    private long now()
+    {
+        return mClock.now(TimeUnit.MILLISECONDS);
+    }
+
+    private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
+}
@@ -0,0 +1,188 @@
+package international.acme.peppergreeter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Completable;
+
+import static international.acme.peppergreeter.ChoreographyDefinition.*;
+import static international.acme.peppergreeter.ConfigData.MAX_DEAL_COUNT;
+
+/** A ChoreographyDefinition compiled against one version of the config data. Compiling resolves animation names and guards that depend
+ *  only on the config data, and builds the Completable for each section once. The Completables are cold, so every greeting subscribes to the same ones:
+ *  only what differs per greeting (the greeting phrase, the group size, the page of deals on screen, whether the view is attached) is looked up
+ *  through the Environment as it runs. "for_each_deal" runs once for each deal slot on screen, announcing the deal currently shown in it.
+ *  The plan is immutable and is replaced as a whole when new config data is applied. **/
+public class GreetingPlan
+{
+    /** Supplies what can only be known while a greeting runs. Called on the thread the step runs on. **/
+    public interface Environment
+    {
+        String nextGreeting();
+        int getGroupSize();
+
+        /** The plan has reached the deals: called as the deals intro starts, and again as "for_each_deal" starts, as a choreography may have no intro. **/
+        void onAnnouncingDeals();
+
+        /** The deal shown in the given slot on screen, or null if the slot is empty. **/
+        String getVisibleDeal(int slot);
+
+        /** Return a Completable that highlights the deal on screen, or completes straight away if the view isn't attached. **/
+        Completable highlightDeal(int dealIndex);
+    }
+
+    private final Completable mApproach;
+    private final Completable mBody;
+    private final Completable mFinish;
+
+    private GreetingPlan(Completable approach, Completable body, Completable finish)
+    {
+        mApproach = approach;
+        mBody = body;
+        mFinish = finish;
+    }
+
+    /** Runs first, and always runs to completion: the greeting isn't cut short until it has finished. **/
+    public Completable getApproach() { return mApproach; }
+
+    /** The part of the greeting that may be cut short. **/
+    public Completable getBody() { return mBody; }
+
+    /** Runs last, whether or not the body was cut short, to bring the robot back to where it started. **/
+    public Completable getFinish() { return mFinish; }
+
+    /** Compile the definition. Throws IllegalArgumentException if it is invalid (unknown action, guard or animation; a move in the body;
+     *  or moves that might not bring the robot back to where it started). **/
+    public static GreetingPlan compile(ChoreographyDefinition definition, ConfigData configData, String dealsIntro, RobotController robotController, Environment environment)
+    {
+        Compiler compiler = new Compiler(configData, dealsIntro, robotController, environment);
+        Completable approach = compiler.compileSection(definition.Approach, true);
+        Completable body = compiler.compileSection(definition.Body, false);
+        Completable finish = compiler.compileSection(definition.Finish, true);
+        if (Math.abs(compiler.mTotalX) > 1e-6 || Math.abs(compiler.mTotalY) > 1e-6)
+        {
+            throw new IllegalArgumentException(String.format("Moves add up to (%.2f, %.2f), robot would not return to its start position", compiler.mTotalX, compiler.mTotalY));
+        }
+        return new GreetingPlan(approach, body, finish);
+    }
+
+    private static class Compiler
+    {
+        final String mDealsIntro;
+        final RobotController mRobotController;
+        final Environment mEnvironment;
+        final int mDealCount;
+        final int mSlotCount;
+        double mTotalX;
+        double mTotalY;
+
+        Compiler(ConfigData configData, String dealsIntro, RobotController robotController, Environment environment)
+        {
+            mDealsIntro = dealsIntro;
+            mRobotController = robotController;
+            mEnvironment = environment;
+            mDealCount = configData.SpecialDeals.length;
+            mSlotCount = Math.min(mDealCount, MAX_DEAL_COUNT);
+        }
+
+        Completable compileSection(Step[] steps, boolean movesAllowed)
+        {
+            return Completable.concat(compileSteps(steps, movesAllowed, -1));
+        }
+
+        /** Compile each step, leaving out those whose guard can already be seen not to hold. dealIndex is the deal slot, or -1 outside of "for_each_deal". **/
+        List<Completable> compileSteps(Step[] steps, boolean movesAllowed, int dealIndex)
+        {
+            List<Completable> completables = new ArrayList<>();
+            if (steps == null) return completables;
+            for (Step step : steps)
+            {
+                if (step == null || step.Action == null) throw new IllegalArgumentException("Step with no action");
+                // A guarded move might not happen, so the moves could no longer be checked to add up to zero.
+                Completable completable = compileStep(step, movesAllowed && step.When == null, dealIndex);
+                completable = applyGuard(step.When, completable);
+                if (completable != null) completables.add(completable);
+            }
+            return completables;
+        }
+
+        Completable compileStep(Step step, boolean movesAllowed, int dealIndex)
+        {
+            switch (step.Action)
+            {
+                case ACTION_MOVE:
+                    if (!movesAllowed) throw new IllegalArgumentException("Moves are only allowed in the approach and finish sections, outside of guarded or parallel steps");
+                    mTotalX += step.X;
+                    mTotalY += step.Y;
+                    return mRobotController.moveWithVector(step.X, step.Y, 0);
+
+                case ACTION_SAY:
+                    if (step.Text == null) throw new IllegalArgumentException("\"say\" step with no text");
+                    return mRobotController.speak(step.Text);
+
+                case ACTION_SAY_GREETING:
+                    return Completable.defer(() -> mRobotController.speak(mEnvironment.nextGreeting()));
+
+                case ACTION_SAY_DEALS_INTRO:
+                    return Completable.fromAction(mEnvironment::onAnnouncingDeals).andThen(mRobotController.speak(mDealsIntro));
+
+                case ACTION_ANIMATE:
+                    int resourceId = AnimationManifest.getResourceId(step.Animation);
+                    if (resourceId == 0) throw new IllegalArgumentException("Unknown animation: " + step.Animation);
+                    return mRobotController.animate(resourceId);
+
+                case ACTION_PARALLEL:
+                    return Completable.merge(compileSteps(step.Steps, false, dealIndex));
+
+                case ACTION_SEQUENCE:
+                    return Completable.concat(compileSteps(step.Steps, movesAllowed, dealIndex));
+
+                case ACTION_FOR_EACH_DEAL:
+                    if (dealIndex >= 0) throw new IllegalArgumentException("\"for_each_deal\" steps can't be nested");
+                    List<Completable> deals = new ArrayList<>();
+                    for (int i=0 ; i < mSlotCount ; i++)
+                    {
+                        int slot = i;
+                        Completable dealSteps = Completable.concat(compileSteps(step.Steps, false, slot));
+                        // The last page of deals may not fill every slot.
+                        deals.add(Completable.defer(() -> (mEnvironment.getVisibleDeal(slot) != null) ? dealSteps : Completable.complete()));
+                    }
+                    return Completable.fromAction(mEnvironment::onAnnouncingDeals).andThen(Completable.concat(deals));
+
+                case ACTION_SAY_DEAL:
+                    checkInDealLoop(step, dealIndex);
+                    return Completable.defer(() -> mRobotController.speak(mEnvironment.getVisibleDeal(dealIndex)));
+
+                case ACTION_POINT_TO_DEAL:
+                    checkInDealLoop(step, dealIndex);
+                    return mRobotController.animate(AnimationManifest.POINT_TO_DEAL_IDS[dealIndex]);
+
+                case ACTION_HIGHLIGHT_DEAL:
+                    checkInDealLoop(step, dealIndex);
+                    return Completable.defer(() -> mEnvironment.highlightDeal(dealIndex));
+
+                default:
+                    throw new IllegalArgumentException("Unknown action: " + step.Action);
+            }
+        }
+
+        /** Guards on the config data are resolved now (returning null if the step is left out); guards on the group are checked as the greeting runs. **/
+        Completable applyGuard(String when, Completable completable)
+        {
+            if (when == null) return completable;
+            switch (when)
+            {
+                case WHEN_HAS_DEALS: return (mDealCount > 0) ? completable : null;
+                case WHEN_NO_DEALS: return (mDealCount == 0) ? completable : null;
+                case WHEN_GROUP: return Completable.defer(() -> (mEnvironment.getGroupSize() > 1) ? completable : Completable.complete());
+                case WHEN_SINGLE: return Completable.defer(() -> (mEnvironment.getGroupSize() <= 1) ? completable : Completable.complete());
+                default: throw new IllegalArgumentException("Unknown guard: " + when);
+            }
+        }
+
+        void checkInDealLoop(Step step, int dealIndex)
+        {
+            if (dealIndex < 0) throw new IllegalArgumentException("\"" + step.Action + "\" step outside of \"for_each_deal\"");
+        }
+    }
+}
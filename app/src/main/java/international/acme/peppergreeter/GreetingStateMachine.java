@@ -0,0 +1,65 @@
+package international.acme.peppergreeter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Where the presenter is in the greeting lifecycle. Transitions are made with compare-and-set, so they are safe from any thread without locks:
+ *  of two threads trying to start a greeting at once, exactly one succeeds, and the other's transition is rejected and counted. A rejected
+ *  transition means some event arrived in a state it wasn't expected in, so a non-zero count is worth looking into. **/
+public class GreetingStateMachine
+{
+    public enum State
+    {
+        IDLE,
+        /** Moving towards the humans being greeted. **/
+        APPROACHING,
+        /** Saying the greeting. **/
+        GREETING,
+        /** Announcing the special deals. **/
+        ANNOUNCING,
+        /** Moving back to the start position, whether the greeting completed or was cut short. **/
+        RETURNING
+    }
+
+    private final AtomicReference<State> mState = new AtomicReference<>(State.IDLE);
+    private final AtomicLong mRejectedTransitionCount = new AtomicLong();
+
+    public State getState() { return mState.get(); }
+    public boolean isIdle() { return mState.get() == State.IDLE; }
+    public long getRejectedTransitionCount() { return mRejectedTransitionCount.get(); }
+
+    /** Move to the target state if currently in one of the given states. Returns false, and counts the transition as rejected, if not. **/
+    public boolean transition(State to, State... from)
+    {
+        while (true)
+        {
+            State current = mState.get();
+            if (!contains(from, current))
+            {
+                mRejectedTransitionCount.incrementAndGet();
+                logError("Rejected greeting state transition %s -> %s", current, to);
+                return false;
+            }
+            if (mState.compareAndSet(current, to))
+            {
+                logMsg("Greeting state %s -> %s", current, to);
+                return true;
+            }
+        }
+    }
+
+    private static boolean contains(State[] states, State state)
+    {
+        for (State s : states) if (s == state) return true;
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Greeting state %s, %d rejected transitions", mState.get(), mRejectedTransitionCount.get());
+    }
+
+    private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
+    private void logError(String text, Object... args) { LogHelper.logError(getClass(), text, args); }
+}
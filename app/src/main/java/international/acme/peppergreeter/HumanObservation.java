@@ -0,0 +1,27 @@
+package international.acme.peppergreeter;
+
+import com.aldebaran.qi.sdk.object.interaction.Human;
+
+/** A human detected by the robot, with the position of their head relative to the robot (in meters, on the floor plane) at the time of detection. **/
+public class HumanObservation
+{
+    /** The SDK object for the human. May be null for observations that didn't come from the robot (tests, simulation). **/
+    public final Human SdkHuman;
+
+    public final double X;
+    public final double Y;
+
+    /** Planar distance from the robot, in meters. **/
+    public final double Distance;
+
+    public final long TimestampMs;
+
+    public HumanObservation(Human sdkHuman, double x, double y, long timestampMs)
+    {
+        SdkHuman = sdkHuman;
+        X = x;
+        Y = y;
+        Distance = Math.sqrt(x * x + y * y);
+        TimestampMs = timestampMs;
+    }
+}
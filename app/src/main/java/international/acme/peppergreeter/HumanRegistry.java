@@ -0,0 +1,284 @@
+package international.acme.peppergreeter;
+
+import com.aldebaran.qi.sdk.object.interaction.Human;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Keeps track of the humans recently seen around the robot, so that someone who has already been greeted isn't greeted again while they linger.
+ *  Each observation is associated with a track: by the SDK's Human object if it matches one already seen, otherwise with the nearest track seen
+ *  within ASSOCIATION_RADIUS_M in the last TRACK_TIMEOUT_MS. Tracks are held in a spatial grid so each lookup only checks neighbouring cells.
+ *  Tracks not seen for TRACK_TIMEOUT_MS are forgotten, unless they were greeted within the cooldown: humans-around events only arrive when someone
+ *  comes or goes, so a greeted shopper who lingers can go well over TRACK_TIMEOUT_MS without being seen, and must still be recognised when the
+ *  next event arrives. At most MAX_TRACKS are held, so memory stays flat however many people walk past. **/
+public class HumanRegistry
+{
+    /** A person walks well under this distance in the time between two humans-around events. **/
+    static final double ASSOCIATION_RADIUS_M = 0.75;
+    static final long TRACK_TIMEOUT_MS = 10000;
+    static final int MAX_TRACKS = 64;
+
+    /** How long after being greeted a human is not greeted again. **/
+    static final long DEFAULT_GREETING_COOLDOWN_MS = 5 * 60 * 1000;
+
+    /** Number of past positions kept per track, for estimating how the human is moving. **/
+    static final int HISTORY_SIZE = 8;
+
+    /** A human followed across observations, with a short history of their positions (oldest first, via getHistory*()). **/
+    public static class TrackedHuman
+    {
+        public final long Id;
+        public double X;
+        public double Y;
+        public long LastSeenMs;
+        public long LastGreetedMs = -1;
+
+        /** Set by ApproachPredictor while a predicted arrival for this human is waiting to be checked against the actual one. **/
+        public long PredictedArrivalMs = -1;
+
+        Human mSdkHuman;
+        long mCellKey;
+        long mLastUpdate;
+        /** Set to the update count while the current event matches this track by SDK human, so that it isn't pruned or evicted. **/
+        long mPinnedUpdate;
+
+        final long[] mHistoryTimeMs = new long[HISTORY_SIZE];
+        final double[] mHistoryX = new double[HISTORY_SIZE];
+        final double[] mHistoryY = new double[HISTORY_SIZE];
+        int mHistoryCount;
+        int mHistoryNext;
+
+        TrackedHuman(long id)
+        {
+            Id = id;
+        }
+
+        public int getHistorySize() { return mHistoryCount; }
+        public long getHistoryTimeMs(int i) { return mHistoryTimeMs[historyIndex(i)]; }
+        public double getHistoryX(int i) { return mHistoryX[historyIndex(i)]; }
+        public double getHistoryY(int i) { return mHistoryY[historyIndex(i)]; }
+
+        void addHistory(long timeMs, double x, double y)
+        {
+            mHistoryTimeMs[mHistoryNext] = timeMs;
+            mHistoryX[mHistoryNext] = x;
+            mHistoryY[mHistoryNext] = y;
+            mHistoryNext = (mHistoryNext + 1) % HISTORY_SIZE;
+            if (mHistoryCount < HISTORY_SIZE) mHistoryCount++;
+        }
+
+        private int historyIndex(int i)
+        {
+            return (mHistoryNext - mHistoryCount + i + HISTORY_SIZE) % HISTORY_SIZE;
+        }
+    }
+
+    /** Tracks in least recently seen order, so stale tracks are found at the head. **/
+    private final LinkedHashMap<Long, TrackedHuman> mTracks = new LinkedHashMap<>(MAX_TRACKS, 0.75f, true);
+    private final Map<Long, List<TrackedHuman>> mGrid = new HashMap<>();
+    private final Map<Human, TrackedHuman> mTracksBySdkHuman = new HashMap<>();
+    private final List<TrackedHuman> mUpdateResult = new ArrayList<>();
+    private final List<TrackedHuman> mSdkMatches = new ArrayList<>();
+
+    private long mGreetingCooldownMs = DEFAULT_GREETING_COOLDOWN_MS;
+    private long mNextTrackId = 1;
+    private long mUpdateCount;
+
+    public void setGreetingCooldownMs(long cooldownMs) { mGreetingCooldownMs = cooldownMs; }
+
+    /** Associate each observation from one humans-around event with a track, creating tracks for new arrivals.
+     *  Returns the tracks in the same order as the observations. The returned list is reused by the next call. **/
+    public List<TrackedHuman> update(List<HumanObservation> humans)
+    {
+        mUpdateCount++;
+        mUpdateResult.clear();
+        mSdkMatches.clear();
+        for (int i=0 ; i < humans.size() ; i++)
+        {
+            HumanObservation human = humans.get(i);
+            TrackedHuman track = (human.SdkHuman != null) ? mTracksBySdkHuman.get(human.SdkHuman) : null;
+            if (track != null) track.mPinnedUpdate = mUpdateCount;
+            mSdkMatches.add(track);
+        }
+        if (!humans.isEmpty()) pruneStaleTracks(humans.get(0).TimestampMs);
+        for (int i=0 ; i < humans.size() ; i++)
+        {
+            HumanObservation human = humans.get(i);
+            TrackedHuman track = mSdkMatches.get(i);
+            if (track == null || track.mLastUpdate == mUpdateCount) track = findNearestTrack(human);
+            if (track == null) track = createTrack(human);
+            moveTrack(track, human);
+            mUpdateResult.add(track);
+        }
+        return mUpdateResult;
+    }
+
+    public boolean isCoolingDown(TrackedHuman track, long nowMs)
+    {
+        return track.LastGreetedMs >= 0 && nowMs - track.LastGreetedMs < mGreetingCooldownMs;
+    }
+
+    public void markGreeted(TrackedHuman track, long nowMs)
+    {
+        track.LastGreetedMs = nowMs;
+    }
+
+    /** Forget that the human with the given track ID was greeted (for example because their greeting was dropped before it started),
+     *  so that they can be greeted again. Does nothing if the track has since been pruned. **/
+    public void clearGreeted(long trackId)
+    {
+        // Iterate rather than get(), which would count as the track being seen in the access-ordered map.
+        for (TrackedHuman track : mTracks.values())
+        {
+            if (track.Id != trackId) continue;
+            track.LastGreetedMs = -1;
+            return;
+        }
+    }
+
+    public int size()
+    {
+        return mTracks.size();
+    }
+
+    /** Nearest track within the association radius that hasn't gone stale and hasn't already been matched in this update. **/
+    private TrackedHuman findNearestTrack(HumanObservation human)
+    {
+        long cellX = cellOf(human.X);
+        long cellY = cellOf(human.Y);
+        TrackedHuman nearest = null;
+        double nearestDistSq = ASSOCIATION_RADIUS_M * ASSOCIATION_RADIUS_M;
+        for (long dx = -1 ; dx <= 1 ; dx++)
+        {
+            for (long dy = -1 ; dy <= 1 ; dy++)
+            {
+                List<TrackedHuman> cell = mGrid.get(cellKey(cellX + dx, cellY + dy));
+                if (cell == null) continue;
+                for (int i=0 ; i < cell.size() ; i++)
+                {
+                    TrackedHuman track = cell.get(i);
+                    if (track.mLastUpdate == mUpdateCount || isStale(track, human.TimestampMs)) continue;
+                    double distX = track.X - human.X;
+                    double distY = track.Y - human.Y;
+                    double distSq = distX * distX + distY * distY;
+                    if (distSq <= nearestDistSq)
+                    {
+                        nearest = track;
+                        nearestDistSq = distSq;
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    private TrackedHuman createTrack(HumanObservation human)
+    {
+        TrackedHuman track = new TrackedHuman(mNextTrackId++);
+        track.mCellKey = cellKey(cellOf(human.X), cellOf(human.Y));
+        addToCell(track);
+        mTracks.put(track.Id, track);
+        if (mTracks.size() > MAX_TRACKS) evictLeastRecentlySeen();
+        return track;
+    }
+
+    private void moveTrack(TrackedHuman track, HumanObservation human)
+    {
+        // mTracks is in access order, so this moves the track to the tail, as the most recently seen.
+        mTracks.get(track.Id);
+        track.X = human.X;
+        track.Y = human.Y;
+        track.LastSeenMs = human.TimestampMs;
+        track.mLastUpdate = mUpdateCount;
+        track.addHistory(human.TimestampMs, human.X, human.Y);
+
+        long cellKey = cellKey(cellOf(human.X), cellOf(human.Y));
+        if (cellKey != track.mCellKey)
+        {
+            removeFromCell(track);
+            track.mCellKey = cellKey;
+            addToCell(track);
+        }
+
+        if (human.SdkHuman != null && human.SdkHuman != track.mSdkHuman)
+        {
+            if (track.mSdkHuman != null) mTracksBySdkHuman.remove(track.mSdkHuman);
+            track.mSdkHuman = human.SdkHuman;
+            mTracksBySdkHuman.put(human.SdkHuman, track);
+        }
+    }
+
+    /** Not seen for TRACK_TIMEOUT_MS, and not greeted within the cooldown. **/
+    private boolean isStale(TrackedHuman track, long nowMs)
+    {
+        return nowMs - track.LastSeenMs > TRACK_TIMEOUT_MS && !isCoolingDown(track, nowMs);
+    }
+
+    /** Tracks are in least recently seen order, so stop at the first one seen within TRACK_TIMEOUT_MS. Greeted tracks still cooling down are
+     *  skipped over; there are at most MAX_TRACKS of them. **/
+    private void pruneStaleTracks(long nowMs)
+    {
+        Iterator<TrackedHuman> it = mTracks.values().iterator();
+        while (it.hasNext())
+        {
+            TrackedHuman track = it.next();
+            if (nowMs - track.LastSeenMs <= TRACK_TIMEOUT_MS) break;
+            if (track.mPinnedUpdate == mUpdateCount || isCoolingDown(track, nowMs)) continue;
+            removeTrack(track, it);
+        }
+    }
+
+    /** Over MAX_TRACKS: forget the least recently seen track, even if it is cooling down, but not one matched by the current event. **/
+    private void evictLeastRecentlySeen()
+    {
+        Iterator<TrackedHuman> it = mTracks.values().iterator();
+        while (it.hasNext())
+        {
+            TrackedHuman track = it.next();
+            if (track.mPinnedUpdate == mUpdateCount) continue;
+            removeTrack(track, it);
+            return;
+        }
+    }
+
+    /** Remove the track from all indexes, while iterating over the tracks. **/
+    private void removeTrack(TrackedHuman track, Iterator<TrackedHuman> it)
+    {
+        it.remove();
+        removeFromCell(track);
+        if (track.mSdkHuman != null) mTracksBySdkHuman.remove(track.mSdkHuman);
+    }
+
+    private void addToCell(TrackedHuman track)
+    {
+        List<TrackedHuman> cell = mGrid.get(track.mCellKey);
+        if (cell == null)
+        {
+            cell = new ArrayList<>(2);
+            mGrid.put(track.mCellKey, cell);
+        }
+        cell.add(track);
+    }
+
+    private void removeFromCell(TrackedHuman track)
+    {
+        List<TrackedHuman> cell = mGrid.get(track.mCellKey);
+        if (cell == null) return;
+        cell.remove(track);
+        if (cell.isEmpty()) mGrid.remove(track.mCellKey);
+    }
+
+    private static long cellOf(double coordinate)
+    {
+        return (long) Math.floor(coordinate / ASSOCIATION_RADIUS_M);
+    }
+
+    private static long cellKey(long cellX, long cellY)
+    {
+        return (cellX << 32) ^ (cellY & 0xffffffffL);
+    }
+}
@@ -0,0 +1,64 @@
+package international.acme.peppergreeter;
+
+import java.util.List;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+
+import international.acme.peppergreeter.RobotMetrics.Operation;
+
+/** Wraps a RobotController to record the latency and outcome of each speak, move and animate in the given metrics.
+ *  Preparation calls and the humans-around stream are passed straight through. **/
+public class InstrumentedRobotController implements RobotController
+{
+    private final RobotController mDelegate;
+    private final RobotMetrics mMetrics;
+
+    public InstrumentedRobotController(RobotController delegate, RobotMetrics metrics)
+    {
+        mDelegate = delegate;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public Completable speak(String text)
+    {
+        return mMetrics.time(Operation.SPEAK, mDelegate.speak(text));
+    }
+
+    @Override
+    public Completable moveWithVector(double x, double y, double z)
+    {
+        return mMetrics.time(Operation.MOVE, mDelegate.moveWithVector(x, y, z));
+    }
+
+    @Override
+    public Completable animate(int animationResourceId)
+    {
+        return mMetrics.time(Operation.ANIMATE, mDelegate.animate(animationResourceId));
+    }
+
+    @Override
+    public Completable prewarm()
+    {
+        return mDelegate.prewarm();
+    }
+
+    @Override
+    public Completable preparePhrases(String configVersion, List<String> phrases)
+    {
+        return mDelegate.preparePhrases(configVersion, phrases);
+    }
+
+    @Override
+    public long getLastMotionStartNanos()
+    {
+        return mDelegate.getLastMotionStartNanos();
+    }
+
+    @Override
+    public Flowable<List<HumanObservation>> humansAround()
+    {
+        return mDelegate.humansAround();
+    }
+}
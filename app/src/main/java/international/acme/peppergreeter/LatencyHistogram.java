@@ -0,0 +1,119 @@
+package international.acme.peppergreeter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Distribution of a latency, recorded in microseconds into log-linear buckets in the manner of an HDR histogram: each power of two is split
+ *  into SUB_BUCKET_COUNT linear buckets, so any value is reported to within about 6%, from 1 us up to over an hour, in under 4 KB of counts.
+ *  Recording is a few atomic increments with no locking or allocation, so it can be called from any thread on every robot action. **/
+public class LatencyHistogram
+{
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** Values of 2^MAX_EXPONENT us (about 1.1 hours) and above are counted in the last bucket. **/
+    static final int MAX_EXPONENT = 32;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final String mName;
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    public LatencyHistogram(String name)
+    {
+        mName = name;
+    }
+
+    public String getName() { return mName; }
+
+    public void recordNanos(long latencyNanos)
+    {
+        recordMicros(latencyNanos / 1000);
+    }
+
+    public void recordMicros(long latencyMicros)
+    {
+        long micros = Math.max(latencyMicros, 0);
+        mCounts.incrementAndGet(bucketIndex(micros));
+        mTotalMicros.addAndGet(micros);
+        long max;
+        while (micros > (max = mMaxMicros.get()) && !mMaxMicros.compareAndSet(max, micros)) { }
+    }
+
+    /** Take a copy of the distribution. Samples recorded while the copy is being taken may or may not be included. **/
+    public Snapshot snapshot()
+    {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts[i] = mCounts.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(mName, counts, count, mTotalMicros.get(), mMaxMicros.get());
+    }
+
+    /** Values below SUB_BUCKET_COUNT get a bucket each; above that, the bucket is picked by the highest set bit and the SUB_BUCKET_BITS below it. **/
+    static int bucketIndex(long micros)
+    {
+        if (micros < SUB_BUCKET_COUNT) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /** The highest value, in microseconds, that is counted in the bucket. **/
+    static long bucketUpperBound(int index)
+    {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /** A copy of a histogram at one point in time, from which percentiles can be read. **/
+    public static class Snapshot
+    {
+        private final String mName;
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mTotalMicros;
+        private final long mMaxMicros;
+
+        Snapshot(String name, long[] counts, long count, long totalMicros, long maxMicros)
+        {
+            mName = name;
+            mCounts = counts;
+            mCount = count;
+            mTotalMicros = totalMicros;
+            mMaxMicros = maxMicros;
+        }
+
+        public String getName() { return mName; }
+        public long getCount() { return mCount; }
+        public double getMeanMs() { return (mCount > 0) ? mTotalMicros / 1000.0 / mCount : 0; }
+        public double getMaxMs() { return mMaxMicros / 1000.0; }
+
+        /** The latency that the given percentage of samples were at or below, rounded up to the top of its bucket but never above the maximum. **/
+        public double getPercentileMs(double percentile)
+        {
+            if (mCount == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++)
+            {
+                seen += mCounts[i];
+                if (seen >= rank) return Math.min(bucketUpperBound(i), mMaxMicros) / 1000.0;
+            }
+            return getMaxMs();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: %d samples, mean %.1f ms, p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    mName, mCount, getMeanMs(), getPercentileMs(50), getPercentileMs(90), getPercentileMs(99), getMaxMs());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package international.acme.peppergreeter;
+
+/** Running count, mean and maximum of a latency, in milliseconds. **/
+public class LatencyStats
+{
+    private final String mName;
+    private long mCount;
+    private double mTotalMs;
+    private double mMaxMs;
+
+    public LatencyStats(String name)
+    {
+        mName = name;
+    }
+
+    public synchronized void record(double latencyMs)
+    {
+        mCount++;
+        mTotalMs += latencyMs;
+        mMaxMs = Math.max(mMaxMs, latencyMs);
+    }
+
+    public synchronized long getCount() { return mCount; }
+    public synchronized double getMeanMs() { return (mCount > 0) ? mTotalMs / mCount : 0; }
+    public synchronized double getMaxMs() { return mMaxMs; }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("%s: %d samples, mean %.1f ms, max %.1f ms", mName, mCount, getMeanMs(), mMaxMs);
+    }
+}
@@ -2,39 +2,160 @@ package international.acme.peppergreeter;
 
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
 
+/** Logging for the app. Messages below the minimum level are discarded before anything is formatted. The rest are put in a ring buffer
+ *  with their arguments, and formatted and written to the Android log by a background thread, so that logging from the SDK callbacks or
+ *  the main thread costs little more than a compare-and-set. If the writer falls behind, messages are dropped and the count is logged.
+ *  In test mode, messages are formatted and printed straight away on the calling thread, so test output stays in order.
+ *  As arguments are only formatted when the writer gets to them, they must be immutable (strings, numbers, enums, snapshots):
+ *  pass toString() of anything that may change after the call, or the message may show its later state. **/
 public class LogHelper
 {
     final static String TAG_BASE = "PepperGreeter";
+    public static final int LEVEL_INFO = 1;
+    public static final int LEVEL_ERROR = 2;
+    public static final int LEVEL_NONE = 3;
+    static final int BUFFER_SIZE = 1024;
+    static final long DRAIN_INTERVAL_MS = 50;
+
     private static boolean TEST_MODE;
     public static void setTestMode(boolean enabled) { TEST_MODE = enabled; }
 
+    private static volatile int MIN_LEVEL = LEVEL_INFO;
+    public static void setMinLevel(int level) { MIN_LEVEL = level; }
+    public static boolean isLoggable(int level) { return level >= MIN_LEVEL; }
+
+    private static final LogRingBuffer BUFFER = new LogRingBuffer(BUFFER_SIZE);
+    private static final Writer WRITER = new Writer();
+    private static volatile Thread DRAIN_THREAD;
+
     public static void logMsg(Class source, String text, Object... args)
     {
-        String threadStr = String.format("[%s] ", Thread.currentThread().getName());
-        String msg = String.format(text, args);
-        if (TEST_MODE) System.out.print(threadStr + msg + "\n");
-        else Log.i(TAG_BASE + "_" + source.getSimpleName(), threadStr + msg);
+        log(LEVEL_INFO, source, text, args, null);
     }
 
     public static void logError(Class source, String text, Object... args)
     {
-        String threadStr = String.format("[%s] ", Thread.currentThread().getName());
-        String msg = String.format(text, args);
-        if (TEST_MODE) System.out.print("*** " + threadStr + msg + "\n");
-        else Log.e(TAG_BASE + "_" + source.getSimpleName(), threadStr + msg);
+        log(LEVEL_ERROR, source, text, args, null);
     }
 
+    /** The stack trace is only rendered when the message is written. **/
     public static void logException(Class source, Throwable ex)
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        PrintWriter pw = new PrintWriter(bos);
-        ex.printStackTrace(pw);
-        pw.flush();
-        pw.close();
-        String stackTraceStr = bos.toString();
-        logError(source, stackTraceStr);
+        log(LEVEL_ERROR, source, null, null, ex);
+    }
+
+    /** Write out everything logged so far on the calling thread, for instance before the process is killed (see PepperGreeterApplication). **/
+    public static void flush()
+    {
+        BUFFER.drain(WRITER);
+        WRITER.writeDroppedCount(BUFFER.getDroppedCount());
+    }
+
+    private static void log(int level, Class source, String text, Object[] args, Throwable ex)
+    {
+        if (level < MIN_LEVEL) return;
+        String threadName = Thread.currentThread().getName();
+        if (TEST_MODE)
+        {
+            WRITER.write(level, source, threadName, text, args, ex);
+            return;
+        }
+
+        Thread drainThread = DRAIN_THREAD;
+        if (drainThread == null) drainThread = startDrainThread();
+        if (BUFFER.offer(level, source, threadName, text, args, ex) && level >= LEVEL_ERROR) LockSupport.unpark(drainThread);
+    }
+
+    private static synchronized Thread startDrainThread()
+    {
+        if (DRAIN_THREAD != null) return DRAIN_THREAD;
+        Thread thread = new Thread(() ->
+        {
+            while (true)
+            {
+                if (BUFFER.drain(WRITER) == 0)
+                {
+                    WRITER.writeDroppedCount(BUFFER.getDroppedCount());
+                    LockSupport.parkNanos(DRAIN_INTERVAL_MS * 1000000);
+                }
+            }
+        }, "LogHelper");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        DRAIN_THREAD = thread;
+        return thread;
+    }
+
+    /** Formats entries into a reused buffer and writes them out. Only used by one thread at a time. **/
+    private static class Writer implements LogRingBuffer.Sink
+    {
+        private final StringBuilder mBuffer = new StringBuilder(256);
+        private final Formatter mFormatter = new Formatter(mBuffer);
+        private final HashMap<Class, String> mTags = new HashMap<>();
+        private long mReportedDroppedCount;
+
+        @Override
+        public void write(LogRingBuffer.Entry entry)
+        {
+            write(entry.mLevel, entry.mSource, entry.mThreadName, entry.mText, entry.mArgs, entry.mThrowable);
+        }
+
+        synchronized void write(int level, Class source, String threadName, String text, Object[] args, Throwable ex)
+        {
+            mBuffer.setLength(0);
+            mBuffer.append('[').append(threadName).append("] ");
+            try
+            {
+                if (ex != null) appendStackTrace(ex);
+                else if (args == null || args.length == 0) mBuffer.append(text);
+                else mFormatter.format(text, args);
+            }
+            catch (RuntimeException formatEx)
+            {
+                mBuffer.append(text).append(" (unable to format: ").append(formatEx).append(')');
+            }
+
+            if (TEST_MODE)
+            {
+                if (level >= LEVEL_ERROR) System.out.print("*** ");
+                System.out.print(mBuffer.append('\n'));
+            }
+            else if (level >= LEVEL_ERROR) Log.e(getTag(source), mBuffer.toString());
+            else Log.i(getTag(source), mBuffer.toString());
+        }
+
+        synchronized void writeDroppedCount(long droppedCount)
+        {
+            if (droppedCount == mReportedDroppedCount) return;
+            write(LEVEL_ERROR, LogHelper.class, Thread.currentThread().getName(), "%d log messages dropped", new Object[] { droppedCount - mReportedDroppedCount }, null);
+            mReportedDroppedCount = droppedCount;
+        }
+
+        private void appendStackTrace(Throwable ex)
+        {
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw);
+            ex.printStackTrace(pw);
+            pw.flush();
+            mBuffer.append(sw.getBuffer());
+        }
+
+        private String getTag(Class source)
+        {
+            String tag = mTags.get(source);
+            if (tag == null)
+            {
+                tag = TAG_BASE + "_" + source.getSimpleName();
+                mTags.put(source, tag);
+            }
+            return tag;
+        }
     }
 }
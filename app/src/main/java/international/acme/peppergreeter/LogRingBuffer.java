@@ -0,0 +1,97 @@
+package international.acme.peppergreeter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Fixed-size buffer of log entries. Any number of threads can add entries without locking or allocating: each claims the next slot with
+ *  a compare-and-set, fills it in, and publishes it through the slot's sequence number. A single consumer drains the entries in order.
+ *  When the consumer falls a whole buffer behind, new entries are dropped and counted rather than blocking the thread that logs them. **/
+class LogRingBuffer
+{
+    /** A log message as it was logged, before any formatting. **/
+    static class Entry
+    {
+        /** Equal to the slot's position when free to claim, one past it when filled in and ready to drain. **/
+        volatile long mSequence;
+        int mLevel;
+        Class mSource;
+        String mThreadName;
+        String mText;
+        Object[] mArgs;
+        Throwable mThrowable;
+    }
+
+    interface Sink
+    {
+        void write(Entry entry);
+    }
+
+    private final Entry[] mEntries;
+    private final int mMask;
+    private final AtomicLong mTail = new AtomicLong();
+    private long mHead;
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    /** The capacity is rounded up to a power of two. **/
+    LogRingBuffer(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mEntries = new Entry[size];
+        mMask = size - 1;
+        for (int i = 0; i < size; i++)
+        {
+            mEntries[i] = new Entry();
+            mEntries[i].mSequence = i;
+        }
+    }
+
+    /** Add an entry, or return false if the buffer is full. **/
+    boolean offer(int level, Class source, String threadName, String text, Object[] args, Throwable throwable)
+    {
+        while (true)
+        {
+            long tail = mTail.get();
+            Entry entry = mEntries[(int) (tail & mMask)];
+            long sequence = entry.mSequence;
+            if (sequence == tail)
+            {
+                if (!mTail.compareAndSet(tail, tail + 1)) continue;
+                entry.mLevel = level;
+                entry.mSource = source;
+                entry.mThreadName = threadName;
+                entry.mText = text;
+                entry.mArgs = args;
+                entry.mThrowable = throwable;
+                entry.mSequence = tail + 1;
+                return true;
+            }
+            if (sequence < tail)
+            {
+                mDroppedCount.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    /** Hand each entry that is ready to the sink, in the order they were claimed, and free its slot. Returns the number of entries drained. **/
+    synchronized int drain(Sink sink)
+    {
+        int count = 0;
+        while (true)
+        {
+            Entry entry = mEntries[(int) (mHead & mMask)];
+            if (entry.mSequence != mHead + 1) return count;
+            sink.write(entry);
+            entry.mSource = null;
+            entry.mThreadName = null;
+            entry.mText = null;
+            entry.mArgs = null;
+            entry.mThrowable = null;
+            entry.mSequence = mHead + mEntries.length;
+            mHead++;
+            count++;
+        }
+    }
+
+    int getCapacity() { return mEntries.length; }
+    long getDroppedCount() { return mDroppedCount.get(); }
+}
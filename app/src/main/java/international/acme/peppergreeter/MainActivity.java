@@ -6,6 +6,7 @@ import android.support.test.espresso.IdlingResource;
 import android.support.test.espresso.idling.CountingIdlingResource;
 import android.support.v7.app.AppCompatActivity;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.Button;
@@ -50,11 +51,36 @@ public class MainActivity extends AppCompatActivity implements MainActivityView
         for (TextView tv : mDealTextViews) tv.setVisibility(View.INVISIBLE);
 
         mPresenter = (MainActivityPresenter) getLastCustomNonConfigurationInstance();
-        if (mPresenter == null)
+        if (mPresenter != null)
         {
-            // TODO: Use Dagger or similar to inject dependencies rather than creating them here.
-            mPresenter = new MainActivityPresenterImpl(this, new RobotControllerImpl(this), new DataRepositoryImpl(), AndroidSchedulers.mainThread(), mIdlingResource);
+            mPresenter.attach(this);
+            return;
         }
+
+        // On a cold start, get the deals screen drawn first: the presenter starts loading config data and watching for humans, and the
+        // robot and network stacks are built, once the first frame is out.
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener()
+        {
+            @Override
+            public boolean onPreDraw()
+            {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                decorView.post(() ->
+                {
+                    StartupTrace.get().mark(StartupTrace.FIRST_FRAME);
+                    if (isFinishing() || isDestroyed()) return;
+                    startPresenter();
+                });
+                return true;
+            }
+        });
+    }
+
+    private void startPresenter()
+    {
+        AppContainer container = ((PepperGreeterApplication) getApplication()).getContainer();
+        mPresenter = new MainActivityPresenterImpl(this, container.getRobotController(), container.getDataRepository(), AndroidSchedulers.mainThread(), mIdlingResource);
         mPresenter.attach(this);
     }
 
@@ -62,7 +88,7 @@ public class MainActivity extends AppCompatActivity implements MainActivityView
     protected void onDestroy()
     {
         super.onDestroy();
-        if (isFinishing())
+        if (isFinishing() && mPresenter != null)
         {
             mPresenter.detach();
         }
@@ -83,7 +109,7 @@ public class MainActivity extends AppCompatActivity implements MainActivityView
     @OnClick(R.id.greetingButton)
     public void greetingButtonOnClick(View view)
     {
-        mPresenter.startGreeting();
+        if (mPresenter != null) mPresenter.startGreeting();
     }
 
     @Override
@@ -98,8 +124,11 @@ public class MainActivity extends AppCompatActivity implements MainActivityView
             dealTextView.setVisibility(View.VISIBLE);
         }
 
+        // Deals may be shown more than once (snapshot, then server data), so hide any slots left over from a longer list.
+        for (int i=numDeals ; i < mDealTextViews.size() ; i++) mDealTextViews.get(i).setVisibility(View.INVISIBLE);
+
         // Hide "Today's Specials" title if there aren't any
-        if (numDeals == 0) mSpecialsTextView.setVisibility(View.INVISIBLE);
+        mSpecialsTextView.setVisibility(numDeals == 0 ? View.INVISIBLE : View.VISIBLE);
     }
 
     @Override
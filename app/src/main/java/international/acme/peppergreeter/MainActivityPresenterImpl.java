@@ -5,24 +5,128 @@ import android.support.test.espresso.IdlingResource;
 import android.support.test.espresso.idling.CountingIdlingResource;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Future;
+import java.util.Set;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
 import io.reactivex.Scheduler;
 import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.CompletableSubject;
+
+import international.acme.peppergreeter.GreetingStateMachine.State;
 
 import static international.acme.peppergreeter.ConfigData.MAX_DEAL_COUNT;
 
 public class MainActivityPresenterImpl implements MainActivityPresenter
 {
+    /** If a human standing still is detected within this range (in meters), trigger greeting. Humans on the move are greeted by prediction instead. **/
+    static final double HUMAN_DETECTION_DISTANCE = 3;
+
+    /** If none of the humans being greeted has been seen within HUMAN_DETECTION_DISTANCE for this long, they have walked off: cut the greeting short. **/
+    static final long TARGET_LOST_MS = 1500;
+
+    /** If the humans-around stream fails, watch for humans again after this long. **/
+    static final long HUMANS_AROUND_RETRY_MS = 5000;
+
+    /** How long each page of deals stays on screen, when there are more deals than slots. **/
+    static final long DEAL_PAGE_ROTATION_MS = 10000;
+
     private MainActivityView mView;
     private ConfigData mConfigData;
     private Context mContext;
     private RobotController mRobotController;
-    private boolean mGreetingInProgress;
+    private boolean mConfigDataReady;
+
+    /** Config data that arrived while a greeting was in progress, to be applied once the greeting has completed. **/
+    private ConfigData mPendingConfigData;
+    private Disposable mConfigDataUpdates;
+    private Disposable mHumansAround;
+
+    /** Where the presenter is in the greeting lifecycle. Anything other than idle counts as a greeting in progress. **/
+    private final GreetingStateMachine mGreetingState = new GreetingStateMachine();
+    public GreetingStateMachine getGreetingState() { return mGreetingState; }
+
+    /** Queues and groups greeting triggers in front of the greeting sequence. **/
+    private GreetingAdmissionController mAdmissionController;
+    public GreetingAdmissionController getAdmissionController() { return mAdmissionController; }
+
+    /** Humans recently seen around the robot, used to avoid greeting the same shopper over and over. **/
+    private HumanRegistry mHumanRegistry = new HumanRegistry();
+
+    /** Times greetings so that they land as a walking shopper arrives, rather than after they have walked past. **/
+    private ApproachPredictor mApproachPredictor = new ApproachPredictor(HUMAN_DETECTION_DISTANCE);
+    public ApproachPredictor getApproachPredictor() { return mApproachPredictor; }
+
+    /** Handle on a greeting sequence in progress. Completing mAbort skips whatever is left of the greeting and deal announcements, straight to the
+     *  return move. The sequence is never simply disposed, as that could leave the robot stopped half a meter away from its start position. **/
+    private static class GreetingSequence
+    {
+        final CompletableSubject mAbort = CompletableSubject.create();
+
+        /** Ids of the tracked humans being greeted. Empty for greetings requested from the on-screen button, which aren't cut short when people leave. **/
+        final Set<Long> mTargets;
+        final boolean mPriority;
+
+        /** Timer that aborts the sequence once its targets have been out of range for TARGET_LOST_MS. **/
+        Disposable mTargetLostTimer;
+
+        GreetingSequence(Set<Long> targets, boolean priority)
+        {
+            mTargets = targets;
+            mPriority = priority;
+        }
+    }
+
+    private GreetingSequence mGreetingSequence;
+
+    /** Ids of tracked humans that have triggered a greeting which hasn't started yet. **/
+    private Set<Long> mWaitingTargets = new HashSet<>();
+
+    /** The greeting choreography compiled against the current config data. Only replaced between greetings, as config data is. **/
+    private GreetingPlan mGreetingPlan;
+    private PlanEnvironment mPlanEnvironment;
+    private final Random mRandom = new Random();
+    private int mCurrentGroupSize;
+
+    /** Set once the robot has prepared the next greeting's actions while idle; see prewarmNextGreeting(). **/
+    private final AtomicBoolean mPrewarmed = new AtomicBoolean();
+    private Disposable mPrewarm;
+    private Disposable mPreparePhrases;
+
+    /** Deals beyond the slots on screen are paged through. The rotation is paused while greeting, so the page announced is the page shown. **/
+    private DealCarousel mDealCarousel;
+    private Disposable mDealRotation;
+
+    /** To aid in testing: allow overriding how long each page of deals is shown. **/
+    private long mDealPageRotationMs = DEAL_PAGE_ROTATION_MS;
+    public void setDealPageRotationMs(long rotationMs) { mDealPageRotationMs = rotationMs; }
+    private int mWarmStartCount;
+    private int mColdStartCount;
+
+    /** Time from a greeting being started to the robot starting to move, split by whether the greeting had been prewarmed. **/
+    private final LatencyStats mWarmStartLatency = new LatencyStats("Trigger to first motion (prewarmed)");
+    private final LatencyStats mColdStartLatency = new LatencyStats("Trigger to first motion (not prewarmed)");
+    public LatencyStats getWarmStartLatency() { return mWarmStartLatency; }
+    public LatencyStats getColdStartLatency() { return mColdStartLatency; }
+
+    /** Latency and outcome of the robot's actions and of whole greetings. **/
+    private final RobotMetrics mMetrics = new RobotMetrics();
+    public RobotMetrics getMetrics() { return mMetrics; }
+
+    private int mCompletedGreetingCount;
+    private int mAbortedGreetingCount;
+    public int getCompletedGreetingCount() { return mCompletedGreetingCount; }
+    public int getAbortedGreetingCount() { return mAbortedGreetingCount; }
 
     /** To aid in testing: allow overriding the scheduler on which the greeting sequence will be observed. **/
     private Scheduler mGreetingObserverScheduler;
@@ -38,8 +142,11 @@ public class MainActivityPresenterImpl implements MainActivityPresenter
     public MainActivityPresenterImpl(Context context, RobotController robotController, DataRepository dataRepository, Scheduler greetingObserverScheduler, CountingIdlingResource idlingResource)
     {
         mContext = context;
-        mRobotController = robotController;
+        mRobotController = new InstrumentedRobotController(robotController, mMetrics);
         mGreetingObserverScheduler = greetingObserverScheduler;
+        mAdmissionController = new GreetingAdmissionController(this::performGreeting, greetingObserverScheduler);
+        mAdmissionController.setMetrics(mMetrics);
+        mAdmissionController.setGroupDroppedListener(this::onGreetingGroupDropped);
 
         // Set "non idle" state until after data load has finished
         mIdlingResource = idlingResource;
@@ -48,23 +155,185 @@ public class MainActivityPresenterImpl implements MainActivityPresenter
         // Start async data load for greetings and special deals.
         logMsg("Connecting to data repository");
         dataRepository.loadDataAsync(this::onConfigDataLoaded, this::onConfigDataLoadError);
+        mConfigDataUpdates = dataRepository.configDataUpdates().subscribe(this::onConfigDataLoaded, this::logException);
 
-        // Set up callback that will invoke greeting when human detected within specified range.
+        // Watch for humans, and invoke greeting when one is detected within specified range. If the stream fails, the robot would never greet
+        // anyone again until restarted, so it is resubscribed after a delay.
         logMsg("Start watching for Humans");
-        mRobotController.watchForHumans(this::startGreeting);
+        mHumansAround = mRobotController.humansAround()
+                .retryWhen(errors -> errors.flatMap(ex ->
+                {
+                    logError("Error watching for humans, watching again in %d ms", HUMANS_AROUND_RETRY_MS);
+                    logException(ex);
+                    return Flowable.timer(HUMANS_AROUND_RETRY_MS, TimeUnit.MILLISECONDS, mGreetingObserverScheduler);
+                }))
+                .observeOn(mGreetingObserverScheduler)
+                .subscribe(this::onHumansAround, ex ->
+                {
+                    logError("Error watching for humans");
+                    logException(ex);
+                });
     }
 
+    /** May be invoked more than once: with the locally saved snapshot, then with fresher config data from the server as it changes.
+     *  New config data never interrupts a greeting in progress; it is held until the greeting has completed. **/
     private void onConfigDataLoaded(ConfigData configData)
+    {
+        if (!mGreetingState.isIdle())
+        {
+            logMsg("Greeting in progress, will apply new config data after it completes");
+            mPendingConfigData = configData;
+            return;
+        }
+        applyConfigData(configData);
+    }
+
+    private void applyPendingConfigData()
+    {
+        if (mPendingConfigData != null)
+        {
+            ConfigData configData = mPendingConfigData;
+            mPendingConfigData = null;
+            applyConfigData(configData);
+        }
+    }
+
+    private void applyConfigData(ConfigData configData)
     {
         mConfigData = configData;
         if (mConfigData.Greetings == null) mConfigData.Greetings = new String[] { mContext.getString(R.string.default_greeting_1), mContext.getString(R.string.default_greeting_2) };
         if (mConfigData.SpecialDeals == null) mConfigData.SpecialDeals = new String[]{};
+        mDealCarousel = new DealCarousel(mConfigData.SpecialDeals, MAX_DEAL_COUNT);
+        mGreetingPlan = compileGreetingPlan(mConfigData);
+        preparePhrases(mConfigData);
+        prewarmNextGreeting();
         updateGreetingButtonState();
         showSpecialDeals();
-        if (mIdlingResource != null) mIdlingResource.decrement();
+        startDealRotation();
+        if (!mConfigDataReady)
+        {
+            mConfigDataReady = true;
+            StartupTrace.get().mark(StartupTrace.CONFIG_READY);
+            if (mIdlingResource != null) mIdlingResource.decrement();
+        }
+    }
+
+    /** Compile the choreography from the config data, falling back to the default one if there is none or it is invalid. **/
+    private GreetingPlan compileGreetingPlan(ConfigData configData)
+    {
+        String dealsIntro = mContext.getString(R.string.here_are_todays_special_deals);
+        PlanEnvironment environment = new PlanEnvironment(configData.Greetings);
+        mPlanEnvironment = environment;
+        if (configData.Choreography != null)
+        {
+            try
+            {
+                return GreetingPlan.compile(configData.Choreography, configData, dealsIntro, mRobotController, environment);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                logError("Invalid choreography in config data, using the default one: %s", ex.getMessage());
+            }
+        }
+        return GreetingPlan.compile(ChoreographyDefinition.createDefault(), configData, dealsIntro, mRobotController, environment);
+    }
+
+    /** Have the robot render this version's phrases ahead of time, so they can be played back instead of spoken with live text-to-speech.
+     *  Of the deals, only those of the visible page and the next one are rendered; the rest are rendered as the pages come round. **/
+    private void preparePhrases(ConfigData configData)
+    {
+        List<String> phrases = new ArrayList<>();
+        phrases.addAll(Arrays.asList(configData.Greetings));
+        phrases.addAll(Arrays.asList(mDealCarousel.getVisibleDeals()));
+        if (mDealCarousel.getPageCount() > 1) phrases.addAll(Arrays.asList(mDealCarousel.getPageDeals((mDealCarousel.getPage() + 1) % mDealCarousel.getPageCount())));
+        phrases.add(mContext.getString(R.string.here_are_todays_special_deals));
+        if (mPreparePhrases != null) mPreparePhrases.dispose();
+        mPreparePhrases = mRobotController.preparePhrases(configData.getVersion(), phrases).subscribe(() -> { }, ex ->
+        {
+            logError("Unable to prepare phrase audio, phrases will be spoken with text-to-speech");
+            logException(ex);
+        });
+    }
+
+    /** While idle, get everything ready for the next greeting so that it starts moving as soon as it is triggered: the greeting phrase is chosen,
+     *  and the robot constructs the actions and looks up the frames it will need. The deals intro text and the rest of the plan were already
+     *  resolved when it was compiled. Done again after each greeting, as the prepared actions are used up by it. **/
+    private void prewarmNextGreeting()
+    {
+        if (!mGreetingState.isIdle() || mGreetingPlan == null) return;
+        mPlanEnvironment.prepareNextGreeting();
+        if (mPrewarm != null) mPrewarm.dispose();
+        mPrewarm = mRobotController.prewarm()
+                .subscribe(() ->
+                {
+                    mPrewarmed.set(true);
+                    StartupTrace.get().mark(StartupTrace.ROBOT_READY);
+                }, ex ->
+                {
+                    logError("Unable to prewarm next greeting, it will be prepared when triggered instead");
+                    logException(ex);
+                });
+    }
+
+    /** What the greeting plan needs to know as it runs. Holds on to the greetings it was compiled with, in case the config data changes.
+     *  The next greeting is prepared on the presenter's thread while idle, but taken on whichever thread the plan runs on. **/
+    private class PlanEnvironment implements GreetingPlan.Environment
+    {
+        private final String[] mGreetings;
+        private final AtomicReference<String> mNextGreeting = new AtomicReference<>();
+
+        PlanEnvironment(String[] greetings)
+        {
+            mGreetings = greetings;
+        }
+
+        void prepareNextGreeting()
+        {
+            if (mNextGreeting.get() == null) mNextGreeting.compareAndSet(null, pickGreeting());
+        }
+
+        @Override
+        public String nextGreeting()
+        {
+            String greeting = mNextGreeting.getAndSet(null);
+            return (greeting != null) ? greeting : pickGreeting();
+        }
+
+        private String pickGreeting()
+        {
+            return mGreetings[mRandom.nextInt(mGreetings.length)];
+        }
+
+        @Override
+        public int getGroupSize()
+        {
+            return mCurrentGroupSize;
+        }
+
+        /** Called twice if the choreography has a deals intro; only the first call moves the greeting on. **/
+        @Override
+        public void onAnnouncingDeals()
+        {
+            if (mGreetingState.getState() == State.GREETING) mGreetingState.transition(State.ANNOUNCING, State.GREETING);
+        }
+
+        @Override
+        public String getVisibleDeal(int slot)
+        {
+            return mDealCarousel.getVisibleDeal(slot);
+        }
+
+        /** If the view is attached, return Completable that will play on-screen animation to highlight the deal at the index specified. **/
+        @Override
+        public Completable highlightDeal(int dealIndex)
+        {
+            MainActivityView view = mView;
+            return (view != null) ? mMetrics.time(RobotMetrics.Operation.HIGHLIGHT_DEAL, view.highlightDeal(dealIndex)) : Completable.complete();
+        }
     }
 
     /** If we fail to load greetings and special deal config data from server, fallback to some pre-defined greetings so the robot will still have basic operation.
+     *  The DataRepository keeps retrying, and the fallback is replaced by the real config data once it loads.
      *  Exception detail will be logged from the DataRepository to aid in troubleshooting.
      *  TODO: We probably don't want to display an error message on the robot's tablet, since that would be a poor customer experience.
      *        Probably would want to log the exception to Crashlytics or similar service where a human operator could be notified that the robot encountered an error.
@@ -76,11 +345,105 @@ public class MainActivityPresenterImpl implements MainActivityPresenter
         onConfigDataLoaded(mConfigData);
     }
 
+    /** Invoked at most once per sampling window with all humans currently around. An error handling one event is logged and the event skipped,
+     *  rather than ending the subscription: later events are still handled. **/
+    private void onHumansAround(List<HumanObservation> humans)
+    {
+        try
+        {
+            handleHumansAround(humans);
+        }
+        catch (Exception ex)
+        {
+            // TODO: Notify operator of error condition rather than only logging it.
+            logError("Error handling humans around, skipping the event");
+            logException(ex);
+        }
+    }
+
+    /** Everyone the approach predictor says is due a greeting, and who hasn't been greeted recently, counts towards one trigger, which the
+     *  admission controller merges with other recent triggers into a single group greeting. **/
+    private void handleHumansAround(List<HumanObservation> humans)
+    {
+        List<HumanRegistry.TrackedHuman> tracks = mHumanRegistry.update(humans);
+        for (int i=0 ; i < tracks.size() ; i++) mApproachPredictor.onObservation(tracks.get(i), humans.get(i).TimestampMs);
+        checkGreetingTargetsInRange(humans, tracks);
+        if (mConfigData == null) return;
+        int peopleToGreet = 0;
+        List<Long> triggerTargets = new ArrayList<>();
+        for (int i=0 ; i < humans.size() ; i++)
+        {
+            HumanObservation human = humans.get(i);
+            HumanRegistry.TrackedHuman track = tracks.get(i);
+            if (!mHumanRegistry.isCoolingDown(track, human.TimestampMs) && mApproachPredictor.shouldGreet(track, human.TimestampMs))
+            {
+                mHumanRegistry.markGreeted(track, human.TimestampMs);
+                mWaitingTargets.add(track.Id);
+                triggerTargets.add(track.Id);
+                peopleToGreet++;
+            }
+        }
+        if (peopleToGreet > 0) mAdmissionController.onTrigger(peopleToGreet, triggerTargets);
+    }
+
+    /** The people in a group the admission controller dropped were marked as greeted when they triggered it, but never were:
+     *  unmark them so that they can trigger a greeting again. **/
+    private void onGreetingGroupDropped(Set<Long> targets)
+    {
+        mGreetingObserverScheduler.scheduleDirect(() ->
+        {
+            logMsg("Greeting group dropped, %d people can be greeted again", targets.size());
+            for (Long id : targets)
+            {
+                mHumanRegistry.clearGreeted(id);
+                mWaitingTargets.remove(id);
+            }
+        });
+    }
+
+    /** While a greeting triggered by humans around is in progress, watch for them leaving. Humans who have triggered the next greeting count too,
+     *  as they may have been merged into this one. The greeting is cut short once none of them has been in range for TARGET_LOST_MS. **/
+    private void checkGreetingTargetsInRange(List<HumanObservation> humans, List<HumanRegistry.TrackedHuman> tracks)
+    {
+        GreetingSequence sequence = mGreetingSequence;
+        if (sequence == null || sequence.mTargets.isEmpty() || sequence.mAbort.hasComplete()) return;
+
+        boolean targetInRange = false;
+        for (int i=0 ; i < humans.size() && !targetInRange ; i++)
+        {
+            long id = tracks.get(i).Id;
+            targetInRange = humans.get(i).Distance < HUMAN_DETECTION_DISTANCE && (sequence.mTargets.contains(id) || mWaitingTargets.contains(id));
+        }
+
+        if (targetInRange)
+        {
+            if (sequence.mTargetLostTimer != null)
+            {
+                sequence.mTargetLostTimer.dispose();
+                sequence.mTargetLostTimer = null;
+            }
+        }
+        else if (sequence.mTargetLostTimer == null)
+        {
+            sequence.mTargetLostTimer = Completable.timer(TARGET_LOST_MS, TimeUnit.MILLISECONDS, mGreetingObserverScheduler)
+                    .subscribe(() -> abortGreeting(sequence, "humans being greeted have left"));
+        }
+    }
+
+    /** Skip the rest of the greeting sequence, if it is still in progress, and return to the start position. **/
+    private void abortGreeting(GreetingSequence sequence, String reason)
+    {
+        if (sequence != mGreetingSequence || sequence.mAbort.hasComplete()) return;
+        logMsg("Cutting greeting short (%s), returning to start position", reason);
+        mAbortedGreetingCount++;
+        sequence.mAbort.onComplete();
+    }
+
     private void updateGreetingButtonState()
     {
         if (mView != null)
         {
-            mView.setGreetingButtonEnabled(mConfigData != null && !mGreetingInProgress);
+            mView.setGreetingButtonEnabled(mConfigData != null && mGreetingState.isIdle());
         }
     }
 
@@ -88,10 +451,29 @@ public class MainActivityPresenterImpl implements MainActivityPresenter
     {
         if (mView != null && mConfigData != null)
         {
-            mView.showSpecialDeals(mConfigData.SpecialDeals);
+            mView.showSpecialDeals(mDealCarousel.getVisibleDeals());
         }
     }
 
+    /** If there are more deals than fit on screen, start showing the pages in turn. **/
+    private void startDealRotation()
+    {
+        if (mDealRotation != null) mDealRotation.dispose();
+        mDealRotation = null;
+        if (mDealCarousel.getPageCount() <= 1) return;
+        mDealRotation = Observable.interval(mDealPageRotationMs, mDealPageRotationMs, TimeUnit.MILLISECONDS, mGreetingObserverScheduler)
+                .subscribe(tick -> rotateDealPage());
+    }
+
+    /** Show the next page of deals, unless a greeting is in progress: it announces the page on screen, which mustn't change under it. **/
+    private void rotateDealPage()
+    {
+        if (!mGreetingState.isIdle() || !mDealCarousel.nextPage()) return;
+        logMsg("Showing page %d of %d of deals", mDealCarousel.getPage() + 1, mDealCarousel.getPageCount());
+        showSpecialDeals();
+        preparePhrases(mConfigData);
+    }
+
     @Override
     public void attach(MainActivityView view)
     {
@@ -104,72 +486,124 @@ public class MainActivityPresenterImpl implements MainActivityPresenter
     public void detach()
     {
         mView = null;
+        if (mConfigDataUpdates != null) mConfigDataUpdates.dispose();
+        if (mHumansAround != null) mHumansAround.dispose();
+        if (mPreparePhrases != null) mPreparePhrases.dispose();
+        if (mDealRotation != null) mDealRotation.dispose();
+        if (mGreetingSequence != null) abortGreeting(mGreetingSequence, "detached");
     }
 
-    /** Start async operation to perform the greeting process, unless already running.
-         - Move forward 1/2 meter
-         - When done moving, simultaneously say a random greeting phrase and start arm animation
-         - When greeting and animation are done, move 1/2 meter backward to where we started
-     For use in testing, a semaphore can be provided which will be released once the greeting sequence has completed.
-     **/
+    /** Request a greeting (from the on-screen button). The operator takes priority over humans detected around the robot: a greeting they triggered
+     *  is cut short, and the requested greeting starts as soon as the robot is back at its start position. **/
     @Override
     public void startGreeting()
     {
-        if (mGreetingInProgress)
+        if (mConfigData == null)
         {
-            logMsg("onGreetingButtonPressed: greeting already in progress, will not start another one");
+            logMsg("startGreeting: config data not loaded yet, ignoring");
             return;
         }
+        if (mGreetingSequence != null && !mGreetingSequence.mPriority) abortGreeting(mGreetingSequence, "preempted by operator");
+        mAdmissionController.onPriorityTrigger(1);
+    }
 
-        int greetingIndex = new Random().nextInt(mConfigData.Greetings.length);
-        String greetingStr = mConfigData.Greetings[greetingIndex];
-        mGreetingInProgress = true;
+    /** Start async operation to perform the greeting process for a group of the given size (a priority group being one requested by the operator), by running the greeting plan compiled from the choreography
+     *  (see ChoreographyDefinition.createDefault() for the default one). Only invoked by the admission controller, which ensures that only one greeting runs at a time.
+     *  The plan's body can be cut short via the GreetingSequence handle, or fail, and its finish still runs to return the robot to where it started.
+     *  For use in testing, a semaphore can be provided which will be released once the greeting sequence has completed.
+     **/
+    private void performGreeting(int groupSize, boolean priority)
+    {
+        if (!mGreetingState.transition(State.APPROACHING, State.IDLE))
+        {
+            // The greeting still in progress reports its completion as usual, and the admission controller moves on from there.
+            logError("Not starting greeting for group of %d, a greeting is already in progress", groupSize);
+            mAdmissionController.onGreetingRejected();
+            return;
+        }
+        logMsg("Starting greeting for group of %d", groupSize);
+        GreetingPlan plan = mGreetingPlan;
+        mCurrentGroupSize = groupSize;
+        long triggerNanos = System.nanoTime();
+        long groupTriggerMs = mAdmissionController.getCurrentGroupTriggerMs();
+        if (mPrewarm != null) mPrewarm.dispose();
+        boolean prewarmed = mPrewarmed.getAndSet(false);
+        LatencyStats startLatency = prewarmed ? mWarmStartLatency : mColdStartLatency;
+        if (prewarmed) mWarmStartCount++;
+        else mColdStartCount++;
         if (mIdlingResource != null) mIdlingResource.increment();
         updateGreetingButtonState();
-        mRobotController.moveWithVector(0.5, 0, 0)
-                .andThen(Completable.mergeArray(mRobotController.speak(greetingStr), mRobotController.animate(R.raw.greeting_arms)))
-                .andThen(announceDeals())
-                .andThen(mRobotController.moveWithVector(-0.5, 0, 0))
+
+        GreetingSequence sequence;
+        if (priority)
+        {
+            sequence = new GreetingSequence(new HashSet<Long>(), true);
+        }
+        else
+        {
+            sequence = new GreetingSequence(mWaitingTargets, false);
+            mWaitingTargets = new HashSet<>();
+        }
+        mGreetingSequence = sequence;
+
+        Completable body = plan.getBody()
+                .ambWith(sequence.mAbort)
+                .doOnError(ex ->
+                {
+                    logError("An error occurred during the greeting, returning to start position");
+                    logException(ex);
+                })
+                .onErrorComplete();
+        plan.getApproach()
+                .doOnComplete(() ->
+                {
+                    mGreetingState.transition(State.GREETING, State.APPROACHING);
+                    long motionStartNanos = mRobotController.getLastMotionStartNanos();
+                    if (motionStartNanos >= triggerNanos) startLatency.record((motionStartNanos - triggerNanos) / 1e6);
+                })
+                .andThen(body)
+                .andThen(Completable.fromAction(() -> mGreetingState.transition(State.RETURNING, State.GREETING, State.ANNOUNCING)))
+                .andThen(plan.getFinish())
                 .observeOn(mGreetingObserverScheduler)
                 .subscribe(() ->
                 {
                     logMsg("Greeting sequence has completed");
-                    mGreetingInProgress = false;
-                    updateGreetingButtonState();
+                    mGreetingState.transition(State.IDLE, State.RETURNING);
+                    if (groupTriggerMs >= 0) mMetrics.recordLatency(RobotMetrics.Operation.GREETING, TimeUnit.MILLISECONDS.toNanos(mGreetingObserverScheduler.now(TimeUnit.MILLISECONDS) - groupTriggerMs));
+                    if (!sequence.mAbort.hasComplete()) mCompletedGreetingCount++;
+                    onGreetingSequenceEnded();
                     if (mOnGreetingCompleted != null) mOnGreetingCompleted.release();
-                    if (mIdlingResource != null) mIdlingResource.decrement();
                 }, ex ->
                 {
                     // TODO: somehow notify human operator that the robot may need troubleshooting.
                     logError("An error occurred during the greeting sequence");
+                    mGreetingState.transition(State.IDLE, State.APPROACHING, State.GREETING, State.ANNOUNCING, State.RETURNING);
+                    mMetrics.recordError(RobotMetrics.Operation.GREETING, ex);
                     logException(ex);
-                    mGreetingInProgress = false;
-                    updateGreetingButtonState();
+                    onGreetingSequenceEnded();
                 });
     }
 
-    /** Announce all deals defined in the configuration. Note that a maximum of MAX_DEAL_COUNT deals is supported (more than that will be ignored).
-     *  Before announcing the individual deals, say "Here are today's special deals!"
-     *  Each announcement involves speaking the deal text, while simultaneously playing an animation that will point to the corresponding area on the robot's tablet with the arms. **/
-    private Completable announceDeals()
+    private void onGreetingSequenceEnded()
     {
-        int[] resourceIds = new int[] { R.raw.point_to_deal1, R.raw.point_to_deal2, R.raw.point_to_deal3, R.raw.point_to_deal4, R.raw.point_to_deal5, R.raw.point_to_deal6 };
-        List<Completable> completableList = new ArrayList<>();
-        int numDeals = (mConfigData.SpecialDeals.length > MAX_DEAL_COUNT) ? MAX_DEAL_COUNT : mConfigData.SpecialDeals.length;
-        if (numDeals > 0) completableList.add(mRobotController.speak(mContext.getString(R.string.here_are_todays_special_deals)));
-        for (int i=0 ; i < numDeals ; i++)
+        if (mGreetingSequence.mTargetLostTimer != null) mGreetingSequence.mTargetLostTimer.dispose();
+        mGreetingSequence = null;
+        applyPendingConfigData();
+        updateGreetingButtonState();
+        if (mIdlingResource != null) mIdlingResource.decrement();
+        logMsg("Greeting admission: %s", mAdmissionController.getStats());
+        logMsg("Greetings: %d completed, %d cut short. %s", mCompletedGreetingCount, mAbortedGreetingCount, mGreetingState.toString());
+        logMsg("Approach prediction: %s", mApproachPredictor.getStats());
+        logMsg("%d greetings prewarmed, %d not. %s. %s", mWarmStartCount, mColdStartCount, mWarmStartLatency.toString(), mColdStartLatency.toString());
+        logMsg("Robot metrics:\n%s", mMetrics.snapshot());
+        mAdmissionController.onGreetingCompleted();
+
+        // Humans merged into the greeting that just ended have been greeted; they aren't waiting for another one.
+        if (!mAdmissionController.isGreetingInProgress())
         {
-            String dealStr = mConfigData.SpecialDeals[i];
-            int resId = resourceIds[i];
-            completableList.add(Completable.mergeArray(mRobotController.speak(dealStr), mRobotController.animate(resId), highlightDeal(i)));
+            mWaitingTargets.clear();
+            prewarmNextGreeting();
         }
-        return Completable.concat(completableList);
-    }
-
-    /** If the view is attached, return Completable that will play on-screen animation to highlight the deal at the index specified. **/
-    private Completable highlightDeal(int dealNum)
-    {
-        return (mView != null) ? mView.highlightDeal(dealNum) : Completable.complete();
     }
 
     private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
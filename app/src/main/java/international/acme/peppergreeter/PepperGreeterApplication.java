@@ -0,0 +1,50 @@
+package international.acme.peppergreeter;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+/** Creates the dependency container, marks process start for the startup trace, and makes sure buffered log messages are written out on a crash. **/
+public class PepperGreeterApplication extends Application
+{
+    private AppContainer mContainer;
+    public AppContainer getContainer() { return mContainer; }
+
+    @Override
+    public void onCreate()
+    {
+        super.onCreate();
+        StartupTrace.get().markProcessStart(getProcessStartNanos());
+        installCrashLogFlush();
+        mContainer = new AppContainer(this);
+    }
+
+    /** Log messages are written out by a background thread, so the last ones before a crash, which say the most about it, would be lost
+     *  with the process. Write them out on the crashing thread first, then carry on with the usual crash handling. **/
+    private static void installCrashLogFlush()
+    {
+        Thread.UncaughtExceptionHandler previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, ex) ->
+        {
+            try
+            {
+                LogHelper.logError(PepperGreeterApplication.class, "Uncaught exception on thread %s, writing out log before exiting", thread.getName());
+                LogHelper.flush();
+            }
+            finally
+            {
+                if (previousHandler != null) previousHandler.uncaughtException(thread, ex);
+            }
+        });
+    }
+
+    /** Since Android N the time the process was forked is known; before that, the application starting is as close as we can get. **/
+    private static long getProcessStartNanos()
+    {
+        long nowNanos = System.nanoTime();
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return nowNanos;
+        long sinceStartMs = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+        return nowNanos - sinceStartMs * 1000000;
+    }
+}
@@ -0,0 +1,206 @@
+package international.acme.peppergreeter;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Completable;
+
+/** Holds the greeting and deal phrases rendered to audio files, so they can be played back locally instead of going through live text-to-speech.
+ *  Phrases are rendered once per config data version, when the version is made current with renderAll(); get() only returns clips of the current
+ *  version, so a phrase is never played back in a voice or wording that the new config data has replaced.
+ *  Clips are kept on disk across restarts, and the least recently played are deleted once they take up more than the maximum size. **/
+public class PhraseAudioCache
+{
+    /** About three minutes of 16 kHz mono speech: a few versions' worth of greetings and deals. **/
+    static final long DEFAULT_MAX_BYTES = 6 * 1024 * 1024;
+    static final String FILE_EXTENSION = ".wav";
+
+    private final File mDirectory;
+    private final PhraseRenderer mRenderer;
+    private final long mMaxBytes;
+
+    /** Clip files by name, least recently used first. **/
+    private final LinkedHashMap<String, File> mClips = new LinkedHashMap<>(16, 0.75f, true);
+    private long mTotalBytes;
+    private String mCurrentVersion;
+
+    /** Incremented as each renderAll() starts, so that a run overtaken by a later one doesn't make its version current. **/
+    private long mLatestRun;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mRenderCount;
+    private long mEvictionCount;
+
+    public PhraseAudioCache(File directory, PhraseRenderer renderer)
+    {
+        this(directory, renderer, DEFAULT_MAX_BYTES);
+    }
+
+    /** Clips already on disk are picked up again, in the order they were last played. **/
+    public PhraseAudioCache(File directory, PhraseRenderer renderer, long maxBytes)
+    {
+        mDirectory = directory;
+        mRenderer = renderer;
+        mMaxBytes = maxBytes;
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File a, File b)
+            {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files)
+        {
+            mClips.put(file.getName(), file);
+            mTotalBytes += file.length();
+        }
+    }
+
+    /** Return a Completable that renders each phrase that isn't already cached for this version, then makes this the current version.
+     *  A phrase that fails to render is logged and left out, so it will be spoken with live text-to-speech instead.
+     *  Disposing it (as the presenter does when the config data or the page of deals changes) stops rendering at the current phrase, and the
+     *  version isn't made current. Nor is it if a later run started in the meantime: that run's version is the one wanted. **/
+    public Completable renderAll(String version, List<String> phrases)
+    {
+        return Completable.create(emitter ->
+        {
+            long run;
+            synchronized (this)
+            {
+                run = ++mLatestRun;
+            }
+            long startTime = System.nanoTime();
+            int rendered = 0;
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) throw new IllegalStateException("Unable to create " + mDirectory);
+            for (String phrase : phrases)
+            {
+                if (emitter.isDisposed() || Thread.currentThread().isInterrupted()) break;
+                if (phrase == null || phrase.isEmpty()) continue;
+                String name = fileName(version, phrase);
+                synchronized (this)
+                {
+                    if (mClips.containsKey(name)) continue;
+                }
+                if (render(phrase, name)) rendered++;
+            }
+            boolean cancelled = emitter.isDisposed() || Thread.currentThread().isInterrupted();
+            boolean overtaken;
+            synchronized (this)
+            {
+                overtaken = run != mLatestRun;
+                if (!cancelled && !overtaken) mCurrentVersion = version;
+            }
+            if (cancelled) logMsg("Rendering for config version %s cancelled after %d phrases", version, rendered);
+            else if (overtaken) logMsg("Rendered %d phrases for config version %s, not making it current as a later run has started", rendered, version);
+            else logMsg("Rendered %d phrases for config version %s in %d ms. %s", rendered, version, (System.nanoTime() - startTime) / 1000000, getStats());
+            emitter.onComplete();
+        });
+    }
+
+    /** Return the clip for the phrase in the current version, or null if it hasn't been rendered. **/
+    public synchronized File get(String phrase)
+    {
+        File clip = (mCurrentVersion != null) ? mClips.get(fileName(mCurrentVersion, phrase)) : null;
+        if (clip == null)
+        {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        clip.setLastModified(System.currentTimeMillis());
+        return clip;
+    }
+
+    private boolean render(String phrase, String name)
+    {
+        File file = new File(mDirectory, name);
+        File tmpFile = new File(mDirectory, name + ".tmp");
+        try
+        {
+            mRenderer.render(phrase, tmpFile);
+            if (!tmpFile.renameTo(file)) throw new IllegalStateException("Unable to rename " + tmpFile);
+        }
+        catch (InterruptedException ex)
+        {
+            // Cancelled rather than failed: keep the interrupt, so that renderAll() stops.
+            tmpFile.delete();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch (Exception ex)
+        {
+            logError("Unable to render phrase '%s'", phrase);
+            logException(ex);
+            tmpFile.delete();
+            return false;
+        }
+
+        synchronized (this)
+        {
+            mRenderCount++;
+            mClips.put(name, file);
+            mTotalBytes += file.length();
+            evictOverSize();
+        }
+        return true;
+    }
+
+    /** Delete the least recently played clips until the total size is under the maximum. The newest clip is always kept. **/
+    private void evictOverSize()
+    {
+        Iterator<Map.Entry<String, File>> it = mClips.entrySet().iterator();
+        while (mTotalBytes > mMaxBytes && mClips.size() > 1 && it.hasNext())
+        {
+            File file = it.next().getValue();
+            mTotalBytes -= file.length();
+            file.delete();
+            it.remove();
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized int size() { return mClips.size(); }
+    public synchronized long getTotalBytes() { return mTotalBytes; }
+    public synchronized long getHitCount() { return mHitCount; }
+    public synchronized long getMissCount() { return mMissCount; }
+    public synchronized long getRenderCount() { return mRenderCount; }
+    public synchronized long getEvictionCount() { return mEvictionCount; }
+
+    public synchronized String getStats()
+    {
+        return String.format("Phrase audio: %d clips (%d KB), %d hits, %d misses, %d rendered, %d evicted",
+                mClips.size(), mTotalBytes / 1024, mHitCount, mMissCount, mRenderCount, mEvictionCount);
+    }
+
+    /** Hash of the version and phrase, so that any text can be used as a file name. **/
+    static String fileName(String version, String phrase)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest((version + "\n" + phrase).getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(hash.length * 2 + FILE_EXTENSION.length());
+            for (byte b : hash) sb.append(String.format("%02x", b));
+            return sb.append(FILE_EXTENSION).toString();
+        }
+        catch (Exception ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
+    private void logError(String text, Object... args) { LogHelper.logError(getClass(), text, args); }
+    private void logException(Throwable ex) { LogHelper.logException(getClass(), ex); }
+}
@@ -0,0 +1,10 @@
+package international.acme.peppergreeter;
+
+import java.io.File;
+
+/** Synthesizes a phrase into an audio file, for PhraseAudioCache. **/
+public interface PhraseRenderer
+{
+    /** Render the text to a WAV file at the given path. Blocking; called on an IO thread. **/
+    void render(String text, File outFile) throws Exception;
+}
@@ -0,0 +1,104 @@
+package international.acme.peppergreeter;
+
+import com.aldebaran.qi.Callback;
+import com.aldebaran.qi.Future;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+
+/** Adapts robot SDK futures to RxJava through the future's completion callback, so no thread is held while the robot action runs
+ *  (unlike Completable.fromFuture, which parks a thread in a blocking get()). Disposing the returned Completable/Single cancels the SDK future. **/
+public class QiFutures
+{
+    /** Completable that completes when the future succeeds, and errors if the future fails or is cancelled. **/
+    public static Completable toCompletable(Future<?> future)
+    {
+        return Completable.create(emitter ->
+        {
+            emitter.setCancellable(() -> cancel(future));
+            future.addCallback(new CompletionCallback<>(emitter::onComplete, emitter::tryOnError));
+        });
+    }
+
+    /** Single that emits the future's value. A future that succeeds with no value is reported as an error, since a Single can't emit null. **/
+    public static <T> Single<T> toSingle(Future<T> future)
+    {
+        return Single.create(emitter ->
+        {
+            emitter.setCancellable(() -> cancel(future));
+            future.addCallback(new CompletionCallback<T>(() ->
+            {
+                T value = future.get();
+                if (value != null) emitter.onSuccess(value);
+                else emitter.tryOnError(new NullPointerException("Future succeeded with no value"));
+            }, emitter::tryOnError));
+        });
+    }
+
+    private static void cancel(Future<?> future)
+    {
+        if (!future.isDone()) future.cancel(true);
+    }
+
+    private interface SuccessHandler { void onSuccess() throws Exception; }
+    private interface ErrorHandler { boolean onError(Throwable ex); }
+
+    /** Routes the SDK's success/failure/completion callbacks to the handlers. By the time a callback runs the future is done, so get() returns without blocking. **/
+    private static class CompletionCallback<T> implements Callback<T>
+    {
+        final SuccessHandler mOnSuccess;
+        final ErrorHandler mOnError;
+
+        CompletionCallback(SuccessHandler onSuccess, ErrorHandler onError)
+        {
+            mOnSuccess = onSuccess;
+            mOnError = onError;
+        }
+
+        @Override
+        public void onSuccess(Future<T> future, Object[] args)
+        {
+            try
+            {
+                mOnSuccess.onSuccess();
+            }
+            catch (Exception ex)
+            {
+                mOnError.onError(ex);
+            }
+        }
+
+        @Override
+        public void onFailure(Future<T> future, Object[] args)
+        {
+            mOnError.onError(getError(future));
+        }
+
+        /** Cancellation isn't reported through onSuccess or onFailure, so catch it here. **/
+        @Override
+        public void onComplete(Future<T> future, Object[] args)
+        {
+            if (future.isCancelled()) mOnError.onError(new CancellationException("Robot action was cancelled"));
+        }
+
+        private static Throwable getError(Future<?> future)
+        {
+            try
+            {
+                future.get();
+                return new ExecutionException("Robot action failed", null);
+            }
+            catch (ExecutionException ex)
+            {
+                return (ex.getCause() != null) ? ex.getCause() : ex;
+            }
+            catch (Exception ex)
+            {
+                return ex;
+            }
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package international.acme.peppergreeter;
 
-import com.aldebaran.qi.Future;
+import java.util.List;
 
 import io.reactivex.Completable;
+import io.reactivex.Flowable;
 
 /** Interface defining input/output operations to the robot. **/
 public interface RobotController
@@ -16,6 +17,17 @@ public interface RobotController
     /** Start async request for robot to animate with the animation resource ID provided. **/
     Completable animate(int animationResourceId);
 
-    /** Start watching for humans within the detection distance, and invoke the runnable if one is detected. **/
-    void watchForHumans(Runnable onHumanDetected);
+    /** Prepare ahead of time, while the robot is idle, what the next actions will need, so that they start sooner once requested.
+     *  Safe to call repeatedly: anything already prepared and not yet used is kept. **/
+    Completable prewarm();
+
+    /** Prepare the phrases of a config data version for playback, so they needn't go through live text-to-speech when spoken. **/
+    Completable preparePhrases(String configVersion, List<String> phrases);
+
+    /** System.nanoTime() at which the most recent move was issued to the robot, or 0 if none has been yet. **/
+    long getLastMotionStartNanos();
+
+    /** Stream of the humans currently around the robot, with their distances. Bursts of detections are coalesced so that at most one event
+     *  is emitted per sampling window; if the subscriber falls behind, only the latest event is kept. **/
+    Flowable<List<HumanObservation>> humansAround();
 }
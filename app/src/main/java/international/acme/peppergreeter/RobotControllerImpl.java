@@ -2,7 +2,6 @@ package international.acme.peppergreeter;
 
 import android.content.Context;
 
-import com.aldebaran.qi.Future;
 import com.aldebaran.qi.sdk.object.actuation.Actuation;
 import com.aldebaran.qi.sdk.object.actuation.Animate;
 import com.aldebaran.qi.sdk.object.actuation.Animation;
@@ -10,110 +9,290 @@ import com.aldebaran.qi.sdk.object.actuation.Frame;
 import com.aldebaran.qi.sdk.object.actuation.GoTo;
 import com.aldebaran.qi.sdk.object.geometry.Quaternion;
 import com.aldebaran.qi.sdk.object.geometry.Transform;
-import com.aldebaran.qi.sdk.object.geometry.TransformTime;
 import com.aldebaran.qi.sdk.object.geometry.Vector3;
 import com.aldebaran.qi.sdk.object.interaction.Human;
 import com.aldebaran.qi.sdk.object.interaction.Interaction;
 import com.aldebaran.qi.sdk.object.interaction.Say;
 
+import java.io.File;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import io.reactivex.BackpressureStrategy;
 import io.reactivex.Completable;
-import io.reactivex.CompletableSource;
-import io.reactivex.functions.Action;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 
+import international.acme.peppergreeter.ActuatorScheduler.Lane;
+import international.acme.peppergreeter.RobotMetrics.Operation;
+
 /** Responsible for controlling input/output operations to the robot. **/
 public class RobotControllerImpl implements RobotController
 {
-    /** If human is detected within this range, trigger greeting. **/
-    final int HUMAN_DETECTION_DISTANCE = 3;
+    /** Humans-around events are coalesced to at most one per window of this length, and while humans are around their positions are re-read once per window. **/
+    static final long DEFAULT_HUMAN_SAMPLING_WINDOW_MS = 500;
+
+    /** Enough Say actions for the next utterance to be ready while the current one plays, with one to spare. **/
+    static final int SAY_POOL_SIZE = 2;
+
+    /** Utterances starting within this time of the previous one ending are taken to be part of the same sequence, and the silence between them is measured. **/
+    static final long UTTERANCE_GAP_WINDOW_MS = 3000;
 
     Context mContext;
+    AnimationCache mAnimationCache;
+    ActuatorScheduler mActuatorScheduler;
+
+    /** Deadlines for each type of action; replace to tune them for a particular robot or store. **/
+    ActionTimeouts mActionTimeouts = new ActionTimeouts();
+    public void setActionTimeouts(ActionTimeouts actionTimeouts) { mActionTimeouts = actionTimeouts; }
+
+    long mHumanSamplingWindowMs = DEFAULT_HUMAN_SAMPLING_WINDOW_MS;
+    public void setHumanSamplingWindowMs(long windowMs) { mHumanSamplingWindowMs = windowMs; }
+
+    /** Actions constructed ahead of time: filled by prewarm() while idle, and topped up in the background each time one is taken. **/
+    final ActionPool<Say> mSayPool;
+    final ActionPool<Animate> mAnimatePool;
+    final ActionPool<GoTo> mGoToPool;
+
+    /** Silence between the end of one utterance and the start of the next within a sequence, such as between deal announcements. **/
+    final LatencyStats mUtteranceGapStats = new LatencyStats("Inter-utterance gap");
+    volatile long mLastUtteranceEndNanos;
+
+    /** Optional: phrases rendered ahead of time are played back through the player rather than spoken with Say. **/
+    PhraseAudioCache mPhraseAudioCache;
+    AudioPlayer mAudioPlayer;
+    public void setPhraseAudio(PhraseAudioCache phraseAudioCache, AudioPlayer audioPlayer)
+    {
+        mPhraseAudioCache = phraseAudioCache;
+        mAudioPlayer = audioPlayer;
+    }
+
+    /** Optional: humans-around events and action latencies are recorded to it, for replay off the robot. **/
+    SessionRecorder mSessionRecorder;
+    public void setSessionRecorder(SessionRecorder sessionRecorder) { mSessionRecorder = sessionRecorder; }
+
+    /** The robot's frame, looked up once: every move is made relative to where the robot is when it starts. **/
+    volatile Frame mRobotFrame;
+
+    volatile long mLastMotionStartNanos;
 
     public RobotControllerImpl(Context context)
     {
         mContext = context;
+        mActuatorScheduler = new ActuatorScheduler();
+        mSayPool = new ActionPool<>("Say", SAY_POOL_SIZE, () -> new Say(mContext));
+        mAnimatePool = new ActionPool<>("Animate", 1, () -> new Animate(mContext));
+        mGoToPool = new ActionPool<>("GoTo", 1, () -> new GoTo(mContext));
+        mAnimationCache = new AnimationCache(resourceId -> Animation.fromResources(mContext, resourceId));
+        mAnimationCache.warmUp(AnimationManifest.RESOURCE_IDS).subscribeOn(Schedulers.io()).subscribe();
     }
 
+    public AnimationCache getAnimationCache() { return mAnimationCache; }
+    public ActuatorScheduler getActuatorScheduler() { return mActuatorScheduler; }
+    public LatencyStats getUtteranceGapStats() { return mUtteranceGapStats; }
+
+    /** Phrases rendered to audio for the current config data are played back locally. Anything else is spoken with Say, as is a rendered phrase
+     *  whose clip can't be played (a corrupt or empty file, or an audio error), so that a bad clip never costs the greeting.
+     *  Playback and Say each get the full speech deadline, so a playback that hangs still leaves the fallback time to speak. **/
     @Override
     public Completable speak(String message)
+    {
+        long timeoutMs = mActionTimeouts.getSpeakTimeoutMs(message);
+        return recorded(Operation.SPEAK, mActuatorScheduler.schedule(Lane.SPEECH, Completable.defer(() ->
+        {
+            File clip = (mPhraseAudioCache != null) ? mPhraseAudioCache.get(message) : null;
+            if (clip != null)
+            {
+                logMsg("Playing rendered phrase '%s'", message);
+                recordUtteranceGap();
+                return mAudioPlayer.play(clip)
+                        .timeout(timeoutMs, TimeUnit.MILLISECONDS)
+                        .doOnComplete(() -> mLastUtteranceEndNanos = System.nanoTime())
+                        .onErrorResumeNext(ex ->
+                        {
+                            logError("Unable to play rendered phrase '%s', speaking it with text-to-speech instead", message);
+                            logException(ex);
+                            return say(message).timeout(timeoutMs, TimeUnit.MILLISECONDS);
+                        });
+            }
+            recordUtteranceGap();
+            return say(message).timeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }))).doOnComplete(() -> logMsg("speak(%s) completed", message));
+    }
+
+    /** Speak with live text-to-speech. Say is pipelined: the Say for the next utterance is constructed in the background while this one plays,
+     *  and is handed back to be reused once it completes, so consecutive utterances (such as the deal announcements) follow each other without a cold start. **/
+    Completable say(String message)
     {
         return Completable.defer(() ->
         {
             logMsg("Starting say '%s'", message);
-            Say say = new Say(mContext);
-            return Completable.fromFuture(say.run(message));
-        }).subscribeOn(Schedulers.newThread()).doOnComplete(() -> logMsg("speak(%s) completed", message));
+            Say say = mSayPool.acquire();
+            refillInBackground(mSayPool);
+            return QiFutures.toCompletable(say.run(message)).doOnComplete(() ->
+            {
+                mLastUtteranceEndNanos = System.nanoTime();
+                mSayPool.release(say);
+            });
+        });
     }
 
     @Override
     public Completable moveWithVector(double x, double y, double z)
     {
-        return Completable.defer(() ->
+        return recorded(Operation.MOVE, mActuatorScheduler.schedule(Lane.MOTION, Completable.defer(() ->
         {
             logMsg("Starting moveWithVector(%.2f, %.2f, %.2f)", x, y, z);
             Quaternion r = new Quaternion(0, 0, 0, 1);
             Vector3 t = new Vector3(x, y, z);
             Transform tf = new Transform(r, t);
-            Frame robotFrame = Actuation.get(mContext).robotFrame();
-            Frame robotAtStart = robotFrame.makeDetachedFrame(System.currentTimeMillis());
+            Frame robotAtStart = getRobotFrame().makeDetachedFrame(System.currentTimeMillis());
             Frame targetFrame = robotAtStart.makeStaticChildFrame(tf);
-            return Completable.fromFuture(new GoTo(mContext).run(targetFrame));
-        }).subscribeOn(Schedulers.newThread()).doOnComplete(() -> logMsg("move(%.2f,%.2f,%.2f) completed", x, y, z));
+            GoTo goTo = mGoToPool.acquire();
+            refillInBackground(mGoToPool);
+            mLastMotionStartNanos = System.nanoTime();
+            return QiFutures.toCompletable(goTo.run(targetFrame)).doOnComplete(() -> mGoToPool.release(goTo));
+        }).timeout(mActionTimeouts.MoveMs, TimeUnit.MILLISECONDS))).doOnComplete(() -> logMsg("move(%.2f,%.2f,%.2f) completed", x, y, z));
     }
 
     @Override
     public Completable animate(int resourceId)
     {
-        return Completable.defer(() ->
+        return recorded(Operation.ANIMATE, mActuatorScheduler.schedule(Lane.GESTURE, Completable.defer(() ->
         {
             logMsg("Starting animation '%d'", resourceId);
-            Animation animation = Animation.fromResources(mContext, resourceId);
-            Animate animate = new Animate(mContext);
-            return Completable.fromFuture(animate.run(animation));
-        }).subscribeOn(Schedulers.newThread()).doOnComplete(() -> logMsg("animate(%d) completed", resourceId));
+            Animation animation = mAnimationCache.get(resourceId);
+            Animate animate = mAnimatePool.acquire();
+            refillInBackground(mAnimatePool);
+            return QiFutures.toCompletable(animate.run(animation)).doOnComplete(() -> mAnimatePool.release(animate));
+        }).timeout(mActionTimeouts.AnimateMs, TimeUnit.MILLISECONDS))).doOnComplete(() -> logMsg("animate(%d) completed", resourceId));
     }
 
-    /** Activate listener to watch for humans.  If human is detected within configured range, then trigger greeting. **/
+    /** Construct the actions for the next greeting and look up the robot frame, on an IO thread as these are blocking calls into the robot's services.
+     *  Animations are already preloaded by the AnimationCache. **/
     @Override
-    public void watchForHumans(Runnable onHumanDetected)
+    public Completable prewarm()
     {
-        logMsg("Watching for humans");
-        final Actuation actuation = Actuation.get(mContext);
-        Interaction.get(mContext).setHumansAroundListener(humans ->
+        return Completable.fromAction(() ->
         {
-            logMsg("Detected %d humans", humans.size());
-            try
-            {
-                Frame robotFrame = actuation.robotFrame();
-                int i = 0;
-                for (Human human : humans)
-                {
-                    Frame humanFrame = human.getHeadFrame();
-                    TransformTime tf = humanFrame.lastKnownTransform(robotFrame).get();
-                    double distance = getDistance(tf.getTransform());
-                    logMsg("Human detected at distance %.2f", distance);
-                    if (distance < HUMAN_DETECTION_DISTANCE) onHumanDetected.run();
-                }
-            }
-            catch (ExecutionException e)
-            {
-                // TODO: Notify operator of error condition rather than logging silently.
-                logError("Error in human detection");
-                logException(e);
-            }
+            long startTime = System.nanoTime();
+            getRobotFrame();
+            mSayPool.refill();
+            mAnimatePool.refill();
+            mGoToPool.refill();
+            logMsg("Prewarmed next actions in %d ms", (System.nanoTime() - startTime) / 1000000);
+            logMsg("%s. %s. %s. %s", mSayPool.getStats(), mAnimatePool.getStats(), mGoToPool.getStats(), mUtteranceGapStats.toString());
+        }).subscribeOn(Schedulers.io());
+    }
+
+    @Override
+    public Completable preparePhrases(String configVersion, List<String> phrases)
+    {
+        if (mPhraseAudioCache == null) return Completable.complete();
+        return mPhraseAudioCache.renderAll(configVersion, phrases).subscribeOn(Schedulers.io());
+    }
+
+    @Override
+    public long getLastMotionStartNanos() { return mLastMotionStartNanos; }
+
+    private Completable recorded(Operation operation, Completable action)
+    {
+        SessionRecorder sessionRecorder = mSessionRecorder;
+        return (sessionRecorder != null) ? sessionRecorder.record(operation, action) : action;
+    }
+
+    private void refillInBackground(ActionPool<?> pool)
+    {
+        Completable.fromAction(pool::refill).subscribeOn(Schedulers.io()).subscribe(() -> {}, ex ->
+        {
+            logError("Unable to construct actions ahead of time");
+            logException(ex);
         });
     }
 
-    private double getDistance(Transform transform)
+    private void recordUtteranceGap()
+    {
+        long lastEndNanos = mLastUtteranceEndNanos;
+        if (lastEndNanos == 0) return;
+        double gapMs = (System.nanoTime() - lastEndNanos) / 1e6;
+        if (gapMs <= UTTERANCE_GAP_WINDOW_MS) mUtteranceGapStats.record(gapMs);
+    }
+
+    private Frame getRobotFrame()
+    {
+        Frame robotFrame = mRobotFrame;
+        if (robotFrame == null)
+        {
+            robotFrame = Actuation.get(mContext).robotFrame();
+            mRobotFrame = robotFrame;
+        }
+        return robotFrame;
+    }
+
+    /** Humans-around events from the SDK listener are only handed over to the stream on the SDK callback thread; the transform lookups
+     *  for each sampled event are then issued for all humans at once, off that thread. A human whose transform can't be read is left out.
+     *  The listener only fires when someone arrives or leaves, so while humans are around their transforms are re-read every sampling
+     *  window too: without that, a shopper walking towards the robot would be seen at one position only, and their approach never predicted. **/
+    @Override
+    public Flowable<List<HumanObservation>> humansAround()
+    {
+        return Flowable.<List<Human>>create(emitter ->
+        {
+            logMsg("Watching for humans");
+            Interaction interaction = Interaction.get(mContext);
+            interaction.setHumansAroundListener(emitter::onNext);
+            emitter.setCancellable(() -> interaction.setHumansAroundListener(null));
+        }, BackpressureStrategy.LATEST)
+            .sample(mHumanSamplingWindowMs, TimeUnit.MILLISECONDS, true)
+            .onBackpressureLatest()
+            .compose(events -> repeatWhileHumansAround(events, mHumanSamplingWindowMs, Schedulers.computation()))
+            .flatMapSingle(this::observeHumans, false, 1)
+            .doOnNext(this::recordHumans);
+    }
+
+    /** Re-emit the latest list of humans every periodMs until the next one arrives, for as long as it isn't empty. A repeat that comes round
+     *  while the previous one is still being observed is dropped. **/
+    static <T> Flowable<List<T>> repeatWhileHumansAround(Flowable<List<T>> events, long periodMs, Scheduler scheduler)
+    {
+        return events
+            .switchMap(humans -> humans.isEmpty() ? Flowable.just(humans) : Flowable.interval(0, periodMs, TimeUnit.MILLISECONDS, scheduler).map(tick -> humans))
+            .onBackpressureLatest();
+    }
+
+    private Single<List<HumanObservation>> observeHumans(List<Human> humans)
+    {
+        logMsg("Detected %d humans", humans.size());
+        long timestamp = System.currentTimeMillis();
+        Frame robotFrame = getRobotFrame();
+        return Flowable.fromIterable(humans)
+            .flatMapMaybe(human -> QiFutures.toSingle(human.getHeadFrame().lastKnownTransform(robotFrame))
+                .map(tf -> toObservation(human, tf.getTransform(), timestamp))
+                .toMaybe()
+                .doOnError(ex ->
+                {
+                    // TODO: Notify operator of error condition rather than logging silently.
+                    logError("Error in human detection");
+                    logException(ex);
+                })
+                .onErrorComplete())
+            .toList();
+    }
+
+    /** Recorded even when no humans are left, so that a replay sees them leave. **/
+    private void recordHumans(List<HumanObservation> humans)
+    {
+        SessionRecorder sessionRecorder = mSessionRecorder;
+        if (sessionRecorder != null) sessionRecorder.recordHumans(humans, humans.isEmpty() ? System.currentTimeMillis() : humans.get(0).TimestampMs);
+    }
+
+    private HumanObservation toObservation(Human human, Transform transform, long timestamp)
     {
         Vector3 t = transform.getT();
-        double x = t.getX();
-        double y = t.getY();
-        return Math.sqrt(x * x + y * y);
+        HumanObservation observation = new HumanObservation(human, t.getX(), t.getY(), timestamp);
+        logMsg("Human detected at distance %.2f", observation.Distance);
+        return observation;
     }
 
     private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
@@ -0,0 +1,127 @@
+package international.acme.peppergreeter;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Completable;
+
+/** Latency histograms and outcome counters for each kind of robot operation, plus the number of greetings dropped without being performed.
+ *  Everything is recorded lock-free, so operations can be timed on whatever thread they complete on. snapshot() takes a consistent-enough
+ *  copy of the lot for logging, or for tests to assert against. **/
+public class RobotMetrics
+{
+    public enum Operation
+    {
+        SPEAK("Speak"),
+        MOVE("Move"),
+        ANIMATE("Animate"),
+        HIGHLIGHT_DEAL("Highlight deal"),
+        /** From the trigger for the group to the robot being back at its start position. **/
+        GREETING("Greeting");
+
+        final String mLabel;
+
+        Operation(String label)
+        {
+            mLabel = label;
+        }
+    }
+
+    private static class OperationMetrics
+    {
+        final LatencyHistogram mLatency;
+        final AtomicLong mErrorCount = new AtomicLong();
+        final AtomicLong mTimeoutCount = new AtomicLong();
+        final AtomicLong mCancelledCount = new AtomicLong();
+
+        OperationMetrics(Operation operation)
+        {
+            mLatency = new LatencyHistogram(operation.mLabel);
+        }
+    }
+
+    private final OperationMetrics[] mOperations = new OperationMetrics[Operation.values().length];
+    private final AtomicLong mDroppedGreetingCount = new AtomicLong();
+
+    public RobotMetrics()
+    {
+        for (Operation operation : Operation.values()) mOperations[operation.ordinal()] = new OperationMetrics(operation);
+    }
+
+    /** Return a Completable that runs the source and records how long it took to complete, or how it failed or was cancelled. **/
+    public Completable time(Operation operation, Completable source)
+    {
+        return Completable.defer(() ->
+        {
+            long startNanos = System.nanoTime();
+            return source
+                    .doOnComplete(() -> recordLatency(operation, System.nanoTime() - startNanos))
+                    .doOnError(ex -> recordError(operation, ex))
+                    .doOnDispose(() -> mOperations[operation.ordinal()].mCancelledCount.incrementAndGet());
+        });
+    }
+
+    public void recordLatency(Operation operation, long latencyNanos)
+    {
+        mOperations[operation.ordinal()].mLatency.recordNanos(latencyNanos);
+    }
+
+    /** Timeouts are counted separately from other errors. **/
+    public void recordError(Operation operation, Throwable ex)
+    {
+        OperationMetrics metrics = mOperations[operation.ordinal()];
+        if (ex instanceof TimeoutException) metrics.mTimeoutCount.incrementAndGet();
+        else metrics.mErrorCount.incrementAndGet();
+    }
+
+    public void recordDroppedGreeting()
+    {
+        mDroppedGreetingCount.incrementAndGet();
+    }
+
+    public Snapshot snapshot()
+    {
+        return new Snapshot(this);
+    }
+
+    /** The metrics at one point in time. **/
+    public static class Snapshot
+    {
+        private final LatencyHistogram.Snapshot[] mLatencies = new LatencyHistogram.Snapshot[Operation.values().length];
+        private final long[] mErrorCounts = new long[Operation.values().length];
+        private final long[] mTimeoutCounts = new long[Operation.values().length];
+        private final long[] mCancelledCounts = new long[Operation.values().length];
+        private final long mDroppedGreetingCount;
+
+        Snapshot(RobotMetrics metrics)
+        {
+            for (int i = 0; i < mLatencies.length; i++)
+            {
+                OperationMetrics operationMetrics = metrics.mOperations[i];
+                mLatencies[i] = operationMetrics.mLatency.snapshot();
+                mErrorCounts[i] = operationMetrics.mErrorCount.get();
+                mTimeoutCounts[i] = operationMetrics.mTimeoutCount.get();
+                mCancelledCounts[i] = operationMetrics.mCancelledCount.get();
+            }
+            mDroppedGreetingCount = metrics.mDroppedGreetingCount.get();
+        }
+
+        public LatencyHistogram.Snapshot getLatency(Operation operation) { return mLatencies[operation.ordinal()]; }
+        public long getErrorCount(Operation operation) { return mErrorCounts[operation.ordinal()]; }
+        public long getTimeoutCount(Operation operation) { return mTimeoutCounts[operation.ordinal()]; }
+        public long getCancelledCount(Operation operation) { return mCancelledCounts[operation.ordinal()]; }
+        public long getDroppedGreetingCount() { return mDroppedGreetingCount; }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            for (Operation operation : Operation.values())
+            {
+                int i = operation.ordinal();
+                sb.append(mLatencies[i]).append(String.format(", %d errors, %d timeouts, %d cancelled\n", mErrorCounts[i], mTimeoutCounts[i], mCancelledCounts[i]));
+            }
+            return sb.append(String.format("%d greetings dropped", mDroppedGreetingCount)).toString();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package international.acme.peppergreeter;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import international.acme.peppergreeter.RobotMetrics.Operation;
+
+/** Reads back the sessions written by SessionRecorder, for replay. A file whose last record was cut short is read up to that record; anything
+ *  else that doesn't parse is reported as corrupt rather than read as garbage. **/
+public class SessionReader
+{
+    /** One humans-around event, at OffsetMs from the start of its session. **/
+    public static class HumansEvent
+    {
+        public final long OffsetMs;
+        public final double[] X;
+        public final double[] Y;
+
+        HumansEvent(long offsetMs, double[] x, double[] y)
+        {
+            OffsetMs = offsetMs;
+            X = x;
+            Y = y;
+        }
+
+        /** The humans as observations timestamped at the given time, as the presenter would receive them. **/
+        public List<HumanObservation> toObservations(long timestampMs)
+        {
+            List<HumanObservation> humans = new ArrayList<>(X.length);
+            for (int i = 0; i < X.length; i++) humans.add(new HumanObservation(null, X[i], Y[i], timestampMs));
+            return humans;
+        }
+    }
+
+    /** One speak, move or animate, completed (or failed, or cancelled) at OffsetMs from the start of its session. **/
+    public static class ActionEvent
+    {
+        public final long OffsetMs;
+        public final Operation Type;
+        /** One of SessionRecorder's OUTCOME_ values. **/
+        public final int Outcome;
+        public final long LatencyMicros;
+
+        ActionEvent(long offsetMs, Operation operation, int outcome, long latencyMicros)
+        {
+            OffsetMs = offsetMs;
+            Type = operation;
+            Outcome = outcome;
+            LatencyMicros = latencyMicros;
+        }
+    }
+
+    public static class Session
+    {
+        public final long StartedAtMs;
+        public final List<HumansEvent> HumansEvents = new ArrayList<>();
+        public final List<ActionEvent> ActionEvents = new ArrayList<>();
+
+        Session(long startedAtMs)
+        {
+            StartedAtMs = startedAtMs;
+        }
+
+        /** Offset of the last record in the session. **/
+        public long getDurationMs()
+        {
+            long durationMs = 0;
+            if (!HumansEvents.isEmpty()) durationMs = HumansEvents.get(HumansEvents.size() - 1).OffsetMs;
+            if (!ActionEvents.isEmpty()) durationMs = Math.max(durationMs, ActionEvents.get(ActionEvents.size() - 1).OffsetMs);
+            return durationMs;
+        }
+    }
+
+    /** Sanity limit on the humans in one event, so that a corrupt count is reported rather than allocated. **/
+    static final int MAX_HUMANS_PER_EVENT = 1000;
+
+    /** Whether the file exists and starts with a header in the current format, so that sessions can be appended to it. **/
+    public static boolean hasHeader(File file)
+    {
+        if (!file.exists() || file.length() < 8) return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+        {
+            return in.readInt() == SessionRecorder.MAGIC && in.readInt() == SessionRecorder.FORMAT_VERSION;
+        }
+        catch (IOException ex)
+        {
+            return false;
+        }
+    }
+
+    /** Length of the file up to the end of its last complete, valid record, or 0 if it doesn't start with a header in the current format.
+     *  SessionRecorder cuts the file back to this before appending, so that a record left part written when the app was killed isn't read
+     *  together with the start of the next session. **/
+    public static long getCompleteLength(File file)
+    {
+        if (!hasHeader(file)) return 0;
+        try
+        {
+            return parse(file, new ArrayList<>(), true);
+        }
+        catch (IOException ex)
+        {
+            return 0;
+        }
+    }
+
+    /** Read all sessions in the file, oldest first. Throws IOException if it isn't a session recording in the current format, or is corrupt. **/
+    public static List<Session> read(File file) throws IOException
+    {
+        List<Session> sessions = new ArrayList<>();
+        parse(file, sessions, false);
+        return sessions;
+    }
+
+    /** Read the sessions into the list, and return the offset of the end of the last complete record. A record cut short at the end of the file
+     *  is ignored. A corrupt record throws IOException, unless lenient, in which case reading stops before it. **/
+    private static long parse(File file, List<Session> sessions, boolean lenient) throws IOException
+    {
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+             DataInputStream in = new DataInputStream(counter))
+        {
+            if (in.readInt() != SessionRecorder.MAGIC || in.readInt() != SessionRecorder.FORMAT_VERSION) throw new IOException("Not a session recording in format " + SessionRecorder.FORMAT_VERSION);
+            long completeLength = counter.mCount;
+            Session session = null;
+            long offsetMs = 0;
+            int type;
+            while ((type = in.read()) >= 0)
+            {
+                try
+                {
+                    if (type == SessionRecorder.RECORD_SESSION_START)
+                    {
+                        session = new Session(in.readLong());
+                        sessions.add(session);
+                        offsetMs = 0;
+                    }
+                    else
+                    {
+                        if (session == null) throw new IOException("Record before the first session start");
+                        offsetMs += readVarint(in);
+                        if (type == SessionRecorder.RECORD_HUMANS)
+                        {
+                            long count = readVarint(in);
+                            if (count < 0 || count > MAX_HUMANS_PER_EVENT) throw new IOException("Invalid human count " + count);
+                            double[] x = new double[(int) count];
+                            double[] y = new double[(int) count];
+                            for (int i = 0; i < count; i++)
+                            {
+                                x[i] = readVarint(in) / 100.0;
+                                y[i] = readVarint(in) / 100.0;
+                            }
+                            session.HumansEvents.add(new HumansEvent(offsetMs, x, y));
+                        }
+                        else if (type == SessionRecorder.RECORD_ACTION)
+                        {
+                            long ordinal = readVarint(in);
+                            if (ordinal < 0 || ordinal >= Operation.values().length) throw new IOException("Invalid operation " + ordinal);
+                            int outcome = (int) readVarint(in);
+                            session.ActionEvents.add(new ActionEvent(offsetMs, Operation.values()[(int) ordinal], outcome, readVarint(in)));
+                        }
+                        else throw new IOException("Unknown record type " + type);
+                    }
+                    completeLength = counter.mCount;
+                }
+                catch (EOFException ex)
+                {
+                    logMsg("Session recording ends part way through a record, ignoring it");
+                    break;
+                }
+                catch (IOException ex)
+                {
+                    if (!lenient) throw new IOException("Corrupt session recording at byte " + completeLength, ex);
+                    logError("Corrupt session recording at byte %d, ignoring the rest of it: %s", completeLength, ex.getMessage());
+                    break;
+                }
+            }
+            return completeLength;
+        }
+    }
+
+    /** Counts the bytes read through it, so that the end of each record is known. **/
+    private static class CountingInputStream extends FilterInputStream
+    {
+        long mCount;
+
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b >= 0) mCount++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException
+        {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) mCount += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException
+    {
+        long zigzag = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = in.readUnsignedByte();
+            if (shift > 63) throw new IOException("Varint too long");
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private static void logMsg(String text, Object... args) { LogHelper.logMsg(SessionReader.class, text, args); }
+    private static void logError(String text, Object... args) { LogHelper.logError(SessionReader.class, text, args); }
+}
@@ -0,0 +1,211 @@
+package international.acme.peppergreeter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import io.reactivex.Completable;
+
+import international.acme.peppergreeter.RobotMetrics.Operation;
+
+/** Records what the robot saw and how long its actions took, so that a day of real traffic at the door can be replayed off the robot (see SessionReader).
+ *  Each humans-around event is recorded with the position of every human in it, and each speak, move and animate with its latency and outcome.
+ *  The file is append-only: each time a recorder is opened it starts a new session at the end of the file. The buffer may have been written
+ *  out part way through a record when the app was killed, so open() first cuts the file back to its last complete record; a session cut short
+ *  that way loses at most the records buffered since nobody was last around. Records are a few bytes each (times as deltas, positions in
+ *  centimeters, both varints), so a busy day comes to around a megabyte; recording stops once the file reaches MAX_FILE_BYTES.
+ *
+ *  File format: MAGIC and FORMAT_VERSION (ints), then records, each a type byte followed by:
+ *    SESSION_START: wall-clock start time in ms (long). Times of the records after it are relative to the previous record.
+ *    HUMANS:        time delta in ms, human count, then x and y of each human in cm.
+ *    ACTION:        time delta in ms (at completion), operation ordinal, outcome, latency in microseconds.
+ *  All values after the type byte are zigzag varints, apart from the session start time. **/
+public class SessionRecorder
+{
+    static final int MAGIC = 0x50475352;
+    static final int FORMAT_VERSION = 1;
+    static final long MAX_FILE_BYTES = 16 * 1024 * 1024;
+
+    static final int RECORD_SESSION_START = 0;
+    static final int RECORD_HUMANS = 1;
+    static final int RECORD_ACTION = 2;
+
+    static final int OUTCOME_COMPLETED = 0;
+    static final int OUTCOME_ERROR = 1;
+    static final int OUTCOME_TIMEOUT = 2;
+    static final int OUTCOME_CANCELLED = 3;
+
+    private final File mFile;
+    private DataOutputStream mOut;
+    private long mBytesWritten;
+    private long mLastRecordMs;
+
+    public SessionRecorder(File file)
+    {
+        mFile = file;
+    }
+
+    /** Open the file, writing the header if it is new or was written in a different format, and start a new session at the given wall-clock time.
+     *  A record left part written at the end of the file is cut off first. **/
+    public synchronized void open(long nowMs)
+    {
+        try
+        {
+            long completeLength = SessionReader.getCompleteLength(mFile);
+            boolean append = completeLength > 0;
+            if (append && completeLength < mFile.length())
+            {
+                logMsg("Session recording ends part way through a record, cutting it back from %d to %d bytes", mFile.length(), completeLength);
+                try (RandomAccessFile file = new RandomAccessFile(mFile, "rw"))
+                {
+                    file.setLength(completeLength);
+                }
+            }
+            mBytesWritten = completeLength;
+            mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, append)));
+            if (!append)
+            {
+                mOut.writeInt(MAGIC);
+                mOut.writeInt(FORMAT_VERSION);
+                mBytesWritten += 8;
+            }
+            mOut.writeByte(RECORD_SESSION_START);
+            mOut.writeLong(nowMs);
+            mBytesWritten += 9;
+            mLastRecordMs = nowMs;
+            logMsg("Recording session to %s (%d bytes so far)", mFile, mBytesWritten);
+        }
+        catch (IOException ex)
+        {
+            logError("Unable to open session recording, nothing will be recorded");
+            logException(ex);
+            mOut = null;
+        }
+    }
+
+    public synchronized void recordHumans(List<HumanObservation> humans, long timestampMs)
+    {
+        if (!startRecord(RECORD_HUMANS, timestampMs)) return;
+        writeVarint(humans.size());
+        for (int i = 0; i < humans.size(); i++)
+        {
+            writeVarint(Math.round(humans.get(i).X * 100));
+            writeVarint(Math.round(humans.get(i).Y * 100));
+        }
+        // Nobody around: a quiet moment to write out what has been buffered.
+        if (humans.isEmpty()) flush();
+    }
+
+    public synchronized void recordAction(Operation operation, int outcome, long latencyNanos, long timestampMs)
+    {
+        if (!startRecord(RECORD_ACTION, timestampMs)) return;
+        writeVarint(operation.ordinal());
+        writeVarint(outcome);
+        writeVarint(latencyNanos / 1000);
+    }
+
+    /** Return a Completable that runs the source and records its latency and outcome once it completes, fails or is cancelled. **/
+    public Completable record(Operation operation, Completable source)
+    {
+        return Completable.defer(() ->
+        {
+            long startNanos = System.nanoTime();
+            return source
+                    .doOnComplete(() -> recordAction(operation, OUTCOME_COMPLETED, System.nanoTime() - startNanos, System.currentTimeMillis()))
+                    .doOnError(ex -> recordAction(operation, (ex instanceof TimeoutException) ? OUTCOME_TIMEOUT : OUTCOME_ERROR, System.nanoTime() - startNanos, System.currentTimeMillis()))
+                    .doOnDispose(() -> recordAction(operation, OUTCOME_CANCELLED, System.nanoTime() - startNanos, System.currentTimeMillis()));
+        });
+    }
+
+    /** Write out buffered records, so that they survive the app being killed. **/
+    public synchronized void flush()
+    {
+        if (mOut == null) return;
+        try
+        {
+            mOut.flush();
+        }
+        catch (IOException ex)
+        {
+            stopRecording(ex);
+        }
+    }
+
+    public synchronized void close()
+    {
+        if (mOut == null) return;
+        try
+        {
+            mOut.close();
+        }
+        catch (IOException ex)
+        {
+            logException(ex);
+        }
+        mOut = null;
+    }
+
+    public synchronized long getBytesWritten() { return mBytesWritten; }
+
+    private boolean startRecord(int type, long timestampMs)
+    {
+        if (mOut == null) return false;
+        if (mBytesWritten >= MAX_FILE_BYTES)
+        {
+            logMsg("Session recording has reached %d bytes, recording stopped", mBytesWritten);
+            close();
+            return false;
+        }
+        try
+        {
+            mOut.writeByte(type);
+            mBytesWritten++;
+        }
+        catch (IOException ex)
+        {
+            stopRecording(ex);
+            return false;
+        }
+        writeVarint(timestampMs - mLastRecordMs);
+        mLastRecordMs = timestampMs;
+        return true;
+    }
+
+    /** Zigzag encoding, so that small negative values (a record completing just before the previous one was written) stay small. **/
+    private void writeVarint(long value)
+    {
+        if (mOut == null) return;
+        long zigzag = (value << 1) ^ (value >> 63);
+        try
+        {
+            while ((zigzag & ~0x7FL) != 0)
+            {
+                mOut.writeByte((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+                mBytesWritten++;
+            }
+            mOut.writeByte((int) zigzag);
+            mBytesWritten++;
+        }
+        catch (IOException ex)
+        {
+            stopRecording(ex);
+        }
+    }
+
+    private void stopRecording(IOException ex)
+    {
+        logError("Unable to write session recording, recording stopped");
+        logException(ex);
+        close();
+    }
+
+    private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
+    private void logError(String text, Object... args) { LogHelper.logError(getClass(), text, args); }
+    private void logException(Throwable ex) { LogHelper.logException(getClass(), ex); }
+}
@@ -0,0 +1,67 @@
+package international.acme.peppergreeter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Records how long after process start each milestone of a cold start is reached, so that a slower start after a robot reboot shows up as numbers
+ *  in the log rather than as a robot that seems sluggish. Each marker is recorded the first time it is reached; once all of them are in, a one-line
+ *  summary is logged. The trace is process-wide, like the process start it measures from. **/
+public class StartupTrace
+{
+    public static final String PROCESS_START = "process start";
+    public static final String FIRST_FRAME = "first frame";
+    public static final String CONFIG_READY = "config ready";
+    public static final String ROBOT_READY = "robot ready";
+    static final String[] MARKERS = { PROCESS_START, FIRST_FRAME, CONFIG_READY, ROBOT_READY };
+
+    private static final StartupTrace INSTANCE = new StartupTrace(System.nanoTime());
+    public static StartupTrace get() { return INSTANCE; }
+
+    private long mProcessStartNanos;
+    private final List<String> mMarkers = new ArrayList<>();
+    private final List<Long> mElapsedMs = new ArrayList<>();
+
+    StartupTrace(long processStartNanos)
+    {
+        mProcessStartNanos = processStartNanos;
+    }
+
+    /** Record process start, at a time on the System.nanoTime() clock. If it is never set, the time this class was loaded is used. **/
+    public synchronized void markProcessStart(long processStartNanos)
+    {
+        mProcessStartNanos = processStartNanos;
+        record(PROCESS_START, processStartNanos);
+    }
+
+    /** Record that the marker has been reached now. Later calls for a marker already recorded are ignored. **/
+    public void mark(String marker)
+    {
+        record(marker, System.nanoTime());
+    }
+
+    /** Milliseconds from process start to the marker, or -1 if it hasn't been reached. **/
+    public synchronized long getElapsedMs(String marker)
+    {
+        int index = mMarkers.indexOf(marker);
+        return (index >= 0) ? mElapsedMs.get(index) : -1;
+    }
+
+    synchronized void record(String marker, long nanos)
+    {
+        if (mMarkers.contains(marker)) return;
+        long elapsedMs = (nanos - mProcessStartNanos) / 1000000;
+        mMarkers.add(marker);
+        mElapsedMs.add(elapsedMs);
+        logMsg("Startup: %s at %d ms", marker, elapsedMs);
+        if (mMarkers.size() == MARKERS.length) logMsg("%s", getSummary());
+    }
+
+    public synchronized String getSummary()
+    {
+        StringBuilder sb = new StringBuilder("Cold start:");
+        for (String marker : MARKERS) sb.append(String.format(" %s %d ms;", marker, getElapsedMs(marker)));
+        return sb.toString();
+    }
+
+    private void logMsg(String text, Object... args) { LogHelper.logMsg(getClass(), text, args); }
+}
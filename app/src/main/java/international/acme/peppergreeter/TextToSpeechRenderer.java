@@ -0,0 +1,74 @@
+package international.acme.peppergreeter;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** Renders phrases with the tablet's text-to-speech engine. The engine is started on first use and kept for later phrases. **/
+public class TextToSpeechRenderer implements PhraseRenderer
+{
+    static final long INIT_TIMEOUT_MS = 10000;
+    static final long RENDER_TIMEOUT_MS = 30000;
+
+    private final Context mContext;
+    private TextToSpeech mTextToSpeech;
+
+    public TextToSpeechRenderer(Context context)
+    {
+        mContext = context.getApplicationContext();
+    }
+
+    @Override
+    public synchronized void render(String text, File outFile) throws Exception
+    {
+        TextToSpeech tts = getTextToSpeech();
+        CountDownLatch done = new CountDownLatch(1);
+        String[] error = new String[1];
+        String utteranceId = outFile.getName();
+        tts.setOnUtteranceProgressListener(new UtteranceProgressListener()
+        {
+            @Override
+            public void onStart(String id) { }
+
+            @Override
+            public void onDone(String id)
+            {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String id)
+            {
+                error[0] = "Text-to-speech failed to render '" + text + "'";
+                done.countDown();
+            }
+        });
+        if (tts.synthesizeToFile(text, new Bundle(), outFile, utteranceId) != TextToSpeech.SUCCESS) throw new IllegalStateException("Unable to queue '" + text + "' for rendering");
+        if (!done.await(RENDER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) throw new IllegalStateException("Timed out rendering '" + text + "'");
+        if (error[0] != null) throw new IllegalStateException(error[0]);
+    }
+
+    private TextToSpeech getTextToSpeech() throws Exception
+    {
+        if (mTextToSpeech != null) return mTextToSpeech;
+        CountDownLatch initialized = new CountDownLatch(1);
+        int[] status = new int[1];
+        TextToSpeech tts = new TextToSpeech(mContext, result ->
+        {
+            status[0] = result;
+            initialized.countDown();
+        });
+        if (!initialized.await(INIT_TIMEOUT_MS, TimeUnit.MILLISECONDS) || status[0] != TextToSpeech.SUCCESS)
+        {
+            tts.shutdown();
+            throw new IllegalStateException("Unable to start text-to-speech engine");
+        }
+        mTextToSpeech = tts;
+        return tts;
+    }
+}
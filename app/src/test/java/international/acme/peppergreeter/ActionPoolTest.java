@@ -0,0 +1,53 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Tests for keeping robot actions constructed ahead of time. **/
+public class ActionPoolTest
+{
+    AtomicInteger mNextAction = new AtomicInteger();
+    ActionPool<Integer> mPool;
+
+    @Before
+    public void setup()
+    {
+        mPool = new ActionPool<>("Test", 2, mNextAction::incrementAndGet);
+    }
+
+    @Test
+    public void emptyPoolConstructsOnDemand() throws Exception
+    {
+        Assert.assertEquals(1, (int) mPool.acquire());
+        Assert.assertEquals(1, mPool.getMissCount());
+    }
+
+    @Test
+    public void refilledPoolServesWithoutConstructing() throws Exception
+    {
+        mPool.refill();
+        Assert.assertEquals(2, mPool.getCreateCount());
+        mPool.acquire();
+        mPool.acquire();
+        Assert.assertEquals(2, mPool.getHitCount());
+        Assert.assertEquals(2, mPool.getCreateCount());
+    }
+
+    /** Released actions are reused, but never beyond the pool size. **/
+    @Test
+    public void releasedActionsReused() throws Exception
+    {
+        Integer first = mPool.acquire();
+        Integer second = mPool.acquire();
+        Integer third = mPool.acquire();
+        mPool.release(first);
+        mPool.release(second);
+        mPool.release(third);
+        Assert.assertEquals(2, mPool.getIdleCount());
+        Assert.assertEquals(first, mPool.acquire());
+        Assert.assertEquals(3, mPool.getCreateCount());
+    }
+}
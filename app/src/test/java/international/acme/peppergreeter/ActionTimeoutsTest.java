@@ -0,0 +1,47 @@
+package international.acme.peppergreeter;
+
+import com.aldebaran.qi.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/** Tests for robot action deadlines, on virtual time. **/
+public class ActionTimeoutsTest
+{
+    @Test
+    public void speakTimeoutGrowsWithTextLength()
+    {
+        ActionTimeouts timeouts = new ActionTimeouts();
+        Assert.assertEquals(timeouts.SpeakBaseMs, timeouts.getSpeakTimeoutMs(null));
+        Assert.assertEquals(timeouts.SpeakBaseMs, timeouts.getSpeakTimeoutMs(""));
+        Assert.assertEquals(timeouts.SpeakBaseMs + 8 * timeouts.SpeakPerCharMs, timeouts.getSpeakTimeoutMs("Welcome!"));
+        Assert.assertTrue(timeouts.getSpeakTimeoutMs("Here are the special deals we're offering today!") > timeouts.getSpeakTimeoutMs("Welcome!"));
+    }
+
+    /** A robot action whose future never completes fails with a TimeoutException at its deadline, and the future is cancelled. **/
+    @Test
+    @SuppressWarnings("unchecked")
+    public void hungActionTimesOut()
+    {
+        LogHelper.setTestMode(true);
+        ActionTimeouts timeouts = new ActionTimeouts();
+        TestScheduler clock = new TestScheduler();
+        Future<Void> future = mock(Future.class);
+        TestObserver<Void> observer = QiFutures.toCompletable(future).timeout(timeouts.MoveMs, TimeUnit.MILLISECONDS, clock).test();
+
+        clock.advanceTimeBy(timeouts.MoveMs - 1, TimeUnit.MILLISECONDS);
+        observer.assertNotTerminated();
+        clock.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        observer.assertError(TimeoutException.class);
+        verify(future).cancel(true);
+    }
+}
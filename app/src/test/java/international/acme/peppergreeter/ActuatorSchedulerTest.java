@@ -0,0 +1,91 @@
+package international.acme.peppergreeter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Completable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.CompletableSubject;
+
+import international.acme.peppergreeter.ActuatorScheduler.Lane;
+
+/** Tests for serialization of robot actions per actuator lane. **/
+public class ActuatorSchedulerTest
+{
+    ActuatorScheduler mScheduler;
+
+    @Before
+    public void setup()
+    {
+        mScheduler = new ActuatorScheduler();
+    }
+
+    @After
+    public void teardown()
+    {
+        mScheduler.shutdown();
+    }
+
+    /** An action doesn't start until the one ahead of it on the same lane has terminated, even if that one doesn't block its thread. **/
+    @Test
+    public void actionsOnSameLaneSerialized() throws Exception
+    {
+        CompletableSubject first = CompletableSubject.create();
+        AtomicInteger secondStarted = new AtomicInteger();
+        Completable firstDone = mScheduler.schedule(Lane.SPEECH, first).cache();
+        firstDone.subscribe();
+        Completable secondDone = mScheduler.schedule(Lane.SPEECH, Completable.fromAction(secondStarted::incrementAndGet)).cache();
+        secondDone.subscribe();
+
+        Thread.sleep(100);
+        Assert.assertEquals(0, secondStarted.get());
+        Assert.assertEquals(2, mScheduler.getQueueDepth(Lane.SPEECH));
+
+        first.onComplete();
+        Assert.assertTrue(secondDone.blockingAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, secondStarted.get());
+        Assert.assertEquals(0, mScheduler.getQueueDepth(Lane.SPEECH));
+        Assert.assertEquals(2, mScheduler.getMaxQueueDepth(Lane.SPEECH));
+        Assert.assertEquals(2, mScheduler.getCompletedCount(Lane.SPEECH));
+    }
+
+    @Test
+    public void actionsOnDifferentLanesRunConcurrently() throws Exception
+    {
+        CompletableSubject speech = CompletableSubject.create();
+        mScheduler.schedule(Lane.SPEECH, speech).subscribe();
+        Assert.assertTrue(mScheduler.schedule(Lane.GESTURE, Completable.complete()).blockingAwait(5, TimeUnit.SECONDS));
+        speech.onComplete();
+    }
+
+    /** Disposing the running action releases the lane for the next one. **/
+    @Test
+    public void disposingRunningActionReleasesLane() throws Exception
+    {
+        Disposable hung = mScheduler.schedule(Lane.MOTION, Completable.never()).subscribe();
+        Completable next = mScheduler.schedule(Lane.MOTION, Completable.complete()).cache();
+        next.subscribe();
+        hung.dispose();
+        Assert.assertTrue(next.blockingAwait(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void disposingQueuedActionRemovesIt() throws Exception
+    {
+        CompletableSubject first = CompletableSubject.create();
+        AtomicInteger queuedStarted = new AtomicInteger();
+        mScheduler.schedule(Lane.GESTURE, first).subscribe();
+        Disposable queued = mScheduler.schedule(Lane.GESTURE, Completable.fromAction(queuedStarted::incrementAndGet)).subscribe();
+        queued.dispose();
+        Assert.assertEquals(1, mScheduler.getQueueDepth(Lane.GESTURE));
+
+        first.onComplete();
+        Thread.sleep(100);
+        Assert.assertEquals(0, queuedStarted.get());
+    }
+}
@@ -0,0 +1,71 @@
+package international.acme.peppergreeter;
+
+import com.aldebaran.qi.sdk.object.actuation.Animation;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+/** Tests for caching of parsed animations. **/
+public class AnimationCacheTest
+{
+    AnimationCache mAnimationCache;
+    List<Integer> mLoadedResourceIds = new ArrayList<>();
+
+    @Before
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+        mAnimationCache = new AnimationCache(resourceId ->
+        {
+            mLoadedResourceIds.add(resourceId);
+            return mock(Animation.class);
+        });
+    }
+
+    @Test
+    public void animationParsedOnlyOnce() throws Exception
+    {
+        Animation first = mAnimationCache.get(R.raw.greeting_arms);
+        Animation second = mAnimationCache.get(R.raw.greeting_arms);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, mLoadedResourceIds.size());
+        Assert.assertEquals(1, mAnimationCache.getHitCount());
+        Assert.assertEquals(1, mAnimationCache.getMissCount());
+    }
+
+    @Test
+    public void warmUpPreloadsManifest() throws Exception
+    {
+        mAnimationCache.warmUp(AnimationManifest.RESOURCE_IDS).blockingAwait();
+        Assert.assertEquals(AnimationManifest.RESOURCE_IDS.length, mAnimationCache.size());
+        for (int resourceId : AnimationManifest.RESOURCE_IDS) mAnimationCache.get(resourceId);
+        Assert.assertEquals(0, mAnimationCache.getMissCount());
+        Assert.assertEquals(AnimationManifest.RESOURCE_IDS.length, mAnimationCache.getHitCount());
+    }
+
+    @Test
+    public void invalidatedAnimationParsedAgain() throws Exception
+    {
+        mAnimationCache.get(R.raw.point_to_deal1);
+        mAnimationCache.invalidate(R.raw.point_to_deal1);
+        mAnimationCache.get(R.raw.point_to_deal1);
+        Assert.assertEquals(2, mLoadedResourceIds.size());
+    }
+
+    @Test
+    public void cacheSizeBounded() throws Exception
+    {
+        for (int i=0 ; i < AnimationCache.MAX_ENTRIES * 2 ; i++) mAnimationCache.get(i);
+        Assert.assertEquals(AnimationCache.MAX_ENTRIES, mAnimationCache.size());
+
+        // Least recently used entries are evicted first.
+        Assert.assertFalse(mAnimationCache.contains(0));
+        Assert.assertTrue(mAnimationCache.contains(AnimationCache.MAX_ENTRIES * 2 - 1));
+    }
+}
@@ -0,0 +1,103 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/** Tests for timing greetings from how humans are moving. Humans walk at 1 m/s and are sampled every 500 ms. **/
+public class ApproachPredictorTest
+{
+    static final long SAMPLE_INTERVAL_MS = 500;
+
+    HumanRegistry mRegistry;
+    ApproachPredictor mPredictor;
+
+    @Before
+    public void setup()
+    {
+        mRegistry = new HumanRegistry();
+        mPredictor = new ApproachPredictor(3);
+        mPredictor.setLeadTimeMs(2500);
+        mPredictor.setIdealDistance(1.5);
+    }
+
+    /** Walking straight at the robot from 6 m: greeting fires 2.5 s (2.5 m) before they reach 1.5 m, and they arrive when predicted. **/
+    @Test
+    public void approachingHumanGreetedAheadOfArrival()
+    {
+        double firedAtX = -1;
+        for (long time = 0 ; time <= 6000 ; time += SAMPLE_INTERVAL_MS)
+        {
+            double x = 6 - time / 1000.0;
+            HumanRegistry.TrackedHuman track = observe(x, 0, time);
+            if (firedAtX < 0 && mPredictor.shouldGreet(track, time)) firedAtX = x;
+        }
+        Assert.assertEquals(4.0, firedAtX, 0.01);
+        Assert.assertEquals(1, mPredictor.getArrivalCount());
+        Assert.assertEquals(0, mPredictor.getMeanAbsArrivalErrorMs(), 10);
+    }
+
+    /** Walking past 2.5 m away: within the old detection distance, but never close enough to greet. **/
+    @Test
+    public void passerByNotGreeted()
+    {
+        for (long time = 0 ; time <= 10000 ; time += SAMPLE_INTERVAL_MS)
+        {
+            HumanRegistry.TrackedHuman track = observe(-5 + time / 1000.0, 2.5, time);
+            Assert.assertFalse(mPredictor.shouldGreet(track, time));
+        }
+    }
+
+    /** Once they are seen to be walking away, someone close by is no longer greeted. **/
+    @Test
+    public void recedingHumanNotGreeted()
+    {
+        observe(1, 0, 0);
+        for (long time = SAMPLE_INTERVAL_MS ; time <= 4000 ; time += SAMPLE_INTERVAL_MS)
+        {
+            HumanRegistry.TrackedHuman track = observe(1 + time / 1000.0, 0, time);
+            Assert.assertFalse(mPredictor.shouldGreet(track, time));
+        }
+    }
+
+    /** Without enough history to tell how someone is moving, or if they are standing still, fall back to the detection distance. **/
+    @Test
+    public void fallsBackToDetectionDistance()
+    {
+        HumanRegistry.TrackedHuman track = observe(2.5, 0, 0);
+        Assert.assertTrue(mPredictor.shouldGreet(track, 0));
+
+        track = observe(2.5, 0, SAMPLE_INTERVAL_MS);
+        Assert.assertTrue(mPredictor.shouldGreet(track, SAMPLE_INTERVAL_MS));
+
+        HumanRegistry.TrackedHuman distantTrack = observe(-4, 0, 2 * SAMPLE_INTERVAL_MS);
+        Assert.assertFalse(mPredictor.shouldGreet(distantTrack, 2 * SAMPLE_INTERVAL_MS));
+    }
+
+    @Test
+    public void turningAwayCountedAsMiss()
+    {
+        long time = 0;
+        boolean fired = false;
+        for ( ; time <= 2000 ; time += SAMPLE_INTERVAL_MS)
+        {
+            HumanRegistry.TrackedHuman track = observe(6 - time / 1000.0, 0, time);
+            fired |= mPredictor.shouldGreet(track, time);
+        }
+        Assert.assertTrue(fired);
+
+        // Turns around at 4 m and walks back out.
+        for (long start = time ; time <= start + 3000 ; time += SAMPLE_INTERVAL_MS) observe(4 + (time - start + SAMPLE_INTERVAL_MS) / 1000.0, 0, time);
+        Assert.assertEquals(1, mPredictor.getMissCount());
+        Assert.assertEquals(0, mPredictor.getArrivalCount());
+    }
+
+    private HumanRegistry.TrackedHuman observe(double x, double y, long timestampMs)
+    {
+        HumanRegistry.TrackedHuman track = mRegistry.update(Collections.singletonList(new HumanObservation(null, x, y, timestampMs))).get(0);
+        mPredictor.onObservation(track, timestampMs);
+        return track;
+    }
+}
@@ -0,0 +1,84 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.schedulers.TestScheduler;
+
+/** Tests for opening, half-opening and closing the circuit, on virtual time. **/
+public class CircuitBreakerTest
+{
+    static final int FAILURE_THRESHOLD = 3;
+    static final long OPEN_MS = 60000;
+
+    TestScheduler mClock;
+    CircuitBreaker mCircuitBreaker;
+
+    @Before
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+        mClock = new TestScheduler();
+        mCircuitBreaker = new CircuitBreaker("test", FAILURE_THRESHOLD, OPEN_MS, mClock);
+    }
+
+    /** Only consecutive failures count: a success in between starts the count again. **/
+    @Test
+    public void opensAfterConsecutiveFailures()
+    {
+        fail(FAILURE_THRESHOLD - 1);
+        Assert.assertTrue(mCircuitBreaker.allowRequest());
+        mCircuitBreaker.onSuccess();
+        fail(FAILURE_THRESHOLD - 1);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, mCircuitBreaker.getState());
+
+        fail(1);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, mCircuitBreaker.getState());
+        Assert.assertFalse(mCircuitBreaker.allowRequest());
+        Assert.assertEquals(OPEN_MS, mCircuitBreaker.getRetryAfterMs());
+        Assert.assertEquals(1, mCircuitBreaker.getRejectedCount());
+    }
+
+    /** Once open for long enough, one trial request is let through, and its success closes the circuit. **/
+    @Test
+    public void trialRequestSuccessCloses()
+    {
+        fail(FAILURE_THRESHOLD);
+        mClock.advanceTimeBy(OPEN_MS, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(mCircuitBreaker.allowRequest());
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, mCircuitBreaker.getState());
+        Assert.assertFalse(mCircuitBreaker.allowRequest());
+
+        mCircuitBreaker.onSuccess();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, mCircuitBreaker.getState());
+        Assert.assertTrue(mCircuitBreaker.allowRequest());
+    }
+
+    /** A failed trial request reopens the circuit straight away; a cancelled one lets another trial through. **/
+    @Test
+    public void trialRequestFailureReopens()
+    {
+        fail(FAILURE_THRESHOLD);
+        mClock.advanceTimeBy(OPEN_MS, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(mCircuitBreaker.allowRequest());
+        mCircuitBreaker.onCancelled();
+        Assert.assertTrue(mCircuitBreaker.allowRequest());
+        mCircuitBreaker.onFailure();
+
+        Assert.assertEquals(CircuitBreaker.State.OPEN, mCircuitBreaker.getState());
+        Assert.assertEquals(2, mCircuitBreaker.getOpenedCount());
+        Assert.assertFalse(mCircuitBreaker.allowRequest());
+    }
+
+    private void fail(int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            Assert.assertTrue(mCircuitBreaker.allowRequest());
+            mCircuitBreaker.onFailure();
+        }
+    }
+}
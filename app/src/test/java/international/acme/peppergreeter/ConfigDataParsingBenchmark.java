@@ -0,0 +1,68 @@
+package international.acme.peppergreeter;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/** Benchmarks for deserializing the config data payload with Gson, as Retrofit's converter does. "realistic" is what a store sends today;
+ *  "large" is a payload with many greetings and deals, to catch parsing costs that grow with the size of the payload. **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ConfigDataParsingBenchmark
+{
+    @Param({ "realistic", "large" })
+    String mPayloadSize;
+
+    Gson mGson = new Gson();
+    ConfigDataTypeAdapter mStreamingAdapter = new ConfigDataTypeAdapter("0042", Locale.US);
+    String mJson;
+
+    @Setup
+    public void setup()
+    {
+        int greetingCount = mPayloadSize.equals("large") ? 500 : 4;
+        int dealCount = mPayloadSize.equals("large") ? 2000 : ConfigData.MAX_DEAL_COUNT;
+        ConfigData configData = new ConfigData();
+        configData.Greetings = new String[greetingCount];
+        for (int i = 0; i < greetingCount; i++) configData.Greetings[i] = "Hello and welcome, thanks for coming in! Greeting number " + i;
+        configData.SpecialDeals = new String[dealCount];
+        for (int i = 0; i < dealCount; i++) configData.SpecialDeals[i] = "Deal " + i + " - two for the price of one, today only - $" + (i % 20) + ".99";
+        configData.Choreography = ChoreographyDefinition.createDefault();
+        mJson = mGson.toJson(configData);
+    }
+
+    @Setup
+    public void setupLogging()
+    {
+        LogHelper.setMinLevel(LogHelper.LEVEL_NONE);
+    }
+
+    @Benchmark
+    public ConfigData parse()
+    {
+        return mGson.fromJson(mJson, ConfigData.class);
+    }
+
+    @Benchmark
+    public ConfigData parseStreaming() throws Exception
+    {
+        return mStreamingAdapter.fromJson(mJson);
+    }
+}
@@ -0,0 +1,93 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+/** Tests for saving and restoring the local ConfigData snapshot. **/
+public class ConfigDataSnapshotTest
+{
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    ConfigDataSnapshot mSnapshot;
+
+    @Before
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+        mSnapshot = new ConfigDataSnapshot(mTempFolder.getRoot());
+    }
+
+    @Test
+    public void noSnapshotBeforeFirstWrite()
+    {
+        Assert.assertNull(mSnapshot.read());
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws Exception
+    {
+        ConfigData configData = new ConfigData();
+        configData.Greetings = new String[] { FakeDataRepository.GREETING_1, FakeDataRepository.GREETING_2 };
+        configData.SpecialDeals = new String[] { FakeDataRepository.DEAL_1, FakeDataRepository.DEAL_2 };
+        mSnapshot.write(configData);
+
+        ConfigData restored = new ConfigDataSnapshot(mTempFolder.getRoot()).read();
+        Assert.assertArrayEquals(configData.Greetings, restored.Greetings);
+        Assert.assertArrayEquals(configData.SpecialDeals, restored.SpecialDeals);
+    }
+
+    @Test
+    public void choreographyRoundTrip() throws Exception
+    {
+        ConfigData configData = new ConfigData();
+        configData.Choreography = ChoreographyDefinition.createDefault();
+        mSnapshot.write(configData);
+
+        ChoreographyDefinition restored = mSnapshot.read().Choreography;
+        Assert.assertEquals(0.5, restored.Approach[0].X, 0);
+        Assert.assertEquals("greeting_arms", restored.Body[0].Steps[1].Animation);
+        Assert.assertEquals(ChoreographyDefinition.WHEN_HAS_DEALS, restored.Body[1].When);
+    }
+
+    @Test
+    public void missingArraysRestoredAsNull() throws Exception
+    {
+        mSnapshot.write(new ConfigData());
+        ConfigData restored = mSnapshot.read();
+        Assert.assertNotNull(restored);
+        Assert.assertNull(restored.Greetings);
+        Assert.assertNull(restored.SpecialDeals);
+    }
+
+    /** A snapshot written by a different format version must be ignored, not misread. **/
+    @Test
+    public void snapshotWithUnknownFormatIgnored() throws Exception
+    {
+        File file = new File(mTempFolder.getRoot(), ConfigDataSnapshot.FILE_NAME);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file)))
+        {
+            out.writeInt(ConfigDataSnapshot.MAGIC);
+            out.writeInt(ConfigDataSnapshot.FORMAT_VERSION + 1);
+        }
+        Assert.assertNull(mSnapshot.read());
+    }
+
+    @Test
+    public void truncatedSnapshotIgnored() throws Exception
+    {
+        File file = new File(mTempFolder.getRoot(), ConfigDataSnapshot.FILE_NAME);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file)))
+        {
+            out.writeInt(ConfigDataSnapshot.MAGIC);
+        }
+        Assert.assertNull(mSnapshot.read());
+    }
+}
@@ -0,0 +1,85 @@
+package international.acme.peppergreeter;
+
+import com.google.gson.Gson;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/** Tests for reading the config data and filtering the catalog to this robot's store and locale. **/
+public class ConfigDataTypeAdapterTest
+{
+    static final String CATALOG_JSON = "{"
+            + "\"greetings\": [\"Hello!\"],"
+            + "\"special_deals\": [\"Popcorn - $1.00\"],"
+            + "\"catalog\": ["
+            + "  {\"store\": \"0042\", \"locale\": \"en\", \"greetings\": [\"Welcome to store 42!\"], \"special_deals\": [\"Cupcakes - $2.00\"]},"
+            + "  {\"store\": \"0042\", \"locale\": \"fr\", \"greetings\": [\"Bonjour !\"]},"
+            + "  {\"store\": \"0007\", \"greetings\": [\"Welcome to store 7!\"]},"
+            + "  {\"greetings\": [\"Howdy!\"], \"locale\": \"en_US\"},"
+            + "  {\"greetings\": [\"G'day!\"], \"store\": \"*\", \"locale\": \"en-AU\"}"
+            + "]}";
+
+    ConfigDataTypeAdapter mAdapter;
+
+    @Before
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+        mAdapter = new ConfigDataTypeAdapter("0042", Locale.US);
+    }
+
+    @Test
+    public void catalogFilteredToStoreAndLocale() throws Exception
+    {
+        ConfigData configData = mAdapter.fromJson(CATALOG_JSON);
+        Assert.assertEquals(Arrays.asList("Hello!", "Welcome to store 42!", "Howdy!"), Arrays.asList(configData.Greetings));
+        Assert.assertEquals(Arrays.asList("Popcorn - $1.00", "Cupcakes - $2.00"), Arrays.asList(configData.SpecialDeals));
+
+        ConfigDataTypeAdapter.ParseStats stats = mAdapter.getLastStats();
+        Assert.assertEquals(2, stats.EntriesKept);
+        Assert.assertEquals(3, stats.EntriesSkipped);
+        Assert.assertEquals(5, stats.StringsKept);
+    }
+
+    /** The flat format read by the reflective Gson adapter reads the same with the streaming one. **/
+    @Test
+    public void flatFormatMatchesGson() throws Exception
+    {
+        ConfigData original = new ConfigData();
+        original.Greetings = new String[] { "Hello!", "Welcome!" };
+        original.SpecialDeals = new String[] { "Popcorn - $1.00" };
+        original.Choreography = ChoreographyDefinition.createDefault();
+        String json = new Gson().toJson(original);
+
+        ConfigData configData = mAdapter.fromJson(json);
+        Assert.assertArrayEquals(original.Greetings, configData.Greetings);
+        Assert.assertArrayEquals(original.SpecialDeals, configData.SpecialDeals);
+        Assert.assertEquals(original.Choreography.Body.length, configData.Choreography.Body.length);
+        Assert.assertEquals(json, new Gson().toJson(mAdapter.fromJson(mAdapter.toJson(configData))));
+    }
+
+    /** The choreography of the most specific entry that applies is used. **/
+    @Test
+    public void mostSpecificChoreographyUsed() throws Exception
+    {
+        String json = "{\"catalog\": ["
+                + "  {\"store\": \"0042\", \"choreography\": {\"body\": [{\"action\": \"say_greeting\"}]}},"
+                + "  {\"locale\": \"en\", \"choreography\": {\"body\": [{\"action\": \"say_greeting\"}, {\"action\": \"say_deals_intro\"}]}}"
+                + "]}";
+        ConfigData configData = mAdapter.fromJson(json);
+        Assert.assertEquals(1, configData.Choreography.Body.length);
+        Assert.assertNull(configData.Greetings);
+    }
+
+    @Test
+    public void unknownFieldsIgnored() throws Exception
+    {
+        ConfigData configData = mAdapter.fromJson("{\"version\": 3, \"greetings\": [\"Hello!\", null], \"extra\": {\"a\": [1, 2]}}");
+        Assert.assertArrayEquals(new String[] { "Hello!" }, configData.Greetings);
+        Assert.assertNull(configData.SpecialDeals);
+    }
+}
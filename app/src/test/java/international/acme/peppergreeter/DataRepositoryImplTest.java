@@ -0,0 +1,184 @@
+package international.acme.peppergreeter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/** Tests for loading config data through the shared HTTP stack, against a local stand-in for the config server. **/
+public class DataRepositoryImplTest
+{
+    static final String CONFIG_JSON = "{\"greetings\":[\"Hello!\",\"Welcome!\"],\"special_deals\":[\"Popcorn - $1.00\"]}";
+    static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    MockWebServer mServer;
+    ConfigDataSnapshot mSnapshot;
+    DataRepositoryImpl mDataRepository;
+    LinkedBlockingQueue<Object> mResults = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setup() throws Exception
+    {
+        LogHelper.setTestMode(true);
+        mServer = new MockWebServer();
+        mServer.start();
+        ConfigDataApi api = ConfigDataApiProvider.createConfigDataApi(ConfigDataApiProvider.createHttpClient(mTempFolder.newFolder()), mServer.url("/").toString());
+        mSnapshot = new ConfigDataSnapshot(mTempFolder.getRoot());
+        mDataRepository = new DataRepositoryImpl(api, mSnapshot, Schedulers.single());
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void configDataLoadedAndSavedWithValidators() throws Exception
+    {
+        mServer.enqueue(new MockResponse().setBody(CONFIG_JSON).setHeader("ETag", ETAG));
+        mDataRepository.loadDataAsync(mResults::add, mResults::add);
+
+        ConfigData configData = (ConfigData) mResults.poll(5, TimeUnit.SECONDS);
+        Assert.assertEquals(2, configData.Greetings.length);
+        Assert.assertEquals(ETAG, configData.ETag);
+        Assert.assertNull(mServer.takeRequest().getHeader("If-None-Match"));
+        Assert.assertEquals(ETAG, mSnapshot.read().ETag);
+    }
+
+    /** When the snapshot is still current, the server answers 304 and the config is delivered only once (from the snapshot). **/
+    @Test
+    public void notModifiedResponseNotRedelivered() throws Exception
+    {
+        ConfigData saved = new ConfigData();
+        saved.Greetings = new String[] { FakeDataRepository.GREETING_1 };
+        saved.SpecialDeals = new String[] {};
+        saved.ETag = ETAG;
+        mSnapshot.write(saved);
+        mServer.enqueue(new MockResponse().setResponseCode(304));
+        mDataRepository.loadDataAsync(mResults::add, mResults::add);
+
+        ConfigData configData = (ConfigData) mResults.poll(5, TimeUnit.SECONDS);
+        Assert.assertArrayEquals(saved.Greetings, configData.Greetings);
+        RecordedRequest request = mServer.takeRequest(5, TimeUnit.SECONDS);
+        Assert.assertEquals(ETAG, request.getHeader("If-None-Match"));
+        Assert.assertNull(mResults.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void errorReportedIfNoSnapshot() throws Exception
+    {
+        mDataRepository.setRefreshScheduler(new TestScheduler());
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mDataRepository.loadDataAsync(mResults::add, mResults::add);
+        Assert.assertTrue(mResults.poll(5, TimeUnit.SECONDS) instanceof Throwable);
+    }
+
+    /** A failed load is reported once, so the caller can fall back meanwhile, and retried; the config is delivered when a retry succeeds. **/
+    @Test
+    public void failedLoadRetriedAndFreshConfigDelivered() throws Exception
+    {
+        TestScheduler retryScheduler = new TestScheduler();
+        mDataRepository.setRefreshScheduler(retryScheduler);
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.enqueue(new MockResponse().setBody(CONFIG_JSON).setHeader("ETag", ETAG));
+        mDataRepository.loadDataAsync(mResults::add, mResults::add);
+
+        Assert.assertNotNull(mServer.takeRequest(5, TimeUnit.SECONDS));
+        Assert.assertTrue(mResults.poll(5, TimeUnit.SECONDS) instanceof Throwable);
+        awaitRequest(retryScheduler, DataRepositoryImpl.MAX_RETRY_DELAY_MS);
+        awaitRequest(retryScheduler, DataRepositoryImpl.MAX_RETRY_DELAY_MS);
+        Assert.assertEquals(ETAG, ((ConfigData) mResults.poll(5, TimeUnit.SECONDS)).ETag);
+        Assert.assertNull(mResults.poll(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(3, mDataRepository.getAttemptCount());
+        Assert.assertEquals(2, mDataRepository.getFailureCount());
+    }
+
+    /** Each retry waits between half and all of a delay that doubles each time, up to MAX_RETRY_DELAY_MS. **/
+    @Test
+    public void retryDelaysBackOffWithJitter()
+    {
+        for (int retry = 1; retry < DataRepositoryImpl.MAX_LOAD_ATTEMPTS; retry++)
+        {
+            long maxDelayMs = Math.min(DataRepositoryImpl.MAX_RETRY_DELAY_MS, DataRepositoryImpl.INITIAL_RETRY_DELAY_MS << (retry - 1));
+            long delayMs = mDataRepository.nextRetryDelayMs(retry);
+            Assert.assertTrue(delayMs >= maxDelayMs / 2 && delayMs <= maxDelayMs);
+        }
+        Assert.assertTrue(mDataRepository.nextRetryDelayMs(40) <= DataRepositoryImpl.MAX_RETRY_DELAY_MS);
+    }
+
+    /** Once the server has failed CIRCUIT_FAILURE_THRESHOLD times in a row, no request is made until the circuit has been open for CIRCUIT_OPEN_MS. **/
+    @Test
+    public void circuitOpensAfterRepeatedFailures() throws Exception
+    {
+        TestScheduler retryScheduler = new TestScheduler();
+        mDataRepository.setRefreshScheduler(retryScheduler);
+        for (int i=0 ; i < DataRepositoryImpl.CIRCUIT_FAILURE_THRESHOLD ; i++) mServer.enqueue(new MockResponse().setResponseCode(500));
+        mDataRepository.loadDataAsync(mResults::add, mResults::add);
+        Assert.assertNotNull(mServer.takeRequest(5, TimeUnit.SECONDS));
+        for (int i=1 ; i < DataRepositoryImpl.CIRCUIT_FAILURE_THRESHOLD ; i++) awaitRequest(retryScheduler, DataRepositoryImpl.MAX_RETRY_DELAY_MS / 2);
+        for (int i=0 ; i < 50 && mDataRepository.getCircuitBreaker().getState() != CircuitBreaker.State.OPEN ; i++) Thread.sleep(100);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, mDataRepository.getCircuitBreaker().getState());
+
+        retryScheduler.advanceTimeBy(DataRepositoryImpl.CIRCUIT_OPEN_MS - DataRepositoryImpl.MAX_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+        Assert.assertNull(mServer.takeRequest(300, TimeUnit.MILLISECONDS));
+
+        mServer.enqueue(new MockResponse().setBody(CONFIG_JSON).setHeader("ETag", ETAG));
+        awaitRequest(retryScheduler, DataRepositoryImpl.MAX_RETRY_DELAY_MS);
+        Assert.assertTrue(mResults.poll(5, TimeUnit.SECONDS) instanceof Throwable);
+        Assert.assertEquals(ETAG, ((ConfigData) mResults.poll(5, TimeUnit.SECONDS)).ETag);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, mDataRepository.getCircuitBreaker().getState());
+        Assert.assertTrue(mDataRepository.getStaleMs() >= DataRepositoryImpl.CIRCUIT_OPEN_MS);
+    }
+
+    /** Each refresh makes a conditional request; only config data that has changed on the server is emitted. **/
+    @Test
+    public void refreshEmitsOnlyChangedConfigData() throws Exception
+    {
+        TestScheduler refreshScheduler = new TestScheduler();
+        mDataRepository.setRefreshScheduler(refreshScheduler);
+        mServer.enqueue(new MockResponse().setBody(CONFIG_JSON).setHeader("ETag", ETAG));
+        mServer.enqueue(new MockResponse().setResponseCode(304));
+        Disposable updates = mDataRepository.configDataUpdates().subscribe(mResults::add, mResults::add);
+
+        Assert.assertNull(awaitRefreshRequest(refreshScheduler).getHeader("If-None-Match"));
+        Assert.assertEquals(ETAG, ((ConfigData) mResults.poll(5, TimeUnit.SECONDS)).ETag);
+
+        Assert.assertEquals(ETAG, awaitRefreshRequest(refreshScheduler).getHeader("If-None-Match"));
+        Assert.assertNull(mResults.poll(500, TimeUnit.MILLISECONDS));
+        updates.dispose();
+    }
+
+    /** The next refresh timer is scheduled from the IO thread once the previous refresh completes, so keep advancing virtual time until the request arrives. **/
+    private RecordedRequest awaitRefreshRequest(TestScheduler refreshScheduler) throws Exception
+    {
+        return awaitRequest(refreshScheduler, 2 * DataRepositoryImpl.REFRESH_INTERVAL_MS);
+    }
+
+    private RecordedRequest awaitRequest(TestScheduler scheduler, long stepMs) throws Exception
+    {
+        for (int i=0 ; i < 50 ; i++)
+        {
+            scheduler.advanceTimeBy(stepMs, TimeUnit.MILLISECONDS);
+            RecordedRequest request = mServer.takeRequest(100, TimeUnit.MILLISECONDS);
+            if (request != null) return request;
+        }
+        throw new AssertionError("No request received");
+    }
+}
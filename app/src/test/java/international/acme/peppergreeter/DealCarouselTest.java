@@ -0,0 +1,34 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for paging deals through the slots on screen. **/
+public class DealCarouselTest
+{
+    @Test
+    public void pagesWrapAround()
+    {
+        DealCarousel carousel = new DealCarousel(new String[] { "1", "2", "3", "4", "5", "6", "7", "8" }, 6);
+        Assert.assertEquals(2, carousel.getPageCount());
+        Assert.assertArrayEquals(new String[] { "1", "2", "3", "4", "5", "6" }, carousel.getVisibleDeals());
+
+        Assert.assertTrue(carousel.nextPage());
+        Assert.assertArrayEquals(new String[] { "7", "8" }, carousel.getVisibleDeals());
+        Assert.assertEquals("8", carousel.getVisibleDeal(1));
+        Assert.assertNull(carousel.getVisibleDeal(2));
+
+        Assert.assertTrue(carousel.nextPage());
+        Assert.assertEquals(0, carousel.getPage());
+    }
+
+    @Test
+    public void singlePageDoesNotRotate()
+    {
+        DealCarousel carousel = new DealCarousel(new String[] { "1", "2" }, 6);
+        Assert.assertFalse(carousel.nextPage());
+        Assert.assertArrayEquals(new String[] { "1", "2" }, carousel.getVisibleDeals());
+        Assert.assertFalse(new DealCarousel(new String[0], 6).nextPage());
+        Assert.assertNull(new DealCarousel(new String[0], 6).getVisibleDeal(0));
+    }
+}
@@ -4,7 +4,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import io.reactivex.Observable;
 import io.reactivex.functions.Consumer;
+import io.reactivex.subjects.PublishSubject;
 
 /** For use in testing.  **/
 public class FakeDataRepository implements DataRepository
@@ -32,6 +34,7 @@ public class FakeDataRepository implements DataRepository
 
     Consumer<ConfigData> mOnConfigDataLoaded;
     Consumer<Throwable> mOnError;
+    PublishSubject<ConfigData> mConfigDataUpdates = PublishSubject.create();
 
     @Override
     public void loadDataAsync(Consumer<ConfigData> onConfigDataLoaded, Consumer<Throwable> onError)
@@ -40,6 +43,12 @@ public class FakeDataRepository implements DataRepository
         mOnError = onError;
     }
 
+    @Override
+    public Observable<ConfigData> configDataUpdates()
+    {
+        return mConfigDataUpdates;
+    }
+
     public void simulateDataLoadCompleted() throws Exception
     {
         ConfigData configData = new ConfigData();
@@ -52,4 +61,12 @@ public class FakeDataRepository implements DataRepository
     {
         mOnError.accept(new IOException("Simulated error"));
     }
+
+    public void simulateConfigDataUpdate(String[] greetings, String[] specialDeals)
+    {
+        ConfigData configData = new ConfigData();
+        configData.Greetings = greetings;
+        configData.SpecialDeals = specialDeals;
+        mConfigDataUpdates.onNext(configData);
+    }
 }
@@ -3,47 +3,84 @@ package international.acme.peppergreeter;
 import com.aldebaran.qi.sdk.object.geometry.Vector3;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
 
 /** For use in testing. **/
 public class FakeRobotController implements RobotController
 {
-    Runnable mOnHumanDetected;
-    List<String> SpokenPhrases = new ArrayList<>();
-    List<Vector3> MovementsDone = new ArrayList<>();
-    List<Integer> AnimationsPerformed = new ArrayList<>();
+    PublishProcessor<List<HumanObservation>> mHumansAround = PublishProcessor.create();
+    List<String> SpokenPhrases = Collections.synchronizedList(new ArrayList<>());
+    List<Vector3> MovementsDone = Collections.synchronizedList(new ArrayList<>());
+    List<Integer> AnimationsPerformed = Collections.synchronizedList(new ArrayList<>());
+
+    int PrewarmCount;
+    List<String> PreparedPhrases;
+    volatile long LastMotionStartNanos;
+
+    /** How long each phrase takes to say. Actions are only recorded once subscribed, so phrases skipped by cutting a greeting short aren't recorded. **/
+    long SpeakDurationMs;
 
     @Override
     public Completable speak(String text)
     {
-        SpokenPhrases.add(text);
-        return Completable.complete();
+        Completable speech = Completable.fromAction(() -> SpokenPhrases.add(text));
+        return (SpeakDurationMs > 0) ? speech.andThen(Completable.timer(SpeakDurationMs, TimeUnit.MILLISECONDS)) : speech;
     }
 
     @Override
     public Completable moveWithVector(double x, double y, double z)
     {
-        MovementsDone.add(new Vector3(x, y, z));
-        return Completable.complete();
+        return Completable.fromAction(() ->
+        {
+            LastMotionStartNanos = System.nanoTime();
+            MovementsDone.add(new Vector3(x, y, z));
+        });
     }
 
     @Override
     public Completable animate(int animationResourceId)
     {
-        AnimationsPerformed.add(animationResourceId);
-        return Completable.complete();
+        return Completable.fromAction(() -> AnimationsPerformed.add(animationResourceId));
     }
 
     @Override
-    public void watchForHumans(Runnable onHumanDetected)
+    public Completable prewarm()
     {
-        mOnHumanDetected = onHumanDetected;
+        return Completable.fromAction(() -> PrewarmCount++);
     }
 
+    @Override
+    public Completable preparePhrases(String configVersion, List<String> phrases)
+    {
+        return Completable.fromAction(() -> PreparedPhrases = phrases);
+    }
+
+    @Override
+    public long getLastMotionStartNanos()
+    {
+        return LastMotionStartNanos;
+    }
+
+    @Override
+    public Flowable<List<HumanObservation>> humansAround()
+    {
+        return mHumansAround;
+    }
+
+    /** Simulate a single human detected 1 meter in front of the robot. **/
     public void simulateHumanDetection()
     {
-        mOnHumanDetected.run();
+        simulateHumansAround(Collections.singletonList(new HumanObservation(null, 1, 0, System.currentTimeMillis())));
+    }
+
+    public void simulateHumansAround(List<HumanObservation> humans)
+    {
+        mHumansAround.onNext(humans);
     }
 }
@@ -0,0 +1,171 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.schedulers.TestScheduler;
+
+/** Tests for queueing and grouping of greeting triggers, on virtual time. **/
+public class GreetingAdmissionControllerTest
+{
+    TestScheduler mClock;
+    GreetingAdmissionController mAdmissionController;
+    List<Integer> mGreetedGroups = new ArrayList<>();
+    List<Boolean> mGreetedPriorities = new ArrayList<>();
+
+    @Before
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+        mClock = new TestScheduler();
+        mAdmissionController = new GreetingAdmissionController((groupSize, priority) ->
+        {
+            mGreetedGroups.add(groupSize);
+            mGreetedPriorities.add(priority);
+        }, mClock);
+    }
+
+    @Test
+    public void triggerWhileIdleStartsGreetingImmediately()
+    {
+        mAdmissionController.onTrigger(1);
+        Assert.assertEquals(1, mGreetedGroups.size());
+        Assert.assertTrue(mAdmissionController.isGreetingInProgress());
+    }
+
+    /** People arriving within the group window of the first one are greeted together, not one after another. **/
+    @Test
+    public void triggersWithinGroupWindowMerged()
+    {
+        mAdmissionController.onTrigger(1);
+        advance(GreetingAdmissionController.DEFAULT_GROUP_WINDOW_MS / 2);
+        mAdmissionController.onTrigger(3);
+        mAdmissionController.onGreetingCompleted();
+        Assert.assertEquals(1, mGreetedGroups.size());
+        Assert.assertEquals(1, mAdmissionController.getMergedCount());
+        Assert.assertFalse(mAdmissionController.isGreetingInProgress());
+    }
+
+    /** People arriving mid-greeting are greeted once it completes, instead of being ignored. **/
+    @Test
+    public void triggerDuringGreetingQueued()
+    {
+        mAdmissionController.onTrigger(1);
+        advance(GreetingAdmissionController.DEFAULT_GROUP_WINDOW_MS * 2);
+        mAdmissionController.onTrigger(2);
+        Assert.assertEquals(1, mGreetedGroups.size());
+        Assert.assertEquals(1, mAdmissionController.getQueueDepth());
+
+        advance(1000);
+        mAdmissionController.onGreetingCompleted();
+        Assert.assertEquals(2, mGreetedGroups.size());
+        Assert.assertEquals(2, (int) mGreetedGroups.get(1));
+        Assert.assertEquals(500, mAdmissionController.getAverageQueueWaitMs());
+    }
+
+    /** A priority trigger is never merged into the current group, and is greeted ahead of groups already waiting. **/
+    @Test
+    public void priorityTriggerJumpsQueue()
+    {
+        mAdmissionController.onTrigger(1);
+        advance(GreetingAdmissionController.DEFAULT_GROUP_WINDOW_MS * 2);
+        mAdmissionController.onTrigger(2);
+        mAdmissionController.onPriorityTrigger(5);
+        Assert.assertEquals(0, mAdmissionController.getMergedCount());
+        Assert.assertEquals(2, mAdmissionController.getQueueDepth());
+
+        mAdmissionController.onGreetingCompleted();
+        Assert.assertEquals(5, (int) mGreetedGroups.get(1));
+        Assert.assertTrue(mGreetedPriorities.get(1));
+        mAdmissionController.onGreetingCompleted();
+        Assert.assertEquals(2, (int) mGreetedGroups.get(2));
+        Assert.assertFalse(mGreetedPriorities.get(2));
+    }
+
+    /** A priority group that expires while waiting is dropped along with its priority: the next group greeted is an ordinary one. **/
+    @Test
+    public void expiredPriorityTriggerNotCarriedOver()
+    {
+        mAdmissionController.onTrigger(1);
+        mAdmissionController.onPriorityTrigger(1);
+        advance(GreetingAdmissionController.DEFAULT_TRIGGER_EXPIRY_MS * 2);
+        mAdmissionController.onGreetingCompleted();
+        Assert.assertEquals(1, mAdmissionController.getDroppedCount());
+
+        mAdmissionController.onTrigger(2);
+        Assert.assertEquals(2, mGreetedGroups.size());
+        Assert.assertFalse(mGreetedPriorities.get(1));
+    }
+
+    @Test
+    public void expiredTriggerDropped()
+    {
+        mAdmissionController.onTrigger(1);
+        advance(GreetingAdmissionController.DEFAULT_GROUP_WINDOW_MS * 2);
+        mAdmissionController.onTrigger(1);
+        advance(GreetingAdmissionController.DEFAULT_TRIGGER_EXPIRY_MS * 2);
+        mAdmissionController.onGreetingCompleted();
+        Assert.assertEquals(1, mGreetedGroups.size());
+        Assert.assertEquals(1, mAdmissionController.getDroppedCount());
+        Assert.assertEquals(0.5, mAdmissionController.getDropRate(), 0.001);
+    }
+
+    @Test
+    public void queueDepthBounded()
+    {
+        mAdmissionController.onTrigger(1);
+        for (int i=0 ; i < GreetingAdmissionController.DEFAULT_MAX_QUEUE_DEPTH + 2 ; i++)
+        {
+            advance(GreetingAdmissionController.DEFAULT_GROUP_WINDOW_MS * 2);
+            mAdmissionController.onTrigger(1);
+        }
+        Assert.assertEquals(GreetingAdmissionController.DEFAULT_MAX_QUEUE_DEPTH, mAdmissionController.getQueueDepth());
+        Assert.assertEquals(2, mAdmissionController.getDroppedCount());
+    }
+
+    /** The people in dropped groups, whether pushed out of a full queue or expired, are reported so they can be greeted later. **/
+    @Test
+    public void droppedGroupTargetsReported()
+    {
+        List<Set<Long>> droppedTargets = new ArrayList<>();
+        mAdmissionController.setGroupDroppedListener(droppedTargets::add);
+        mAdmissionController.setMaxQueueDepth(1);
+        mAdmissionController.onTrigger(1, Collections.singletonList(1L));
+        advance(GreetingAdmissionController.DEFAULT_GROUP_WINDOW_MS * 2);
+        mAdmissionController.onTrigger(1, Collections.singletonList(2L));
+        advance(GreetingAdmissionController.DEFAULT_GROUP_WINDOW_MS * 2);
+        mAdmissionController.onTrigger(2, Arrays.asList(3L, 4L));
+        Assert.assertEquals(Collections.singletonList(Collections.singleton(2L)), droppedTargets);
+
+        advance(GreetingAdmissionController.DEFAULT_TRIGGER_EXPIRY_MS * 2);
+        mAdmissionController.onGreetingCompleted();
+        Assert.assertEquals(new HashSet<>(Arrays.asList(3L, 4L)), droppedTargets.get(1));
+        Assert.assertEquals(2, mAdmissionController.getDroppedCount());
+    }
+
+    @Test
+    public void greetingsPerHourReported()
+    {
+        for (int i=0 ; i < 10 ; i++)
+        {
+            mAdmissionController.onTrigger(1);
+            advance(TimeUnit.MINUTES.toMillis(3));
+            mAdmissionController.onGreetingCompleted();
+        }
+        Assert.assertEquals(20.0, mAdmissionController.getGreetingsPerHour(), 0.001);
+    }
+
+    private void advance(long ms)
+    {
+        mClock.advanceTimeBy(ms, TimeUnit.MILLISECONDS);
+    }
+}
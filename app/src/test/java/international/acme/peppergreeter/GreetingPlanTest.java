@@ -0,0 +1,138 @@
+package international.acme.peppergreeter;
+
+import com.aldebaran.qi.sdk.object.geometry.Vector3;
+import com.google.gson.Gson;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.reactivex.Completable;
+
+/** Tests for compiling greeting choreographies and running the resulting plans. **/
+public class GreetingPlanTest
+{
+    static final String DEALS_INTRO = "Here are today's deals";
+
+    FakeRobotController mFakeRobotController;
+    List<Integer> mHighlightedDeals = new ArrayList<>();
+    int mGroupSize = 1;
+    String[] mVisibleDeals = {};
+
+    GreetingPlan.Environment mEnvironment = new GreetingPlan.Environment()
+    {
+        @Override
+        public String nextGreeting() { return FakeDataRepository.GREETING_1; }
+
+        @Override
+        public int getGroupSize() { return mGroupSize; }
+
+        @Override
+        public void onAnnouncingDeals() { }
+
+        @Override
+        public String getVisibleDeal(int slot) { return (slot < mVisibleDeals.length) ? mVisibleDeals[slot] : null; }
+
+        @Override
+        public Completable highlightDeal(int dealIndex) { return Completable.fromAction(() -> mHighlightedDeals.add(dealIndex)); }
+    };
+
+    @Before
+    public void setup()
+    {
+        mFakeRobotController = new FakeRobotController();
+    }
+
+    @Test
+    public void defaultChoreographyGreetsAndAnnouncesDeals()
+    {
+        run(compile(ChoreographyDefinition.createDefault(), FakeDataRepository.DEAL_1, FakeDataRepository.DEAL_2));
+        Assert.assertEquals(Arrays.asList(FakeDataRepository.GREETING_1, DEALS_INTRO, FakeDataRepository.DEAL_1, FakeDataRepository.DEAL_2), mFakeRobotController.SpokenPhrases);
+        Assert.assertEquals(Arrays.asList(R.raw.greeting_arms, R.raw.point_to_deal1, R.raw.point_to_deal2), mFakeRobotController.AnimationsPerformed);
+        Assert.assertEquals(Arrays.asList(new Vector3(0.5, 0, 0), new Vector3(-0.5, 0, 0)), mFakeRobotController.MovementsDone);
+        Assert.assertEquals(Arrays.asList(0, 1), mHighlightedDeals);
+    }
+
+    /** Without deals, the deals intro is left out by its guard. **/
+    @Test
+    public void dealsIntroSkippedWithoutDeals()
+    {
+        run(compile(ChoreographyDefinition.createDefault()));
+        Assert.assertEquals(Arrays.asList(FakeDataRepository.GREETING_1), mFakeRobotController.SpokenPhrases);
+    }
+
+    /** The same plan is run for every greeting, picking up the group size each time it runs. **/
+    @Test
+    public void choreographyFromConfigDataReusedAcrossGreetings()
+    {
+        String json = "{ \"greetings\": [\"Hi\"], \"special_deals\": [], \"choreography\": {"
+                + " \"approach\": [ { \"action\": \"move\", \"x\": 0.3 } ],"
+                + " \"body\": [ { \"action\": \"say\", \"text\": \"Hello everyone!\", \"when\": \"group\" },"
+                + "             { \"action\": \"say_greeting\", \"when\": \"single\" },"
+                + "             { \"action\": \"animate\", \"animation\": \"elephant\" } ],"
+                + " \"finish\": [ { \"action\": \"move\", \"x\": -0.3 } ] } }";
+        ConfigData configData = new Gson().fromJson(json, ConfigData.class);
+        GreetingPlan plan = GreetingPlan.compile(configData.Choreography, configData, DEALS_INTRO, mFakeRobotController, mEnvironment);
+
+        run(plan);
+        mGroupSize = 3;
+        run(plan);
+        Assert.assertEquals(Arrays.asList(FakeDataRepository.GREETING_1, "Hello everyone!"), mFakeRobotController.SpokenPhrases);
+        Assert.assertEquals(Arrays.asList(R.raw.elephant, R.raw.elephant), mFakeRobotController.AnimationsPerformed);
+        Assert.assertEquals(4, mFakeRobotController.MovementsDone.size());
+    }
+
+    /** Only the deals on screen are announced, and slots left empty on the last page are skipped. **/
+    @Test
+    public void visibleDealsAnnounced()
+    {
+        GreetingPlan plan = compile(ChoreographyDefinition.createDefault(), "1", "2", "3", "4", "5", "6", "7", "8");
+        mVisibleDeals = new String[] { "7", "8" };
+        run(plan);
+        Assert.assertEquals(Arrays.asList(FakeDataRepository.GREETING_1, DEALS_INTRO, "7", "8"), mFakeRobotController.SpokenPhrases);
+        Assert.assertEquals(Arrays.asList(0, 1), mHighlightedDeals);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void movesMustReturnToStart()
+    {
+        ChoreographyDefinition definition = ChoreographyDefinition.createDefault();
+        definition.Finish = null;
+        compile(definition);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void movesNotAllowedInBody()
+    {
+        ChoreographyDefinition definition = ChoreographyDefinition.createDefault();
+        definition.Body = definition.Approach;
+        definition.Approach = null;
+        compile(definition);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownAnimationRejected()
+    {
+        ChoreographyDefinition definition = ChoreographyDefinition.createDefault();
+        definition.Body[0].Steps[1].Animation = "moonwalk";
+        compile(definition);
+    }
+
+    private GreetingPlan compile(ChoreographyDefinition definition, String... deals)
+    {
+        ConfigData configData = new ConfigData();
+        configData.Greetings = new String[] { FakeDataRepository.GREETING_1 };
+        configData.SpecialDeals = deals;
+        mVisibleDeals = deals;
+        return GreetingPlan.compile(definition, configData, DEALS_INTRO, mFakeRobotController, mEnvironment);
+    }
+
+    private void run(GreetingPlan plan)
+    {
+        plan.getApproach().andThen(plan.getBody()).andThen(plan.getFinish()).blockingAwait();
+    }
+}
@@ -0,0 +1,125 @@
+package international.acme.peppergreeter;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Benchmarks for building and running the greeting sequence against the fake robot and view, so that only the app's own overhead is measured.
+ *  Run with ./gradlew :app:benchmark **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class GreetingSequenceBenchmark
+{
+    FakeRobotController mFakeRobotController;
+    FakeMainView mFakeMainView;
+    FakeDataRepository mFakeDataRepository;
+    ConfigData mConfigData;
+    ChoreographyDefinition mChoreography;
+    GreetingPlan mPlan;
+    MainActivityPresenterImpl mPresenter;
+    Semaphore mOnGreetingCompleted = new Semaphore(0);
+
+    GreetingPlan.Environment mEnvironment = new GreetingPlan.Environment()
+    {
+        @Override
+        public String nextGreeting() { return FakeDataRepository.GREETING_1; }
+
+        @Override
+        public int getGroupSize() { return 1; }
+
+        @Override
+        public void onAnnouncingDeals() { }
+
+        @Override
+        public String getVisibleDeal(int slot) { return (slot < mConfigData.SpecialDeals.length) ? mConfigData.SpecialDeals[slot] : null; }
+
+        @Override
+        public Completable highlightDeal(int dealIndex) { return Completable.complete(); }
+    };
+
+    @Setup
+    public void setup() throws Exception
+    {
+        // Logging is measured separately in LogHelperBenchmark.
+        LogHelper.setTestMode(true);
+        LogHelper.setMinLevel(LogHelper.LEVEL_NONE);
+
+        mFakeRobotController = new FakeRobotController();
+        mFakeMainView = new FakeMainView();
+        mFakeDataRepository = new FakeDataRepository();
+        mConfigData = new ConfigData();
+        mConfigData.Greetings = mFakeDataRepository.getGreetings().toArray(new String[0]);
+        mConfigData.SpecialDeals = mFakeDataRepository.getDeals().toArray(new String[0]);
+        mChoreography = ChoreographyDefinition.createDefault();
+        mPlan = GreetingPlan.compile(mChoreography, mConfigData, "Here are the special deals", mFakeRobotController, mEnvironment);
+
+        Context mockContext = mock(Context.class);
+        when(mockContext.getString(R.string.here_are_todays_special_deals)).thenReturn("Here are the special deals");
+        mPresenter = new MainActivityPresenterImpl(mockContext, mFakeRobotController, mFakeDataRepository, Schedulers.single(), null);
+        mPresenter.setOnGreetingCompleted(mOnGreetingCompleted);
+        mPresenter.attach(mFakeMainView);
+        mFakeDataRepository.simulateDataLoadCompleted();
+    }
+
+    /** The fake robot records every action; don't let that grow across iterations. **/
+    @Setup(Level.Iteration)
+    public void clearRecordedActions()
+    {
+        mFakeRobotController.SpokenPhrases.clear();
+        mFakeRobotController.MovementsDone.clear();
+        mFakeRobotController.AnimationsPerformed.clear();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mPresenter.detach();
+        LogHelper.setMinLevel(LogHelper.LEVEL_INFO);
+    }
+
+    /** Compiling the choreography, as done whenever config data is applied. **/
+    @Benchmark
+    public GreetingPlan compilePlan()
+    {
+        return GreetingPlan.compile(mChoreography, mConfigData, "Here are the special deals", mFakeRobotController, mEnvironment);
+    }
+
+    /** Running a compiled plan from start to finish, with robot actions that complete immediately. **/
+    @Benchmark
+    public void runPlan()
+    {
+        mPlan.getApproach().andThen(mPlan.getBody()).andThen(mPlan.getFinish()).blockingAwait();
+    }
+
+    /** A whole greeting through the presenter: admission, sequencing, thread hand-offs and bookkeeping. **/
+    @Benchmark
+    public void presenterGreeting() throws Exception
+    {
+        mPresenter.startGreeting();
+        if (!mOnGreetingCompleted.tryAcquire(5, TimeUnit.SECONDS)) throw new IllegalStateException("Greeting did not complete");
+    }
+}
@@ -0,0 +1,79 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import international.acme.peppergreeter.GreetingStateMachine.State;
+
+/** Tests for the greeting lifecycle's state transitions. **/
+public class GreetingStateMachineTest
+{
+    GreetingStateMachine mStateMachine;
+
+    @Before
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+        mStateMachine = new GreetingStateMachine();
+    }
+
+    @Test
+    public void fullLifecycle()
+    {
+        Assert.assertTrue(mStateMachine.isIdle());
+        Assert.assertTrue(mStateMachine.transition(State.APPROACHING, State.IDLE));
+        Assert.assertTrue(mStateMachine.transition(State.GREETING, State.APPROACHING));
+        Assert.assertTrue(mStateMachine.transition(State.ANNOUNCING, State.GREETING));
+        Assert.assertTrue(mStateMachine.transition(State.RETURNING, State.GREETING, State.ANNOUNCING));
+        Assert.assertTrue(mStateMachine.transition(State.IDLE, State.RETURNING));
+        Assert.assertTrue(mStateMachine.isIdle());
+        Assert.assertEquals(0, mStateMachine.getRejectedTransitionCount());
+    }
+
+    @Test
+    public void transitionFromUnexpectedStateRejected()
+    {
+        mStateMachine.transition(State.APPROACHING, State.IDLE);
+        Assert.assertFalse(mStateMachine.transition(State.APPROACHING, State.IDLE));
+        Assert.assertFalse(mStateMachine.transition(State.IDLE, State.RETURNING));
+        Assert.assertEquals(State.APPROACHING, mStateMachine.getState());
+        Assert.assertEquals(2, mStateMachine.getRejectedTransitionCount());
+    }
+
+    /** Of many threads trying to start a greeting at once, exactly one succeeds. **/
+    @Test
+    public void concurrentStartsAdmitOne() throws Exception
+    {
+        LogHelper.setMinLevel(LogHelper.LEVEL_NONE);
+        final int threadCount = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threadCount);
+        AtomicInteger started = new AtomicInteger();
+        for (int i = 0; i < threadCount; i++)
+        {
+            new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                    if (mStateMachine.transition(State.APPROACHING, State.IDLE)) started.incrementAndGet();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        LogHelper.setMinLevel(LogHelper.LEVEL_INFO);
+
+        Assert.assertEquals(1, started.get());
+        Assert.assertEquals(threadCount - 1, mStateMachine.getRejectedTransitionCount());
+    }
+}
@@ -0,0 +1,123 @@
+package international.acme.peppergreeter;
+
+import com.aldebaran.qi.sdk.object.interaction.Human;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+/** Tests for following humans across humans-around events. **/
+public class HumanRegistryTest
+{
+    HumanRegistry mRegistry;
+
+    @Before
+    public void setup()
+    {
+        mRegistry = new HumanRegistry();
+    }
+
+    @Test
+    public void sameHumanFollowedAcrossEvents()
+    {
+        long firstId = update(observation(2.0, 0.0, 0)).get(0).Id;
+        long secondId = update(observation(1.8, 0.1, 500)).get(0).Id;
+        Assert.assertEquals(firstId, secondId);
+        Assert.assertEquals(1, mRegistry.size());
+    }
+
+    /** Two people standing side by side in the same event are never merged into one track. **/
+    @Test
+    public void humansInSameEventGetSeparateTracks()
+    {
+        List<HumanRegistry.TrackedHuman> tracks = update(observation(1.0, 0.0, 0), observation(1.0, 0.3, 0));
+        Assert.assertNotEquals(tracks.get(0).Id, tracks.get(1).Id);
+    }
+
+    @Test
+    public void distantObservationStartsNewTrack()
+    {
+        long firstId = update(observation(2.0, 0.0, 0)).get(0).Id;
+        long secondId = update(observation(-2.0, 1.0, 500)).get(0).Id;
+        Assert.assertNotEquals(firstId, secondId);
+    }
+
+    @Test
+    public void staleTrackForgotten()
+    {
+        long firstId = update(observation(2.0, 0.0, 0)).get(0).Id;
+        long secondId = update(observation(2.0, 0.0, HumanRegistry.TRACK_TIMEOUT_MS + 1)).get(0).Id;
+        Assert.assertNotEquals(firstId, secondId);
+        Assert.assertEquals(1, mRegistry.size());
+    }
+
+    @Test
+    public void greetingCooldownExpires()
+    {
+        mRegistry.setGreetingCooldownMs(5000);
+        HumanRegistry.TrackedHuman track = update(observation(1.0, 0.0, 0)).get(0);
+        mRegistry.markGreeted(track, 0);
+        Assert.assertTrue(mRegistry.isCoolingDown(track, 4999));
+        Assert.assertFalse(mRegistry.isCoolingDown(track, 5000));
+    }
+
+    /** Someone greeted who then stands still produces no humans-around events; when the next shopper arrives well after TRACK_TIMEOUT_MS,
+     *  the lingerer is still recognised (by SDK human, or by position if the SDK doesn't give one) and still cooling down. **/
+    @Test
+    public void greetedHumanRecognisedAfterLingering()
+    {
+        Human lingerer = mock(Human.class);
+        HumanRegistry.TrackedHuman track = mRegistry.update(Collections.singletonList(new HumanObservation(lingerer, 1.0, 0.0, 0))).get(0);
+        mRegistry.markGreeted(track, 0);
+        HumanRegistry.TrackedHuman other = update(observation(-1.0, 0.5, 0)).get(0);
+        mRegistry.markGreeted(other, 0);
+
+        long laterMs = 6 * HumanRegistry.TRACK_TIMEOUT_MS;
+        List<HumanRegistry.TrackedHuman> tracks = mRegistry.update(Arrays.asList(new HumanObservation(lingerer, 1.1, 0.0, laterMs), observation(-1.0, 0.5, laterMs), observation(3.0, 2.0, laterMs)));
+        Assert.assertEquals(track.Id, tracks.get(0).Id);
+        Assert.assertEquals(other.Id, tracks.get(1).Id);
+        Assert.assertTrue(mRegistry.isCoolingDown(tracks.get(0), laterMs));
+        Assert.assertTrue(mRegistry.isCoolingDown(tracks.get(1), laterMs));
+        Assert.assertFalse(mRegistry.isCoolingDown(tracks.get(2), laterMs));
+    }
+
+    /** Once the cooldown is over, a track not seen for TRACK_TIMEOUT_MS is forgotten as usual. **/
+    @Test
+    public void greetedTrackForgottenAfterCooldown()
+    {
+        mRegistry.setGreetingCooldownMs(HumanRegistry.TRACK_TIMEOUT_MS * 2);
+        HumanRegistry.TrackedHuman track = update(observation(1.0, 0.0, 0)).get(0);
+        mRegistry.markGreeted(track, 0);
+        update(observation(-2.0, 0.0, HumanRegistry.TRACK_TIMEOUT_MS * 2));
+        Assert.assertEquals(1, mRegistry.size());
+    }
+
+    /** A full shift of passers-by, a few at a time: the number of tracks held never exceeds the maximum. **/
+    @Test
+    public void memoryBoundedOverLongShift()
+    {
+        long time = 0;
+        for (int i=0 ; i < 20000 ; i++)
+        {
+            time += 2000;
+            update(observation((i % 7) - 3, (i % 5) - 2, time), observation((i % 11) - 5, 3, time));
+            Assert.assertTrue(mRegistry.size() <= HumanRegistry.MAX_TRACKS);
+        }
+    }
+
+    private List<HumanRegistry.TrackedHuman> update(HumanObservation... humans)
+    {
+        return mRegistry.update(Arrays.asList(humans));
+    }
+
+    private static HumanObservation observation(double x, double y, long timestampMs)
+    {
+        return new HumanObservation(null, x, y, timestampMs);
+    }
+}
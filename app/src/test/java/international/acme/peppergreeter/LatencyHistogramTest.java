@@ -0,0 +1,45 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests for the latency histogram's bucketing and percentiles. **/
+public class LatencyHistogramTest
+{
+    /** Every value falls in a bucket whose upper bound is within the histogram's precision of it. **/
+    @Test
+    public void bucketsWithinPrecision()
+    {
+        for (long micros = 1; micros < 4000000000L; micros = micros * 3 / 2 + 1)
+        {
+            int index = LatencyHistogram.bucketIndex(micros);
+            long upperBound = LatencyHistogram.bucketUpperBound(index);
+            Assert.assertTrue(upperBound >= micros);
+            Assert.assertTrue(upperBound - micros <= micros / LatencyHistogram.SUB_BUCKET_COUNT);
+            if (index > 0) Assert.assertTrue(LatencyHistogram.bucketUpperBound(index - 1) < micros);
+        }
+    }
+
+    @Test
+    public void percentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram("Test");
+        for (int i = 1; i <= 100; i++) histogram.recordMicros(i * 1000);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(50.5, snapshot.getMeanMs(), 0.001);
+        Assert.assertEquals(50, snapshot.getPercentileMs(50), 50 / 16.0);
+        Assert.assertEquals(99, snapshot.getPercentileMs(99), 99 / 16.0);
+        Assert.assertEquals(100, snapshot.getPercentileMs(100), 0.001);
+        Assert.assertEquals(100, snapshot.getMaxMs(), 0.001);
+    }
+
+    @Test
+    public void emptyHistogram()
+    {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram("Test").snapshot();
+        Assert.assertEquals(0, snapshot.getCount());
+        Assert.assertEquals(0, snapshot.getPercentileMs(99), 0);
+    }
+}
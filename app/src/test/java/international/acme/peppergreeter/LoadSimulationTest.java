@@ -0,0 +1,187 @@
+package international.acme.peppergreeter;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Runs the presenter against the simulated robot and hours of synthetic shopper traffic on virtual time, to check greeting throughput and drop
+ *  rates under realistic timing. Each run is seeded, so a failure can be reproduced. A summary of each run is written to build/reports/load. **/
+public class LoadSimulationTest
+{
+    static final long SIMULATED_HOURS = 2;
+    static final long STEP_MS = 1000;
+    static final File REPORT_DIR = new File("build/reports/load");
+
+    @Rule
+    public TestName mTestName = new TestName();
+
+    TestScheduler mScheduler;
+    Random mRandom;
+    SimulatedRobotController mRobot;
+    ShopperArrivalGenerator mShoppers;
+    MainActivityPresenterImpl mPresenter;
+
+    @Before
+    public void setup() throws Exception
+    {
+        Context mockContext = mock(Context.class);
+        when(mockContext.getString((R.string.here_are_todays_special_deals))).thenReturn("Here are the special deals we're offering today!");
+        when(mockContext.getString((R.string.default_greeting_1))).thenReturn("Welcome!");
+        when(mockContext.getString((R.string.default_greeting_2))).thenReturn("Hello, thanks for coming in!");
+
+        // Every greeting logs its stats; over hours of traffic that would swamp the output, so only the summary at the end is kept, in the report.
+        LogHelper.setTestMode(true);
+        LogHelper.setMinLevel(LogHelper.LEVEL_NONE);
+
+        mScheduler = new TestScheduler();
+        mRandom = new Random(42);
+        mRobot = new SimulatedRobotController(mScheduler, mRandom);
+        mShoppers = new ShopperArrivalGenerator(mRobot, mScheduler, mRandom);
+        FakeDataRepository dataRepository = new FakeDataRepository();
+        mPresenter = new MainActivityPresenterImpl(mockContext, mRobot, dataRepository, mScheduler, null);
+        mPresenter.attach(new FakeMainView());
+        dataRepository.simulateDataLoadCompleted();
+    }
+
+    @After
+    public void teardown()
+    {
+        mShoppers.stop();
+        mPresenter.detach();
+        LogHelper.setMinLevel(LogHelper.LEVEL_INFO);
+    }
+
+    /** A steady trickle of shoppers, one at a time: many of those who come within range are greeted, and few greetings are dropped. **/
+    @Test
+    public void steadyTrafficGreeted() throws Exception
+    {
+        mShoppers.ArrivalsPerHour = 40;
+        runSimulation();
+
+        GreetingAdmissionController admission = mPresenter.getAdmissionController();
+        Assert.assertTrue(mShoppers.GreetableShopperCount > 20);
+        Assert.assertTrue(mPresenter.getCompletedGreetingCount() > 0);
+        // Not everyone within range is greeted: the approach predictor passes over some of those just walking by.
+        Assert.assertTrue(admission.getGreetingCount() >= mShoppers.GreetableShopperCount / 4);
+        Assert.assertTrue(admission.getDropRate() < 0.1);
+    }
+
+    /** Shoppers arriving in groups faster than the robot can greet them: some greetings are dropped rather than queued without bound, and
+     *  shoppers arriving together are greeted together. **/
+    @Test
+    public void burstyTrafficShedsLoad() throws Exception
+    {
+        mShoppers.ArrivalsPerHour = 600;
+        mShoppers.Bursty = true;
+        runSimulation();
+
+        GreetingAdmissionController admission = mPresenter.getAdmissionController();
+        Assert.assertTrue(admission.getDroppedCount() > 0);
+        Assert.assertTrue(admission.getMergedCount() > 0);
+        Assert.assertTrue(admission.getQueueDepth() <= GreetingAdmissionController.DEFAULT_MAX_QUEUE_DEPTH);
+
+        // A greeting takes far longer than the gap between arrivals, so groups are greeted as one rather than shopper by shopper.
+        Assert.assertTrue(admission.getGreetingCount() < mShoppers.ShopperCount / 2);
+    }
+
+    /** Robot actions that fail or hang are cut short by their error or timeout, so they don't stall greetings: once the traffic has passed,
+     *  the robot goes back to idle, and it goes on greeting shoppers afterwards. **/
+    @Test
+    public void failuresAndHangsDontStallGreetings() throws Exception
+    {
+        mRobot.SpeechStart.FailureRate = 0.05;
+        mRobot.SpeechStart.HangRate = 0.02;
+        mRobot.Motion.FailureRate = 0.05;
+        mRobot.Motion.HangRate = 0.02;
+        mRobot.Animation.HangRate = 0.05;
+        mShoppers.ArrivalsPerHour = 60;
+        runSimulation();
+
+        GreetingAdmissionController admission = mPresenter.getAdmissionController();
+        Assert.assertTrue(mRobot.FailureCount > 0);
+        Assert.assertTrue(mRobot.TimeoutCount > 0);
+        Assert.assertFalse(admission.isGreetingInProgress());
+        Assert.assertEquals(0, admission.getQueueDepth());
+        Assert.assertTrue(mPresenter.getGreetingState().isIdle());
+        Assert.assertEquals(0, mPresenter.getGreetingState().getRejectedTransitionCount());
+        Assert.assertTrue(mPresenter.getCompletedGreetingCount() > 0);
+
+        long greetingCount = admission.getGreetingCount();
+        mRobot.SpeechStart.HangRate = 0;
+        mRobot.Motion.HangRate = 0;
+        mRobot.Animation.HangRate = 0;
+        mShoppers.ArrivalsPerHour = 120;
+        mShoppers.start();
+        advance(TimeUnit.MINUTES.toMillis(30));
+        Assert.assertTrue(admission.getGreetingCount() > greetingCount);
+    }
+
+    /** A hung action holds its lane until its deadline, not just for the time it would have taken: the next action on the lane waits for the timeout. **/
+    @Test
+    public void hungActionHoldsItsLane()
+    {
+        long timeoutMs = mRobot.Timeouts.getSpeakTimeoutMs("Welcome!");
+        mRobot.SpeechStart.HangRate = 1;
+        TestObserver<Void> hung = mRobot.speak("Welcome!").test();
+        mRobot.SpeechStart.HangRate = 0;
+        TestObserver<Void> next = mRobot.speak("Welcome!").test();
+        Assert.assertEquals(timeoutMs, mRobot.TotalLaneWaitMs);
+
+        mScheduler.advanceTimeBy(timeoutMs, TimeUnit.MILLISECONDS);
+        hung.assertError(TimeoutException.class);
+        next.assertNotTerminated();
+    }
+
+    /** Run the traffic for SIMULATED_HOURS, then let the shoppers still around walk on and any greeting in progress finish. **/
+    private void runSimulation() throws IOException
+    {
+        mShoppers.start();
+        advance(TimeUnit.HOURS.toMillis(SIMULATED_HOURS));
+        mShoppers.stopArrivals();
+        advance(TimeUnit.MINUTES.toMillis(5));
+        mShoppers.stop();
+        writeReport();
+    }
+
+    private void advance(long durationMs)
+    {
+        for (long elapsedMs = 0 ; elapsedMs < durationMs ; elapsedMs += STEP_MS) mScheduler.advanceTimeBy(STEP_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeReport() throws IOException
+    {
+        GreetingAdmissionController admission = mPresenter.getAdmissionController();
+        LatencyHistogram.Snapshot greetingLatency = mPresenter.getMetrics().snapshot().getLatency(RobotMetrics.Operation.GREETING);
+        REPORT_DIR.mkdirs();
+        try (Writer writer = new FileWriter(new File(REPORT_DIR, mTestName.getMethodName() + ".txt")))
+        {
+            writer.write(String.format("Shoppers: %d, %d within range, at most %d in view at once\n",
+                    mShoppers.ShopperCount, mShoppers.GreetableShopperCount, mShoppers.PeakShoppersInView));
+            writer.write("Admission: " + admission.getStats() + "\n");
+            writer.write(mPresenter.getGreetingState() + "\n");
+            writer.write(String.format("Greetings: %d completed, %d cut short; latency p50 %.0f ms, p99 %.0f ms\n",
+                    mPresenter.getCompletedGreetingCount(), mPresenter.getAbortedGreetingCount(), greetingLatency.getPercentileMs(50), greetingLatency.getPercentileMs(99)));
+            writer.write(String.format("Robot: %d spoken, %d moves, %d animations, %d failed, %d timed out, %d ms waiting for a lane\n",
+                    mRobot.SpeakCount, mRobot.MoveCount, mRobot.AnimateCount, mRobot.FailureCount, mRobot.TimeoutCount, mRobot.TotalLaneWaitMs));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package international.acme.peppergreeter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/** Benchmarks for the cost of logging on the calling thread. The Android log isn't available on the JVM, so the enabled path is measured
+ *  up to the ring buffer, drained by a sink that discards the entries; formatting on the calling thread is measured for comparison. **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class LogHelperBenchmark
+{
+    LogRingBuffer mBuffer = new LogRingBuffer(LogHelper.BUFFER_SIZE);
+    double mDistance = 1.25;
+    int mHumanCount = 3;
+
+    @Setup
+    public void setup()
+    {
+        LogHelper.setMinLevel(LogHelper.LEVEL_ERROR);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        LogHelper.setMinLevel(LogHelper.LEVEL_INFO);
+    }
+
+    /** A message below the minimum level, as for the per-event logging in the humans-around callback. **/
+    @Benchmark
+    public void filteredMessage()
+    {
+        LogHelper.logMsg(getClass(), "%d humans around, nearest at %.2f m", mHumanCount, mDistance);
+    }
+
+    /** Handing a message over to the background writer. **/
+    @Benchmark
+    public void bufferedMessage(Blackhole blackhole)
+    {
+        mBuffer.offer(LogHelper.LEVEL_INFO, getClass(), Thread.currentThread().getName(), "%d humans around, nearest at %.2f m", new Object[] { mHumanCount, mDistance }, null);
+        mBuffer.drain(entry -> blackhole.consume(entry.mArgs));
+    }
+
+    /** What every message used to cost the calling thread. **/
+    @Benchmark
+    public String formattedMessage()
+    {
+        String threadStr = String.format("[%s] ", Thread.currentThread().getName());
+        return threadStr + String.format("%d humans around, nearest at %.2f m", mHumanCount, mDistance);
+    }
+}
@@ -0,0 +1,74 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Tests for the buffer that hands log messages over to the background writer. **/
+public class LogRingBufferTest
+{
+    @Test
+    public void entriesDrainedInOrder()
+    {
+        LogRingBuffer buffer = new LogRingBuffer(4);
+        for (int i = 0; i < 3; i++) buffer.offer(LogHelper.LEVEL_INFO, getClass(), "main", "Message %d", new Object[] { i }, null);
+
+        List<Object> drained = new ArrayList<>();
+        Assert.assertEquals(3, buffer.drain(entry -> drained.add(entry.mArgs[0])));
+        Assert.assertEquals(3, drained.size());
+        Assert.assertEquals(0, drained.get(0));
+        Assert.assertEquals(2, drained.get(2));
+        Assert.assertEquals(0, buffer.drain(entry -> Assert.fail()));
+    }
+
+    /** A full buffer drops new messages rather than blocking, and frees up again once drained. **/
+    @Test
+    public void fullBufferDropsMessages()
+    {
+        LogRingBuffer buffer = new LogRingBuffer(4);
+        for (int i = 0; i < 6; i++) buffer.offer(LogHelper.LEVEL_INFO, getClass(), "main", "Message", null, null);
+        Assert.assertEquals(2, buffer.getDroppedCount());
+
+        Assert.assertEquals(4, buffer.drain(entry -> { }));
+        Assert.assertTrue(buffer.offer(LogHelper.LEVEL_INFO, getClass(), "main", "Message", null, null));
+        Assert.assertEquals(1, buffer.drain(entry -> { }));
+    }
+
+    /** Every message logged concurrently from several threads is drained exactly once. **/
+    @Test
+    public void concurrentProducersAllDelivered() throws Exception
+    {
+        int threadCount = 4;
+        int messagesPerThread = 5000;
+        LogRingBuffer buffer = new LogRingBuffer(64);
+        Set<String> drained = new HashSet<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++)
+        {
+            String threadName = "producer-" + t;
+            Thread thread = new Thread(() ->
+            {
+                for (int i = 0; i < messagesPerThread; i++)
+                {
+                    while (!buffer.offer(LogHelper.LEVEL_INFO, getClass(), threadName, "Message %d", new Object[] { i }, null)) Thread.yield();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        boolean producing = true;
+        while (producing)
+        {
+            producing = false;
+            for (Thread thread : threads) producing |= thread.isAlive();
+            buffer.drain(entry -> Assert.assertTrue(drained.add(entry.mThreadName + ":" + entry.mArgs[0])));
+        }
+        buffer.drain(entry -> Assert.assertTrue(drained.add(entry.mThreadName + ":" + entry.mArgs[0])));
+        Assert.assertEquals(threadCount * messagesPerThread, drained.size());
+    }
+}
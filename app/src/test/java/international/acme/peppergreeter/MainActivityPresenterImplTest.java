@@ -10,12 +10,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
@@ -96,6 +99,131 @@ public class MainActivityPresenterImplTest
         validateGreetingSequence(mFakeDataRepository.getGreetings(), mFakeDataRepository.getDeals());
     }
 
+    /** Simulate a greeting with deals. Verify that it goes through each state of the lifecycle in turn, and ends back at idle. **/
+    @Test
+    public void greetingStateReturnsToIdle() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mPresenter.attach(mFakeMainView);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        Assert.assertTrue(mPresenter.getGreetingState().isIdle());
+        mFakeRobotController.simulateHumanDetection();
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(5, TimeUnit.SECONDS));
+        Assert.assertTrue(mPresenter.getGreetingState().isIdle());
+        Assert.assertEquals(0, mPresenter.getGreetingState().getRejectedTransitionCount());
+    }
+
+    /** Simulate a humans-around event that fails to be handled. Verify that a later event still triggers a greeting. **/
+    @Test
+    public void greetingTriggeredAfterFailedEvent() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mPresenter.attach(mFakeMainView);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mFakeRobotController.simulateHumansAround(Collections.<HumanObservation>singletonList(null));
+        mFakeRobotController.simulateHumanDetection();
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(5, TimeUnit.SECONDS));
+    }
+
+    /** Simulate a greeting being started while the state machine says one is still in progress. Verify that the rejected group is dropped
+     *  rather than holding up the admission controller, so that the robot still greets once the earlier greeting is over. **/
+    @Test
+    public void rejectedGreetingReleasesAdmission() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mPresenter.attach(mFakeMainView);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        Assert.assertTrue(mPresenter.getGreetingState().transition(GreetingStateMachine.State.APPROACHING, GreetingStateMachine.State.IDLE));
+
+        mFakeRobotController.simulateHumanDetection();
+        Semaphore humansHandled = new Semaphore(0);
+        Schedulers.single().scheduleDirect(humansHandled::release);
+        Assert.assertTrue(humansHandled.tryAcquire(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, mPresenter.getGreetingState().getRejectedTransitionCount());
+        Assert.assertFalse(mPresenter.getAdmissionController().isGreetingInProgress());
+        Assert.assertEquals(1, mPresenter.getAdmissionController().getDroppedCount());
+        Assert.assertEquals(0, mPresenter.getAdmissionController().getGreetingCount());
+
+        Assert.assertTrue(mPresenter.getGreetingState().transition(GreetingStateMachine.State.IDLE, GreetingStateMachine.State.APPROACHING));
+        mPresenter.startGreeting();
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, mPresenter.getAdmissionController().getGreetingCount());
+    }
+
+    /** Simulate more shoppers arriving mid-greeting than the admission queue holds. Verify that a shopper whose group was dropped
+     *  from the queue isn't left on the greeting cooldown, so that they trigger a greeting again. **/
+    @Test
+    public void droppedShopperGreetedAgain() throws Exception
+    {
+        mFakeRobotController.SpeakDurationMs = 1000;
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mPresenter.getAdmissionController().setMaxQueueDepth(1);
+        mPresenter.getAdmissionController().setGroupWindowMs(-1);
+        HumanObservation first = new HumanObservation(null, 1, 0, System.currentTimeMillis());
+        HumanObservation dropped = new HumanObservation(null, 0, 1, System.currentTimeMillis());
+        HumanObservation last = new HumanObservation(null, 0, -1, System.currentTimeMillis());
+
+        mFakeRobotController.simulateHumansAround(Collections.singletonList(first));
+        mFakeRobotController.simulateHumansAround(Arrays.asList(first, dropped));
+        mFakeRobotController.simulateHumansAround(Arrays.asList(first, dropped, last));
+        awaitGreetingObserverScheduler();
+        Assert.assertEquals(1, mPresenter.getAdmissionController().getDroppedCount());
+        Assert.assertEquals(3, mPresenter.getAdmissionController().getTriggerCount());
+
+        mFakeRobotController.simulateHumansAround(Arrays.asList(first, dropped, last));
+        awaitGreetingObserverScheduler();
+        Assert.assertEquals(4, mPresenter.getAdmissionController().getTriggerCount());
+    }
+
+    /** Simulate a greeting with deals. Verify that the latency of each robot action, and of the whole greeting, is recorded. **/
+    @Test
+    public void greetingMetricsRecorded() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mPresenter.attach(mFakeMainView);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mFakeRobotController.simulateHumanDetection();
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(5, TimeUnit.SECONDS));
+
+        RobotMetrics.Snapshot metrics = mPresenter.getMetrics().snapshot();
+        Assert.assertEquals(mFakeRobotController.SpokenPhrases.size(), metrics.getLatency(RobotMetrics.Operation.SPEAK).getCount());
+        Assert.assertEquals(mFakeRobotController.MovementsDone.size(), metrics.getLatency(RobotMetrics.Operation.MOVE).getCount());
+        Assert.assertEquals(mFakeDataRepository.getDeals().size(), metrics.getLatency(RobotMetrics.Operation.HIGHLIGHT_DEAL).getCount());
+        Assert.assertEquals(1, metrics.getLatency(RobotMetrics.Operation.GREETING).getCount());
+        Assert.assertEquals(0, metrics.getErrorCount(RobotMetrics.Operation.SPEAK));
+        Assert.assertEquals(0, metrics.getDroppedGreetingCount());
+    }
+
+    /** Simulate more deals than there are slots on screen. Verify that the pages of deals are shown in turn, and that a greeting announces
+     *  the page shown when it started, without the page changing under it. **/
+    @Test
+    public void dealsPagedThroughSlots() throws Exception
+    {
+        String[] deals = new String[] { "1", "2", "3", "4", "5", "6", "7", "8" };
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mPresenter.setDealPageRotationMs(200);
+        mPresenter.attach(mFakeMainView);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mFakeDataRepository.simulateConfigDataUpdate(new String[] { FakeDataRepository.GREETING_1 }, deals);
+        Assert.assertArrayEquals(new String[] { "1", "2", "3", "4", "5", "6" }, mFakeMainView.SpecialDeals);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (mFakeMainView.SpecialDeals.length != 2 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        Assert.assertArrayEquals(new String[] { "7", "8" }, mFakeMainView.SpecialDeals);
+
+        // Each phrase takes longer than a page is shown for.
+        mFakeRobotController.SpeakDurationMs = 250;
+        mFakeRobotController.simulateHumanDetection();
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(10, TimeUnit.SECONDS));
+        List<String> spokenDeals = mFakeRobotController.SpokenPhrases.subList(2, mFakeRobotController.SpokenPhrases.size());
+        Assert.assertTrue(spokenDeals.toString(), spokenDeals.equals(Arrays.asList("7", "8")) || spokenDeals.equals(Arrays.asList("1", "2", "3", "4", "5", "6")));
+    }
+
     /** Simulate an error when loading config data. Verify that one of the fallback greeting phrases is spoken, with no deals announced. **/
     @Test
     public void fallbackGreetingsUsedIfDataLoadError() throws Exception
@@ -114,6 +242,134 @@ public class MainActivityPresenterImplTest
         validateGreetingSequence(fallbackGreetings, new ArrayList<>());
     }
 
+    /** Simulate a humans-around event where nobody is within range. Verify that no greeting is started. **/
+    @Test
+    public void noGreetingForDistantHumans() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        double distance = MainActivityPresenterImpl.HUMAN_DETECTION_DISTANCE + 1;
+        mFakeRobotController.simulateHumansAround(Collections.singletonList(new HumanObservation(null, distance, 0, System.currentTimeMillis())));
+        Assert.assertFalse(onGreetingCompleted.tryAcquire(500, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(mFakeRobotController.MovementsDone.isEmpty());
+    }
+
+    /** Simulate a shopper lingering in front of the robot. Verify that they are only greeted once. **/
+    @Test
+    public void lingeringHumanGreetedOnce() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mFakeRobotController.simulateHumanDetection();
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(5, TimeUnit.SECONDS));
+        mFakeRobotController.simulateHumanDetection();
+        Assert.assertFalse(onGreetingCompleted.tryAcquire(500, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, mFakeRobotController.MovementsDone.size());
+    }
+
+    /** Simulate refreshed config data arriving while idle. Verify that the new deals are displayed straight away. **/
+    @Test
+    public void configDataUpdateAppliedWhenIdle() throws Exception
+    {
+        mPresenter.attach(mFakeMainView);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mFakeDataRepository.simulateConfigDataUpdate(new String[] { FakeDataRepository.GREETING_1 }, new String[] { FakeDataRepository.DEAL_2 });
+        Assert.assertArrayEquals(new String[] { FakeDataRepository.DEAL_2 }, mFakeMainView.SpecialDeals);
+    }
+
+    /** Simulate refreshed config data arriving mid-greeting. Verify that it is held back until the greeting has completed. **/
+    @Test
+    public void configDataUpdateDeferredUntilGreetingCompleted() throws Exception
+    {
+        TestScheduler greetingObserverScheduler = new TestScheduler();
+        mPresenter.setGreetingObserverScheduler(greetingObserverScheduler);
+        mPresenter.attach(mFakeMainView);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mPresenter.startGreeting();
+        mFakeDataRepository.simulateConfigDataUpdate(new String[] { FakeDataRepository.GREETING_1 }, new String[] { FakeDataRepository.DEAL_2 });
+        Assert.assertEquals(FakeDataRepository.DEAL_1, mFakeMainView.SpecialDeals[0]);
+
+        greetingObserverScheduler.triggerActions();
+        Assert.assertArrayEquals(new String[] { FakeDataRepository.DEAL_2 }, mFakeMainView.SpecialDeals);
+    }
+
+    /** Simulate the shopper walking off mid-greeting. Verify that the remaining deals are skipped, and the robot still returns to its start position. **/
+    @Test
+    public void greetingCutShortWhenHumanLeaves() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mFakeRobotController.SpeakDurationMs = 1000;
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mFakeRobotController.simulateHumanDetection();
+        mFakeRobotController.simulateHumansAround(Collections.emptyList());
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(5, TimeUnit.SECONDS));
+        assertCutShort();
+    }
+
+    @Test
+    public void greetingCutShortWhenDetached() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mFakeRobotController.SpeakDurationMs = 1000;
+        mPresenter.attach(mFakeMainView);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mPresenter.startGreeting();
+        mPresenter.detach();
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(5, TimeUnit.SECONDS));
+        assertCutShort();
+    }
+
+    /** Simulate the operator requesting a greeting while a shopper is being greeted. Verify that the operator's greeting runs in full straight after. **/
+    @Test
+    public void operatorPreemptsGreeting() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mFakeRobotController.SpeakDurationMs = 200;
+        mFakeDataRepository.simulateDataLoadCompleted();
+        mFakeRobotController.simulateHumanDetection();
+        Assert.assertFalse(onGreetingCompleted.tryAcquire(100, TimeUnit.MILLISECONDS));
+        mPresenter.startGreeting();
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(2, 5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, mPresenter.getAbortedGreetingCount());
+        Assert.assertEquals(1, mPresenter.getCompletedGreetingCount());
+        Assert.assertEquals(4, mFakeRobotController.MovementsDone.size());
+    }
+
+    /** Verify that the next greeting is prepared while idle, both before the first greeting and again after it, and that its start latency is measured. **/
+    @Test
+    public void greetingPrewarmedWhileIdle() throws Exception
+    {
+        Semaphore onGreetingCompleted = new Semaphore(0);
+        mPresenter.setOnGreetingCompleted(onGreetingCompleted);
+        mFakeDataRepository.simulateDataLoadCompleted();
+        Assert.assertEquals(1, mFakeRobotController.PrewarmCount);
+        mFakeRobotController.simulateHumanDetection();
+        Assert.assertTrue(onGreetingCompleted.tryAcquire(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, mPresenter.getWarmStartLatency().getCount());
+        Assert.assertEquals(0, mPresenter.getColdStartLatency().getCount());
+        Assert.assertEquals(2, mFakeRobotController.PrewarmCount);
+    }
+
+    /** Wait until everything already posted to the greeting observer scheduler has run. **/
+    private void awaitGreetingObserverScheduler() throws InterruptedException
+    {
+        Semaphore done = new Semaphore(0);
+        Schedulers.single().scheduleDirect(done::release);
+        Assert.assertTrue(done.tryAcquire(5, TimeUnit.SECONDS));
+    }
+
+    private void assertCutShort()
+    {
+        Assert.assertEquals(1, mPresenter.getAbortedGreetingCount());
+        Assert.assertTrue(mFakeRobotController.SpokenPhrases.size() < 2 + mFakeDataRepository.getDeals().size());
+        Assert.assertEquals(2, mFakeRobotController.MovementsDone.size());
+        Assert.assertEquals(new Vector3(-0.5, 0, 0), mFakeRobotController.MovementsDone.get(1));
+    }
 
     /** Validate that the FakeRobot has a log of performing the entire greeting sequence as expected:
      *  - Spoke: one of the allowed greeting phrases specified, followed by "Here are today's deals....", followed by all of the special deals specified.
@@ -0,0 +1,157 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.reactivex.observers.TestObserver;
+
+/** Tests for the cache of phrases pre-rendered to audio. **/
+public class PhraseAudioCacheTest
+{
+    static final int CLIP_BYTES = 1000;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    /** Renders each phrase to a file of fixed size, and fails for any phrase in mFailingPhrases. mOnRender, if set, runs before each phrase is rendered. **/
+    List<String> mRendered = new ArrayList<>();
+    List<String> mFailingPhrases = new ArrayList<>();
+    PhraseRenderer mOnRender;
+    PhraseRenderer mRenderer = (text, outFile) ->
+    {
+        if (mOnRender != null) mOnRender.render(text, outFile);
+        if (mFailingPhrases.contains(text)) throw new IllegalStateException("Render failed");
+        mRendered.add(text);
+        try (FileOutputStream out = new FileOutputStream(outFile))
+        {
+            out.write(new byte[CLIP_BYTES]);
+        }
+    };
+
+    File mDirectory;
+
+    @Before
+    public void setup() throws Exception
+    {
+        mDirectory = new File(mTempFolder.getRoot(), "phrases");
+    }
+
+    @Test
+    public void phrasesRenderedOncePerVersion()
+    {
+        PhraseAudioCache cache = new PhraseAudioCache(mDirectory, mRenderer);
+        cache.renderAll("v1", Arrays.asList("Hello", "Welcome")).blockingAwait();
+        cache.renderAll("v1", Arrays.asList("Hello", "Welcome")).blockingAwait();
+        Assert.assertEquals(Arrays.asList("Hello", "Welcome"), mRendered);
+
+        Assert.assertNotNull(cache.get("Hello"));
+        Assert.assertNull(cache.get("Goodbye"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    /** Clips of the old version are not played back once a new version is current, even for the same wording. **/
+    @Test
+    public void newVersionRenderedBeforeUse()
+    {
+        PhraseAudioCache cache = new PhraseAudioCache(mDirectory, mRenderer);
+        cache.renderAll("v1", Arrays.asList("Hello")).blockingAwait();
+        File v1Clip = cache.get("Hello");
+
+        cache.renderAll("v2", Arrays.asList("Hello")).blockingAwait();
+        File v2Clip = cache.get("Hello");
+        Assert.assertNotNull(v2Clip);
+        Assert.assertNotEquals(v1Clip, v2Clip);
+        Assert.assertEquals(2, mRendered.size());
+    }
+
+    @Test
+    public void leastRecentlyPlayedEvicted()
+    {
+        PhraseAudioCache cache = new PhraseAudioCache(mDirectory, mRenderer, 2 * CLIP_BYTES);
+        cache.renderAll("v1", Arrays.asList("One", "Two")).blockingAwait();
+        cache.get("One");
+        cache.renderAll("v1", Arrays.asList("One", "Two", "Three")).blockingAwait();
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNotNull(cache.get("One"));
+        Assert.assertNull(cache.get("Two"));
+        Assert.assertNotNull(cache.get("Three"));
+        Assert.assertEquals(2, mDirectory.listFiles().length);
+    }
+
+    /** Clips rendered by an earlier run aren't rendered again. **/
+    @Test
+    public void clipsKeptAcrossRestarts()
+    {
+        new PhraseAudioCache(mDirectory, mRenderer).renderAll("v1", Arrays.asList("Hello", "Welcome")).blockingAwait();
+        mRendered.clear();
+
+        PhraseAudioCache cache = new PhraseAudioCache(mDirectory, mRenderer);
+        Assert.assertEquals(2, cache.size());
+        cache.renderAll("v1", Arrays.asList("Hello", "Welcome")).blockingAwait();
+        Assert.assertTrue(mRendered.isEmpty());
+        Assert.assertNotNull(cache.get("Welcome"));
+    }
+
+    /** A phrase that fails to render is left to live text-to-speech; the others are still cached. **/
+    @Test
+    public void failedRenderLeftOut()
+    {
+        mFailingPhrases.add("Welcome");
+        PhraseAudioCache cache = new PhraseAudioCache(mDirectory, mRenderer);
+        cache.renderAll("v1", Arrays.asList("Hello", "Welcome")).blockingAwait();
+
+        Assert.assertNotNull(cache.get("Hello"));
+        Assert.assertNull(cache.get("Welcome"));
+        Assert.assertEquals(1, mDirectory.listFiles().length);
+    }
+
+    /** Disposing a run, as the presenter does when the page of deals changes, interrupts the phrase being rendered. The rest of the phrases
+     *  aren't rendered, the interrupted one isn't counted as a failure, and the previous version stays current. **/
+    @Test
+    public void disposedRunStopsRendering()
+    {
+        PhraseAudioCache cache = new PhraseAudioCache(mDirectory, mRenderer);
+        cache.renderAll("v1", Arrays.asList("Hello")).blockingAwait();
+        File v1Clip = cache.get("Hello");
+
+        TestObserver<Void> run = new TestObserver<>();
+        mOnRender = (text, outFile) ->
+        {
+            if (!text.equals("Slow")) return;
+            run.dispose();
+            throw new InterruptedException();
+        };
+        cache.renderAll("v2", Arrays.asList("Slow", "Hello", "Welcome")).subscribe(run);
+        Assert.assertTrue(Thread.interrupted());
+
+        Assert.assertEquals(Arrays.asList("Hello"), mRendered);
+        Assert.assertEquals(v1Clip, cache.get("Hello"));
+        Assert.assertEquals(1, mDirectory.listFiles().length);
+    }
+
+    /** A run that finishes after a later one has started doesn't put its older version back. **/
+    @Test
+    public void overtakenRunNotMadeCurrent()
+    {
+        PhraseAudioCache cache = new PhraseAudioCache(mDirectory, mRenderer);
+        mOnRender = (text, outFile) ->
+        {
+            if (text.equals("Slow")) cache.renderAll("v2", Arrays.asList("Hello")).blockingAwait();
+        };
+        cache.renderAll("v1", Arrays.asList("Slow", "Hello")).blockingAwait();
+
+        Assert.assertEquals(PhraseAudioCache.fileName("v2", "Hello"), cache.get("Hello").getName());
+    }
+}
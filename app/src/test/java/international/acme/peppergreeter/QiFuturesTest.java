@@ -0,0 +1,110 @@
+package international.acme.peppergreeter;
+
+import com.aldebaran.qi.Callback;
+import com.aldebaran.qi.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import io.reactivex.observers.TestObserver;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Tests for adapting SDK futures to RxJava, against a stub future whose completion callbacks are fired by hand. **/
+public class QiFuturesTest
+{
+    Future<String> mFuture;
+    Callback<String> mCallback;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+        mFuture = mock(Future.class);
+        doAnswer(invocation ->
+        {
+            mCallback = invocation.getArgument(0);
+            return null;
+        }).when(mFuture).addCallback(any(Callback.class));
+    }
+
+    @Test
+    public void completableCompletesOnSuccess() throws Exception
+    {
+        TestObserver<Void> observer = QiFutures.toCompletable(mFuture).test();
+        observer.assertNotComplete();
+        succeed("done");
+        observer.assertComplete();
+    }
+
+    /** The SDK wraps the action's failure in an ExecutionException; the cause is what's reported. **/
+    @Test
+    public void failureSurfacesCause() throws Exception
+    {
+        IOException cause = new IOException("Robot action failed");
+        TestObserver<Void> observer = QiFutures.toCompletable(mFuture).test();
+        when(mFuture.get()).thenThrow(new ExecutionException(cause));
+        mCallback.onFailure(mFuture, null);
+        mCallback.onComplete(mFuture, null);
+        observer.assertError(cause);
+    }
+
+    /** Cancellation is only reported through onComplete(), with the future saying it was cancelled. **/
+    @Test
+    public void cancelledFutureErrors()
+    {
+        TestObserver<Void> observer = QiFutures.toCompletable(mFuture).test();
+        when(mFuture.isCancelled()).thenReturn(true);
+        when(mFuture.isDone()).thenReturn(true);
+        mCallback.onComplete(mFuture, null);
+        observer.assertError(CancellationException.class);
+    }
+
+    @Test
+    public void disposingCompletableCancelsFuture()
+    {
+        QiFutures.toCompletable(mFuture).test().dispose();
+        verify(mFuture).cancel(true);
+    }
+
+    @Test
+    public void singleEmitsValue() throws Exception
+    {
+        TestObserver<String> observer = QiFutures.toSingle(mFuture).test();
+        succeed("transform");
+        observer.assertResult("transform");
+    }
+
+    @Test
+    public void singleErrorsOnNullValue() throws Exception
+    {
+        TestObserver<String> observer = QiFutures.toSingle(mFuture).test();
+        succeed(null);
+        observer.assertError(NullPointerException.class);
+    }
+
+    @Test
+    public void disposingSingleCancelsFuture()
+    {
+        QiFutures.toSingle(mFuture).test().dispose();
+        verify(mFuture).cancel(true);
+    }
+
+    /** Complete the future with the given value, and fire its callbacks as the SDK would. **/
+    private void succeed(String value) throws Exception
+    {
+        when(mFuture.get()).thenReturn(value);
+        when(mFuture.isDone()).thenReturn(true);
+        mCallback.onSuccess(mFuture, null);
+        mCallback.onComplete(mFuture, null);
+    }
+}
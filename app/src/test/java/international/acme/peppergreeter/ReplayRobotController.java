@@ -0,0 +1,106 @@
+package international.acme.peppergreeter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.processors.PublishProcessor;
+
+import international.acme.peppergreeter.RobotMetrics.Operation;
+
+/** For use in regression testing: replays a session recorded on the robot (see SessionRecorder) on a (typically virtual-time) scheduler.
+ *  Once started, the humans-around events are emitted at the same offsets as they were recorded, timestamped with the scheduler's time.
+ *  Each speak, move or animate takes the latency, and has the outcome, of the next one of its kind that was recorded, cycling round if the
+ *  build under test performs more of them than the robot did. Actions that were recorded as cancelled are left out, as their latency was cut short.
+ *  As nothing depends on wall-clock time, replaying the same session against the same build always gives the same result. **/
+public class ReplayRobotController implements RobotController
+{
+    private final SessionReader.Session mSession;
+    private final Scheduler mScheduler;
+    private final PublishProcessor<List<HumanObservation>> mHumansAround = PublishProcessor.create();
+    private final List<List<SessionReader.ActionEvent>> mActions = new ArrayList<>();
+    private final int[] mNextAction = new int[Operation.values().length];
+    private volatile long mLastMotionStartNanos;
+
+    public ReplayRobotController(SessionReader.Session session, Scheduler scheduler)
+    {
+        mSession = session;
+        mScheduler = scheduler;
+        for (int i = 0; i < Operation.values().length; i++) mActions.add(new ArrayList<>());
+        for (SessionReader.ActionEvent action : session.ActionEvents)
+        {
+            if (action.Outcome != SessionRecorder.OUTCOME_CANCELLED) mActions.get(action.Type.ordinal()).add(action);
+        }
+    }
+
+    /** Schedule the session's humans-around events, relative to now. **/
+    public void start()
+    {
+        long startMs = mScheduler.now(TimeUnit.MILLISECONDS);
+        for (SessionReader.HumansEvent event : mSession.HumansEvents)
+        {
+            mScheduler.scheduleDirect(() -> mHumansAround.onNext(event.toObservations(startMs + event.OffsetMs)), event.OffsetMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Completable speak(String text)
+    {
+        return replay(Operation.SPEAK);
+    }
+
+    @Override
+    public Completable moveWithVector(double x, double y, double z)
+    {
+        return replay(Operation.MOVE).doOnSubscribe(d -> mLastMotionStartNanos = System.nanoTime());
+    }
+
+    @Override
+    public Completable animate(int animationResourceId)
+    {
+        return replay(Operation.ANIMATE);
+    }
+
+    @Override
+    public Completable prewarm()
+    {
+        return Completable.complete();
+    }
+
+    @Override
+    public Completable preparePhrases(String configVersion, List<String> phrases)
+    {
+        return Completable.complete();
+    }
+
+    @Override
+    public long getLastMotionStartNanos()
+    {
+        return mLastMotionStartNanos;
+    }
+
+    @Override
+    public Flowable<List<HumanObservation>> humansAround()
+    {
+        return mHumansAround.onBackpressureLatest();
+    }
+
+    /** Completes immediately if no action of this kind was recorded. **/
+    private Completable replay(Operation operation)
+    {
+        return Completable.defer(() ->
+        {
+            List<SessionReader.ActionEvent> recorded = mActions.get(operation.ordinal());
+            if (recorded.isEmpty()) return Completable.complete();
+            SessionReader.ActionEvent action = recorded.get(mNextAction[operation.ordinal()]++ % recorded.size());
+            Completable latency = Completable.timer(action.LatencyMicros, TimeUnit.MICROSECONDS, mScheduler);
+            if (action.Outcome == SessionRecorder.OUTCOME_TIMEOUT) return latency.andThen(Completable.error(new TimeoutException("Replayed " + operation + " timeout")));
+            if (action.Outcome == SessionRecorder.OUTCOME_ERROR) return latency.andThen(Completable.error(new IllegalStateException("Replayed " + operation + " failure")));
+            return latency;
+        });
+    }
+}
@@ -0,0 +1,120 @@
+package international.acme.peppergreeter;
+
+import android.content.Context;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.mockito.Mockito.mock;
+
+/** Tests for the humans-around stream's handling of SDK listener events, and for speaking rendered phrases. **/
+public class RobotControllerImplTest
+{
+    static final long WINDOW_MS = RobotControllerImpl.DEFAULT_HUMAN_SAMPLING_WINDOW_MS;
+
+    TestScheduler mScheduler;
+    PublishProcessor<List<String>> mListenerEvents;
+    TestSubscriber<List<String>> mSamples;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+        mScheduler = new TestScheduler();
+        mListenerEvents = PublishProcessor.create();
+        mSamples = RobotControllerImpl.repeatWhileHumansAround(mListenerEvents, WINDOW_MS, mScheduler).test();
+    }
+
+    /** The listener fires once as a shopper arrives; their position keeps being sampled while they walk towards the robot. **/
+    @Test
+    public void humansResampledWhileAround()
+    {
+        mListenerEvents.onNext(Collections.singletonList("shopper"));
+        mScheduler.triggerActions();
+        mSamples.assertValueCount(1);
+
+        mScheduler.advanceTimeBy(4 * WINDOW_MS, TimeUnit.MILLISECONDS);
+        mSamples.assertValueCount(5);
+        for (List<String> sample : mSamples.values()) Assert.assertEquals(Collections.singletonList("shopper"), sample);
+    }
+
+    /** Once everyone has left, the empty event is passed on once and sampling stops. **/
+    @Test
+    public void resamplingStopsWhenNobodyAround()
+    {
+        mListenerEvents.onNext(Collections.singletonList("shopper"));
+        mScheduler.advanceTimeBy(2 * WINDOW_MS, TimeUnit.MILLISECONDS);
+        mListenerEvents.onNext(Collections.<String>emptyList());
+        int count = mSamples.valueCount();
+
+        mScheduler.advanceTimeBy(10 * WINDOW_MS, TimeUnit.MILLISECONDS);
+        mSamples.assertValueCount(count);
+        Assert.assertTrue(mSamples.values().get(count - 1).isEmpty());
+    }
+
+    /** A rendered phrase whose clip can't be played is spoken with Say instead, so the greeting carries on. **/
+    @Test
+    public void unplayableClipSpokenWithSay()
+    {
+        PhraseAudioCache cache = new PhraseAudioCache(new File(mTempFolder.getRoot(), "phrases"), (text, outFile) -> new FileOutputStream(outFile).close());
+        cache.renderAll("v1", Collections.singletonList("Welcome!")).blockingAwait();
+        List<String> said = new ArrayList<>();
+        RobotControllerImpl robotController = new RobotControllerImpl(mock(Context.class))
+        {
+            @Override
+            Completable say(String message)
+            {
+                return Completable.fromAction(() -> said.add(message));
+            }
+        };
+        robotController.setPhraseAudio(cache, file -> Completable.error(new IOException("Empty WAV file: " + file)));
+
+        robotController.speak("Welcome!").blockingAwait();
+        Assert.assertEquals(Collections.singletonList("Welcome!"), said);
+    }
+
+    /** A rendered phrase whose playback never ends (such as a clip the player can't tell the end of) is cut off at its own deadline,
+     *  leaving the fallback to Say a full deadline of its own. **/
+    @Test
+    public void hungPlaybackSpokenWithSay()
+    {
+        PhraseAudioCache cache = new PhraseAudioCache(new File(mTempFolder.getRoot(), "phrases"), (text, outFile) -> new FileOutputStream(outFile).close());
+        cache.renderAll("v1", Collections.singletonList("Welcome!")).blockingAwait();
+        List<String> said = new ArrayList<>();
+        RobotControllerImpl robotController = new RobotControllerImpl(mock(Context.class))
+        {
+            @Override
+            Completable say(String message)
+            {
+                return Completable.timer(50, TimeUnit.MILLISECONDS).doOnComplete(() -> said.add(message));
+            }
+        };
+        ActionTimeouts timeouts = new ActionTimeouts();
+        timeouts.SpeakBaseMs = 100;
+        timeouts.SpeakPerCharMs = 0;
+        robotController.setActionTimeouts(timeouts);
+        robotController.setPhraseAudio(cache, file -> Completable.never());
+
+        Assert.assertTrue(robotController.speak("Welcome!").blockingAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonList("Welcome!"), said);
+    }
+}
@@ -0,0 +1,270 @@
+package international.acme.peppergreeter;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.schedulers.TestScheduler;
+
+import international.acme.peppergreeter.RobotMetrics.Operation;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Tests for recording humans-around sessions and replaying them through the presenter on virtual time. Recordings pulled off a robot and
+ *  put in the test resources' sessions directory are replayed too, with their reports written to build/reports/replay so that they can
+ *  be compared between builds. **/
+public class SessionReplayTest
+{
+    static final String RECORDED_SESSIONS_DIR = "sessions";
+    static final File REPORT_DIR = new File("build/reports/replay");
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    File mFile;
+    Context mContext;
+
+    @Before
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+        mFile = new File(mTempFolder.getRoot(), "sessions.rec");
+        mContext = mock(Context.class);
+        when(mContext.getString((R.string.here_are_todays_special_deals))).thenReturn("Here are the special deals we're offering today!");
+        when(mContext.getString((R.string.default_greeting_1))).thenReturn("Welcome!");
+        when(mContext.getString((R.string.default_greeting_2))).thenReturn("Hello, thanks for coming in!");
+    }
+
+    @After
+    public void teardown()
+    {
+        LogHelper.setMinLevel(LogHelper.LEVEL_INFO);
+    }
+
+    @Test
+    public void recordedSessionReadBack() throws Exception
+    {
+        SessionRecorder recorder = new SessionRecorder(mFile);
+        recorder.open(1000000);
+        recorder.recordHumans(Arrays.asList(new HumanObservation(null, 1.23, -0.5, 1000250), new HumanObservation(null, 2.5, 3.01, 1000250)), 1000250);
+        recorder.recordAction(Operation.SPEAK, SessionRecorder.OUTCOME_COMPLETED, TimeUnit.MILLISECONDS.toNanos(1500), 1001800);
+        recorder.recordAction(Operation.MOVE, SessionRecorder.OUTCOME_TIMEOUT, TimeUnit.MILLISECONDS.toNanos(15000), 1001790);
+        recorder.recordHumans(Collections.emptyList(), 1002000);
+        recorder.close();
+
+        List<SessionReader.Session> sessions = SessionReader.read(mFile);
+        Assert.assertEquals(1, sessions.size());
+        SessionReader.Session session = sessions.get(0);
+        Assert.assertEquals(1000000, session.StartedAtMs);
+        Assert.assertEquals(2, session.HumansEvents.size());
+        SessionReader.HumansEvent humans = session.HumansEvents.get(0);
+        Assert.assertEquals(250, humans.OffsetMs);
+        Assert.assertArrayEquals(new double[] { 1.23, 2.5 }, humans.X, 0.005);
+        Assert.assertArrayEquals(new double[] { -0.5, 3.01 }, humans.Y, 0.005);
+        Assert.assertEquals(0, session.HumansEvents.get(1).X.length);
+        Assert.assertEquals(2000, session.getDurationMs());
+
+        Assert.assertEquals(2, session.ActionEvents.size());
+        SessionReader.ActionEvent move = session.ActionEvents.get(1);
+        Assert.assertEquals(Operation.MOVE, move.Type);
+        Assert.assertEquals(SessionRecorder.OUTCOME_TIMEOUT, move.Outcome);
+        Assert.assertEquals(15000000, move.LatencyMicros);
+        Assert.assertEquals(1790, move.OffsetMs);
+
+        // A few bytes per record.
+        Assert.assertTrue(mFile.length() < 60);
+    }
+
+    /** Each time the recorder is opened, a new session is appended to those already in the file. **/
+    @Test
+    public void sessionsAppended() throws Exception
+    {
+        SessionRecorder recorder = new SessionRecorder(mFile);
+        recorder.open(1000);
+        recorder.recordHumans(Collections.emptyList(), 1500);
+        recorder.close();
+        recorder = new SessionRecorder(mFile);
+        recorder.open(5000);
+        recorder.recordHumans(Collections.emptyList(), 5100);
+        recorder.close();
+
+        List<SessionReader.Session> sessions = SessionReader.read(mFile);
+        Assert.assertEquals(2, sessions.size());
+        Assert.assertEquals(500, sessions.get(0).HumansEvents.get(0).OffsetMs);
+        Assert.assertEquals(5000, sessions.get(1).StartedAtMs);
+        Assert.assertEquals(100, sessions.get(1).HumansEvents.get(0).OffsetMs);
+    }
+
+    /** If the app is killed part way through writing a record, the records before it are still read back. **/
+    @Test
+    public void truncatedRecordIgnored() throws Exception
+    {
+        SessionRecorder recorder = new SessionRecorder(mFile);
+        recorder.open(1000);
+        recorder.recordHumans(Collections.singletonList(new HumanObservation(null, 1, 1, 1200)), 1200);
+        recorder.recordHumans(Collections.singletonList(new HumanObservation(null, 1, 0.5, 1400)), 1400);
+        recorder.close();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw"))
+        {
+            file.setLength(file.length() - 1);
+        }
+
+        List<SessionReader.Session> sessions = SessionReader.read(mFile);
+        Assert.assertEquals(1, sessions.get(0).HumansEvents.size());
+    }
+
+    /** The app killed part way through writing out a record, then restarted: the partial record is cut off before the new session is appended,
+     *  so both sessions read back intact apart from that record. **/
+    @Test
+    public void sessionAppendedAfterPartialRecord() throws Exception
+    {
+        SessionRecorder recorder = new SessionRecorder(mFile);
+        recorder.open(1000);
+        recorder.recordHumans(Collections.singletonList(new HumanObservation(null, 1, 1, 1200)), 1200);
+        recorder.recordHumans(Arrays.asList(new HumanObservation(null, 2.5, 1, 1400), new HumanObservation(null, -3, 0.5, 1400)), 1400);
+        recorder.close();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw"))
+        {
+            file.setLength(file.length() - 3);
+        }
+
+        recorder = new SessionRecorder(mFile);
+        recorder.open(5000);
+        recorder.recordAction(Operation.SPEAK, SessionRecorder.OUTCOME_COMPLETED, TimeUnit.MILLISECONDS.toNanos(800), 5800);
+        recorder.recordHumans(Collections.emptyList(), 6000);
+        recorder.close();
+
+        List<SessionReader.Session> sessions = SessionReader.read(mFile);
+        Assert.assertEquals(2, sessions.size());
+        Assert.assertEquals(1, sessions.get(0).HumansEvents.size());
+        Assert.assertEquals(5000, sessions.get(1).StartedAtMs);
+        Assert.assertEquals(1, sessions.get(1).HumansEvents.size());
+        Assert.assertEquals(Operation.SPEAK, sessions.get(1).ActionEvents.get(0).Type);
+        Assert.assertEquals(800000, sessions.get(1).ActionEvents.get(0).LatencyMicros);
+    }
+
+    /** An operation ordinal that doesn't exist is reported as corruption rather than thrown as some other exception. **/
+    @Test(expected = IOException.class)
+    public void invalidOperationRejected() throws Exception
+    {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile)))
+        {
+            out.writeInt(SessionRecorder.MAGIC);
+            out.writeInt(SessionRecorder.FORMAT_VERSION);
+            out.writeByte(SessionRecorder.RECORD_SESSION_START);
+            out.writeLong(1000);
+            out.writeByte(SessionRecorder.RECORD_ACTION);
+            // Time delta 0, operation 100 (zigzag 200 as a two byte varint), outcome 0, latency 0.
+            out.write(new byte[] { 0, (byte) 0xC8, 0x01, 0, 0 });
+        }
+        SessionReader.read(mFile);
+    }
+
+    /** Replaying the same session twice gives identical reports, so differences between builds are down to the builds. **/
+    @Test
+    public void replayIsDeterministic() throws Exception
+    {
+        recordSimulatedSession(TimeUnit.MINUTES.toMillis(30));
+        SessionReader.Session session = SessionReader.read(mFile).get(0);
+
+        String firstReport = replay(session);
+        String secondReport = replay(session);
+        Assert.assertEquals(firstReport, secondReport);
+        Assert.assertFalse(firstReport.contains(" 0 greetings,"));
+    }
+
+    /** Replay sessions recorded on the robot, if any have been added to the test resources. **/
+    @Test
+    public void recordedSessionsReplayed() throws Exception
+    {
+        URL sessionsDir = getClass().getClassLoader().getResource(RECORDED_SESSIONS_DIR);
+        File[] files = (sessionsDir != null) ? new File(sessionsDir.toURI()).listFiles() : null;
+        if (files == null) return;
+        REPORT_DIR.mkdirs();
+        for (File file : files)
+        {
+            List<SessionReader.Session> sessions = SessionReader.read(file);
+            for (int i = 0; i < sessions.size(); i++)
+            {
+                String report = replay(sessions.get(i));
+                try (Writer writer = new FileWriter(new File(REPORT_DIR, file.getName() + "." + i + ".txt")))
+                {
+                    writer.write(report);
+                }
+            }
+        }
+    }
+
+    /** Record the humans-around events of simulated shopper traffic, and action latencies from the simulated robot, as they would be on the robot. **/
+    private void recordSimulatedSession(long durationMs) throws Exception
+    {
+        TestScheduler scheduler = new TestScheduler();
+        Random random = new Random(7);
+        SimulatedRobotController robot = new SimulatedRobotController(scheduler, random);
+        ShopperArrivalGenerator shoppers = new ShopperArrivalGenerator(robot, scheduler, random);
+        shoppers.ArrivalsPerHour = 90;
+
+        SessionRecorder recorder = new SessionRecorder(mFile);
+        recorder.open(0);
+        robot.humansAround().subscribe(humans -> recorder.recordHumans(humans, scheduler.now(TimeUnit.MILLISECONDS)));
+        for (int i = 0; i < 20; i++)
+        {
+            long startMs = scheduler.now(TimeUnit.MILLISECONDS);
+            Operation operation = Operation.values()[i % 3];
+            Completable action = (operation == Operation.SPEAK) ? robot.speak("Welcome!") : (operation == Operation.MOVE) ? robot.moveWithVector(1, 0, 0) : robot.animate(0);
+            action.subscribe(() -> recorder.recordAction(operation, SessionRecorder.OUTCOME_COMPLETED, TimeUnit.MILLISECONDS.toNanos(scheduler.now(TimeUnit.MILLISECONDS) - startMs), scheduler.now(TimeUnit.MILLISECONDS)));
+            scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        }
+        shoppers.start();
+        scheduler.advanceTimeBy(durationMs, TimeUnit.MILLISECONDS);
+        shoppers.stop();
+        recorder.close();
+    }
+
+    /** Feed the session through the presenter on virtual time, and report greeting throughput and latency in a stable format. **/
+    private String replay(SessionReader.Session session) throws Exception
+    {
+        LogHelper.setMinLevel(LogHelper.LEVEL_NONE);
+        TestScheduler scheduler = new TestScheduler();
+        ReplayRobotController robot = new ReplayRobotController(session, scheduler);
+        FakeDataRepository dataRepository = new FakeDataRepository();
+        MainActivityPresenterImpl presenter = new MainActivityPresenterImpl(mContext, robot, dataRepository, scheduler, null);
+        presenter.attach(new FakeMainView());
+        dataRepository.simulateDataLoadCompleted();
+        robot.start();
+        long endMs = session.getDurationMs() + TimeUnit.MINUTES.toMillis(1);
+        for (long elapsedMs = 0 ; elapsedMs < endMs ; elapsedMs += 1000) scheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        presenter.detach();
+        LogHelper.setMinLevel(LogHelper.LEVEL_INFO);
+
+        GreetingAdmissionController admission = presenter.getAdmissionController();
+        RobotMetrics.Snapshot metrics = presenter.getMetrics().snapshot();
+        LatencyHistogram.Snapshot greetingLatency = metrics.getLatency(Operation.GREETING);
+        return String.format("%d humans-around events over %d s\n", session.HumansEvents.size(), session.getDurationMs() / 1000)
+                + String.format("%d triggers, %d merged, %d greetings, %d dropped\n", admission.getTriggerCount(), admission.getMergedCount(), admission.getGreetingCount(), admission.getDroppedCount())
+                + String.format("%d greetings completed, %d cut short\n", presenter.getCompletedGreetingCount(), presenter.getAbortedGreetingCount())
+                + String.format("Greeting latency: p50 %.0f ms, p90 %.0f ms, p99 %.0f ms, max %.0f ms\n", greetingLatency.getPercentileMs(50), greetingLatency.getPercentileMs(90), greetingLatency.getPercentileMs(99), greetingLatency.getMaxMs())
+                + String.format("%d spoken, %d moves, %d animations", metrics.getLatency(Operation.SPEAK).getCount(), metrics.getLatency(Operation.MOVE).getCount(), metrics.getLatency(Operation.ANIMATE).getCount());
+    }
+}
@@ -0,0 +1,149 @@
+package international.acme.peppergreeter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+
+/** For use in load testing: synthetic shoppers walking past the robot, sampled as humans-around events on a (typically virtual-time) scheduler.
+ *  While anyone is in view they are sampled every SAMPLE_INTERVAL_MS (the humans sampling window, 500 ms), as RobotControllerImpl re-reads their positions.
+ *  Shoppers arrive as a Poisson process, either one at a time or, when bursty, in groups walking side by side. Each walks across the robot's
+ *  field of view on a straight line at a random distance from it; some stop in front of the robot for a while before walking on. **/
+public class ShopperArrivalGenerator
+{
+    static final long SAMPLE_INTERVAL_MS = RobotControllerImpl.DEFAULT_HUMAN_SAMPLING_WINDOW_MS;
+    static final double SENSOR_RANGE_M = 6;
+    static final double GROUP_SPACING_M = 0.8;
+
+    public double ArrivalsPerHour = 60;
+    /** If set, arrivals come in groups of 1 + a geometrically distributed number of extra shoppers, averaging MeanGroupSize. **/
+    public boolean Bursty;
+    public double MeanGroupSize = 2.5;
+    public double MinWalkingSpeed = 0.8;
+    public double MaxWalkingSpeed = 1.5;
+    public double MaxPassingDistance = 4;
+    /** Probability that a shopper stops in front of the robot, and for how long at most. **/
+    public double StopRate = 0.3;
+    public long MaxStopMs = 20000;
+
+    private static class Shopper
+    {
+        double mX;
+        double mStartY;
+        double mSpeed;
+        long mStartMs;
+        long mStopMs;
+
+        /** Walk from -SENSOR_RANGE_M to +SENSOR_RANGE_M along y, stopping at y = 0 for mStopMs. Returns null once out of range. **/
+        double[] positionAt(long nowMs)
+        {
+            long walkedMs = nowMs - mStartMs;
+            long stopAtMs = (long) (-mStartY / mSpeed * 1000);
+            if (walkedMs > stopAtMs) walkedMs = Math.max(stopAtMs, walkedMs - mStopMs);
+            double y = mStartY + mSpeed * walkedMs / 1000;
+            return (y > SENSOR_RANGE_M) ? null : new double[] { mX, y };
+        }
+    }
+
+    private final SimulatedRobotController mRobot;
+    private final Scheduler mScheduler;
+    private final Random mRandom;
+    private final List<Shopper> mShoppers = new ArrayList<>();
+    private long mNextArrivalMs = -1;
+    private boolean mArrivalsStopped;
+    private Disposable mSampling;
+
+    int ShopperCount;
+    /** Shoppers who pass within the presenter's detection distance, and so could have been greeted. **/
+    int GreetableShopperCount;
+    int PeakShoppersInView;
+
+    public ShopperArrivalGenerator(SimulatedRobotController robot, Scheduler scheduler, Random random)
+    {
+        mRobot = robot;
+        mScheduler = scheduler;
+        mRandom = random;
+    }
+
+    public void start()
+    {
+        mArrivalsStopped = false;
+        mNextArrivalMs = nowMs() + nextArrivalDelayMs();
+        mSampling = mScheduler.schedulePeriodicallyDirect(this::sample, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** No new shoppers arrive, but those already in view walk on, so greetings in progress can finish. **/
+    public void stopArrivals()
+    {
+        mArrivalsStopped = true;
+    }
+
+    public void stop()
+    {
+        if (mSampling != null) mSampling.dispose();
+    }
+
+    private void sample()
+    {
+        long nowMs = nowMs();
+        while (!mArrivalsStopped && nowMs >= mNextArrivalMs)
+        {
+            addArrivals(mNextArrivalMs);
+            mNextArrivalMs += nextArrivalDelayMs();
+        }
+
+        List<HumanObservation> humans = new ArrayList<>();
+        Iterator<Shopper> it = mShoppers.iterator();
+        while (it.hasNext())
+        {
+            double[] position = it.next().positionAt(nowMs);
+            if (position == null) it.remove();
+            else humans.add(new HumanObservation(null, position[0], position[1], nowMs));
+        }
+        PeakShoppersInView = Math.max(PeakShoppersInView, humans.size());
+        mRobot.simulateHumansAround(humans);
+    }
+
+    private void addArrivals(long arrivalMs)
+    {
+        int groupSize = 1;
+        if (Bursty)
+        {
+            double extraProbability = 1 - 1 / MeanGroupSize;
+            while (mRandom.nextDouble() < extraProbability) groupSize++;
+        }
+
+        double x = 0.3 + mRandom.nextDouble() * (MaxPassingDistance - 0.3);
+        double speed = MinWalkingSpeed + mRandom.nextDouble() * (MaxWalkingSpeed - MinWalkingSpeed);
+        long stopMs = (mRandom.nextDouble() < StopRate) ? (long) (mRandom.nextDouble() * MaxStopMs) : 0;
+        for (int i = 0; i < groupSize; i++)
+        {
+            Shopper shopper = new Shopper();
+            shopper.mX = x + i * GROUP_SPACING_M;
+            shopper.mStartY = -SENSOR_RANGE_M;
+            shopper.mSpeed = speed;
+            shopper.mStartMs = arrivalMs;
+            shopper.mStopMs = stopMs;
+            mShoppers.add(shopper);
+            ShopperCount++;
+            if (shopper.mX < MainActivityPresenterImpl.HUMAN_DETECTION_DISTANCE) GreetableShopperCount++;
+        }
+    }
+
+    /** Poisson arrivals: exponentially distributed gaps. When bursty, groups arrive less often, so shoppers still arrive at ArrivalsPerHour. **/
+    private long nextArrivalDelayMs()
+    {
+        double groupsPerHour = Bursty ? ArrivalsPerHour / MeanGroupSize : ArrivalsPerHour;
+        double meanGapMs = TimeUnit.HOURS.toMillis(1) / groupsPerHour;
+        return Math.max(1, (long) (-Math.log(1 - mRandom.nextDouble()) * meanGapMs));
+    }
+
+    private long nowMs()
+    {
+        return mScheduler.now(TimeUnit.MILLISECONDS);
+    }
+}
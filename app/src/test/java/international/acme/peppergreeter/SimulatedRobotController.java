@@ -0,0 +1,176 @@
+package international.acme.peppergreeter;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.processors.PublishProcessor;
+
+/** For use in load testing: a robot whose actions take realistic, randomly distributed amounts of time on a (typically virtual-time) scheduler,
+ *  contend for the robot's resources, and sometimes fail or hang. Unlike FakeRobotController, nothing is recorded per action, only counted,
+ *  so hours of simulated traffic can be run in constant memory.
+ *  Speech, motion and animation each have one lane: an action waits for the previous action on its lane to finish, as on the robot, where
+ *  a second Say queues behind the first. A hung action fails with a TimeoutException at its ActionTimeouts deadline, like RobotControllerImpl,
+ *  and holds its lane until then. **/
+public class SimulatedRobotController implements RobotController
+{
+    /** Log-normal distribution of an action's duration: half of them take less than the median, and sigma sets how long the tail is. **/
+    public static class LatencyModel
+    {
+        public final double MedianMs;
+        public final double Sigma;
+
+        /** Probability that the action fails once it has run, and that it never completes and runs into its timeout. **/
+        public double FailureRate;
+        public double HangRate;
+
+        public LatencyModel(double medianMs, double sigma)
+        {
+            MedianMs = medianMs;
+            Sigma = sigma;
+        }
+
+        long sampleMs(Random random)
+        {
+            return Math.round(MedianMs * Math.exp(Sigma * random.nextGaussian()));
+        }
+    }
+
+    /** Speech is modelled per character of text, so long deals take longer to say than short greetings. Its failure and hang rates are those of SpeechStart. **/
+    public LatencyModel SpeechPerChar = new LatencyModel(65, 0.15);
+    public LatencyModel SpeechStart = new LatencyModel(300, 0.5);
+    public LatencyModel Motion = new LatencyModel(2000, 0.3);
+    public LatencyModel Animation = new LatencyModel(3000, 0.2);
+    public ActionTimeouts Timeouts = new ActionTimeouts();
+
+    private final Scheduler mScheduler;
+    private final Random mRandom;
+    private final PublishProcessor<List<HumanObservation>> mHumansAround = PublishProcessor.create();
+
+    /** One of the robot's resources, and the virtual time at which it is next free. **/
+    private static class Lane
+    {
+        final String mName;
+        long mFreeAtMs;
+
+        Lane(String name)
+        {
+            mName = name;
+        }
+    }
+
+    private final Lane mSpeech = new Lane("speech");
+    private final Lane mMotion = new Lane("motion");
+    private final Lane mAnimation = new Lane("animation");
+    private volatile long mLastMotionStartNanos;
+
+    int SpeakCount;
+    int MoveCount;
+    int AnimateCount;
+    int FailureCount;
+    int TimeoutCount;
+    long TotalLaneWaitMs;
+
+    public SimulatedRobotController(Scheduler scheduler, Random random)
+    {
+        mScheduler = scheduler;
+        mRandom = random;
+    }
+
+    @Override
+    public Completable speak(String text)
+    {
+        return Completable.defer(() ->
+        {
+            SpeakCount++;
+            long durationMs = SpeechStart.sampleMs(mRandom) + SpeechPerChar.sampleMs(mRandom) * text.length();
+            return runAction(SpeechStart, mSpeech, durationMs, Timeouts.getSpeakTimeoutMs(text));
+        });
+    }
+
+    @Override
+    public Completable moveWithVector(double x, double y, double z)
+    {
+        return Completable.defer(() ->
+        {
+            MoveCount++;
+            long durationMs = Motion.sampleMs(mRandom);
+            mLastMotionStartNanos = System.nanoTime();
+            return runAction(Motion, mMotion, durationMs, Timeouts.MoveMs);
+        });
+    }
+
+    @Override
+    public Completable animate(int animationResourceId)
+    {
+        return Completable.defer(() ->
+        {
+            AnimateCount++;
+            long durationMs = Animation.sampleMs(mRandom);
+            return runAction(Animation, mAnimation, durationMs, Timeouts.AnimateMs);
+        });
+    }
+
+    @Override
+    public Completable prewarm()
+    {
+        return Completable.complete();
+    }
+
+    @Override
+    public Completable preparePhrases(String configVersion, List<String> phrases)
+    {
+        return Completable.complete();
+    }
+
+    @Override
+    public long getLastMotionStartNanos()
+    {
+        return mLastMotionStartNanos;
+    }
+
+    @Override
+    public Flowable<List<HumanObservation>> humansAround()
+    {
+        return mHumansAround.onBackpressureLatest();
+    }
+
+    public void simulateHumansAround(List<HumanObservation> humans)
+    {
+        mHumansAround.onNext(humans);
+    }
+
+    public long nowMs()
+    {
+        return mScheduler.now(TimeUnit.MILLISECONDS);
+    }
+
+    /** Complete once the action has waited for its lane and run for its duration, unless it fails (after running) or hangs (failing at its deadline).
+     *  The lane is reserved until the action ends: for a hung action, that's its deadline rather than its duration. **/
+    private Completable runAction(LatencyModel model, Lane lane, long durationMs, long timeoutMs)
+    {
+        double outcome = mRandom.nextDouble();
+        boolean hung = outcome < model.HangRate;
+        long nowMs = nowMs();
+        long waitMs = Math.max(0, lane.mFreeAtMs - nowMs);
+        TotalLaneWaitMs += waitMs;
+        lane.mFreeAtMs = nowMs + waitMs + (hung ? timeoutMs : durationMs);
+        if (hung)
+        {
+            TimeoutCount++;
+            return Completable.timer(waitMs + timeoutMs, TimeUnit.MILLISECONDS, mScheduler)
+                    .andThen(Completable.error(new TimeoutException("Simulated " + lane.mName + " timeout")));
+        }
+        Completable action = Completable.timer(waitMs + durationMs, TimeUnit.MILLISECONDS, mScheduler);
+        if (outcome < model.HangRate + model.FailureRate)
+        {
+            FailureCount++;
+            return action.andThen(Completable.error(new IllegalStateException("Simulated " + lane.mName + " failure")));
+        }
+        return action;
+    }
+}
@@ -0,0 +1,39 @@
+package international.acme.peppergreeter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for recording cold start milestones. **/
+public class StartupTraceTest
+{
+    @Before
+    public void setup()
+    {
+        LogHelper.setTestMode(true);
+    }
+
+    @Test
+    public void markersRecordedOnceFromProcessStart()
+    {
+        StartupTrace trace = new StartupTrace(0);
+        trace.markProcessStart(1000000000L);
+        trace.record(StartupTrace.FIRST_FRAME, 1250000000L);
+        trace.record(StartupTrace.FIRST_FRAME, 1900000000L);
+
+        Assert.assertEquals(0, trace.getElapsedMs(StartupTrace.PROCESS_START));
+        Assert.assertEquals(250, trace.getElapsedMs(StartupTrace.FIRST_FRAME));
+        Assert.assertEquals(-1, trace.getElapsedMs(StartupTrace.CONFIG_READY));
+    }
+
+    @Test
+    public void summaryListsEveryMarker()
+    {
+        StartupTrace trace = new StartupTrace(0);
+        trace.markProcessStart(0);
+        trace.record(StartupTrace.FIRST_FRAME, 400000000L);
+        trace.record(StartupTrace.ROBOT_READY, 2000000000L);
+        trace.record(StartupTrace.CONFIG_READY, 900000000L);
+        Assert.assertEquals("Cold start: process start 0 ms; first frame 400 ms; config ready 900 ms; robot ready 2000 ms;", trace.getSummary());
+    }
+}